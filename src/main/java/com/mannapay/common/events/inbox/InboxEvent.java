@@ -0,0 +1,100 @@
+package com.mannapay.common.events.inbox;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Inbox event entity for the Idempotent Consumer (Inbox) Pattern.
+ *
+ * The inbox is the consumer-side counterpart of the outbox: the idempotency
+ * key of a consumed event is inserted in the same database transaction as
+ * the handler's own writes. Either both commit or neither does, so a crash
+ * between handling and acknowledging can never cause a second side effect.
+ *
+ * The table is range-partitioned by {@code event_date}, the UTC day of the
+ * event's own timestamp. A redelivered event carries the same timestamp and
+ * therefore lands in the same partition, which keeps the primary key an
+ * effective dedup constraint while allowing retention by dropping whole
+ * partitions instead of running DELETEs.
+ *
+ * Expected schema (PostgreSQL):
+ * <pre>
+ * CREATE TABLE inbox_events (
+ *     consumer_group  VARCHAR(255) NOT NULL,
+ *     idempotency_key VARCHAR(255) NOT NULL,
+ *     event_date      DATE         NOT NULL,
+ *     event_id        VARCHAR(36),
+ *     event_type      VARCHAR(100),
+ *     topic           VARCHAR(255),
+ *     partition_id    INT,
+ *     record_offset   BIGINT,
+ *     received_at     TIMESTAMPTZ  NOT NULL,
+ *     PRIMARY KEY (consumer_group, idempotency_key, event_date)
+ * ) PARTITION BY RANGE (event_date);
+ * CREATE TABLE inbox_events_default PARTITION OF inbox_events DEFAULT;
+ * </pre>
+ * Daily partitions are created and dropped by {@link InboxService}; events
+ * dated outside them go to the DEFAULT partition.
+ */
+@Entity
+@Table(name = "inbox_events")
+@IdClass(InboxEvent.InboxEventId.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxEvent {
+
+    @Id
+    @Column(name = "consumer_group", nullable = false, length = 255)
+    private String consumerGroup;
+
+    @Id
+    @Column(name = "idempotency_key", nullable = false, length = 255)
+    private String idempotencyKey;
+
+    @Id
+    @Column(name = "event_date", nullable = false)
+    private LocalDate eventDate;
+
+    @Column(name = "event_id", length = 36)
+    private String eventId;
+
+    @Column(name = "event_type", length = 100)
+    private String eventType;
+
+    @Column(name = "topic", length = 255)
+    private String topic;
+
+    @Column(name = "partition_id")
+    private Integer partitionId;
+
+    @Column(name = "record_offset")
+    private Long recordOffset;
+
+    @Column(name = "received_at", nullable = false)
+    @Builder.Default
+    private Instant receivedAt = Instant.now();
+
+    /**
+     * Composite primary key.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class InboxEventId implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String consumerGroup;
+        private String idempotencyKey;
+        private LocalDate eventDate;
+    }
+}
@@ -0,0 +1,31 @@
+package com.mannapay.common.events.inbox;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository for inbox events.
+ *
+ * Inserts go through {@link InboxService} (INSERT ... ON CONFLICT DO NOTHING);
+ * this repository is for lookups only.
+ */
+@Repository
+public interface InboxRepository extends JpaRepository<InboxEvent, InboxEvent.InboxEventId> {
+
+    /**
+     * Check whether a consumer group has recorded the idempotency key.
+     */
+    boolean existsByConsumerGroupAndIdempotencyKey(String consumerGroup, String idempotencyKey);
+
+    /**
+     * Find inbox entries for an event across consumer groups.
+     */
+    List<InboxEvent> findByEventId(String eventId);
+
+    /**
+     * Count recorded events for a consumer group.
+     */
+    long countByConsumerGroup(String consumerGroup);
+}
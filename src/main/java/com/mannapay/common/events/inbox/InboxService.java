@@ -0,0 +1,348 @@
+package com.mannapay.common.events.inbox;
+
+import com.mannapay.common.events.core.DomainEvent;
+import com.mannapay.common.events.kafka.consumer.BatchEventHandler;
+import com.mannapay.common.events.kafka.consumer.BatchResult;
+import com.mannapay.common.events.kafka.consumer.EventHandler;
+import com.mannapay.common.events.kafka.consumer.IdempotencyMode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Service for the transactional inbox.
+ *
+ * This service provides methods to:
+ * - Record an idempotency key inside the caller's database transaction
+ * - Record many keys with one batched INSERT ... ON CONFLICT DO NOTHING
+ * - Run a handler exactly once per key, atomically with its own DB writes
+ * - Run a batch handler once over the new keys of a batch
+ * - Create upcoming daily partitions and drop expired ones
+ *
+ * DB-backed consumers using the inbox need no Redis at all
+ * (see {@code kafka.consumer.idempotency.mode=INBOX}).
+ *
+ * Events dated outside the daily partitions (old events read by a new group
+ * or replayed from the DLQ, skewed clocks) land in the DEFAULT partition,
+ * whose rows are purged by {@code received_at} after the retention period.
+ * Partition maintenance runs in INBOX mode, or with
+ * {@code inbox.partition-maintenance.enabled=true} for services that only
+ * call {@link #recordIfAbsent} themselves.
+ */
+@Service
+@Slf4j
+public class InboxService {
+
+    private static final String TABLE = "inbox_events";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final int INSERT_CHUNK_SIZE = 500;
+    private static final int PARTITIONS_AHEAD = 3;
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String INSERT_PREFIX =
+        "INSERT INTO " + TABLE + " (consumer_group, idempotency_key, event_date, event_id, event_type, " +
+        "topic, partition_id, record_offset, received_at) VALUES ";
+
+    private static final String INSERT_SUFFIX =
+        " ON CONFLICT (consumer_group, idempotency_key, event_date) DO NOTHING RETURNING idempotency_key";
+
+    private static final String DELETE_SQL =
+        "DELETE FROM " + TABLE + " WHERE consumer_group = ? AND idempotency_key = ? AND event_date = ?";
+
+    private static final String LIST_PARTITIONS_SQL =
+        "SELECT c.relname FROM pg_inherits i " +
+        "JOIN pg_class c ON c.oid = i.inhrelid " +
+        "JOIN pg_class p ON p.oid = i.inhparent " +
+        "WHERE p.relname = '" + TABLE + "'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InboxRepository inboxRepository;
+    private final String consumerGroup;
+    private final int retentionDays;
+    private final boolean maintainPartitions;
+
+    private final Counter eventsRecordedCounter;
+    private final Counter eventsDuplicateCounter;
+
+    public InboxService(
+            JdbcTemplate jdbcTemplate,
+            InboxRepository inboxRepository,
+            MeterRegistry meterRegistry,
+            @Value("${spring.application.name:unknown-service}") String applicationName,
+            @Value("${inbox.retention-days:14}") int retentionDays,
+            @Value("${inbox.partition-maintenance.enabled:false}") boolean partitionMaintenanceEnabled,
+            @Value("${kafka.consumer.idempotency.mode:KEY}") IdempotencyMode idempotencyMode) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.inboxRepository = inboxRepository;
+        this.consumerGroup = applicationName + "-group";
+        this.retentionDays = retentionDays;
+        this.maintainPartitions = partitionMaintenanceEnabled || idempotencyMode == IdempotencyMode.INBOX;
+
+        this.eventsRecordedCounter = Counter.builder("mannapay.inbox.events.recorded")
+            .description("Events recorded in the inbox")
+            .register(meterRegistry);
+
+        this.eventsDuplicateCounter = Counter.builder("mannapay.inbox.events.duplicate")
+            .description("Duplicate events rejected by the inbox")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Run the handler exactly once for the idempotency key.
+     *
+     * The inbox insert and the handler's own writes share one transaction,
+     * so a failure in the handler rolls back the inbox entry as well.
+     *
+     * @return false if the event was already processed
+     */
+    @Transactional
+    public <T extends DomainEvent> boolean processOnce(
+            String idempotencyKey,
+            T event,
+            ConsumerRecord<?, ?> record,
+            EventHandler<T> handler) {
+
+        if (!recordIfAbsent(idempotencyKey, event, record)) {
+            return false;
+        }
+        handler.handle(event);
+        return true;
+    }
+
+    /**
+     * Run the batch handler once over the events whose keys are new.
+     *
+     * All keys are recorded with batched inserts and the handler runs in the
+     * same transaction. Entries of events the handler reports as failed are
+     * removed again before commit, so only those events are processed on
+     * redelivery; a thrown exception rolls back the whole batch.
+     *
+     * @param entries Inbox entries, index-aligned with the events
+     * @param events The events to handle
+     * @param handler The batch handler
+     * @return the duplicate events and the handler's result
+     */
+    @Transactional
+    public <T extends DomainEvent> BatchOutcome<T> processBatchOnce(
+            List<InboxEvent> entries,
+            List<T> events,
+            BatchEventHandler<T> handler) {
+
+        Set<String> recorded = recordAllIfAbsent(entries);
+
+        List<T> fresh = new ArrayList<>(recorded.size());
+        List<T> duplicates = new ArrayList<>(entries.size() - recorded.size());
+        Map<DomainEvent, InboxEvent> entriesByEvent = new IdentityHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            T event = events.get(i);
+            if (recorded.contains(entries.get(i).getIdempotencyKey())) {
+                fresh.add(event);
+                entriesByEvent.put(event, entries.get(i));
+            } else {
+                duplicates.add(event);
+            }
+        }
+
+        if (fresh.isEmpty()) {
+            return new BatchOutcome<>(duplicates, BatchResult.success());
+        }
+
+        BatchResult result = handler.handleBatch(fresh);
+        if (!result.isSuccess()) {
+            List<Object[]> failedKeys = new ArrayList<>(result.getFailureCount());
+            result.getFailures().keySet().forEach(event -> {
+                InboxEvent entry = entriesByEvent.get(event);
+                if (entry != null) {
+                    failedKeys.add(new Object[] {
+                        entry.getConsumerGroup(), entry.getIdempotencyKey(), Date.valueOf(entry.getEventDate())});
+                }
+            });
+            jdbcTemplate.batchUpdate(DELETE_SQL, failedKeys);
+        }
+        return new BatchOutcome<>(duplicates, result);
+    }
+
+    /**
+     * Record an idempotency key within the caller's transaction.
+     *
+     * @return true if the key was new, false if it was already recorded
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean recordIfAbsent(String idempotencyKey, DomainEvent event, ConsumerRecord<?, ?> record) {
+        return !recordAllIfAbsent(List.of(toInboxEvent(idempotencyKey, event, record))).isEmpty();
+    }
+
+    /**
+     * Record many idempotency keys within the caller's transaction.
+     *
+     * Uses multi-row INSERT ... ON CONFLICT DO NOTHING RETURNING in chunks, so
+     * the result is exact regardless of JDBC batch rewriting settings.
+     *
+     * @return the idempotency keys that were newly recorded
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Set<String> recordAllIfAbsent(List<InboxEvent> entries) {
+        Set<String> recorded = new HashSet<>();
+
+        for (int from = 0; from < entries.size(); from += INSERT_CHUNK_SIZE) {
+            List<InboxEvent> chunk = entries.subList(from, Math.min(from + INSERT_CHUNK_SIZE, entries.size()));
+
+            StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+            List<Object> args = new ArrayList<>(chunk.size() * 9);
+            for (int i = 0; i < chunk.size(); i++) {
+                InboxEvent entry = chunk.get(i);
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                args.add(entry.getConsumerGroup());
+                args.add(entry.getIdempotencyKey());
+                args.add(Date.valueOf(entry.getEventDate()));
+                args.add(entry.getEventId());
+                args.add(entry.getEventType());
+                args.add(entry.getTopic());
+                args.add(entry.getPartitionId());
+                args.add(entry.getRecordOffset());
+                args.add(Timestamp.from(entry.getReceivedAt()));
+            }
+            sql.append(INSERT_SUFFIX);
+
+            recorded.addAll(jdbcTemplate.queryForList(sql.toString(), String.class, args.toArray()));
+        }
+
+        eventsRecordedCounter.increment(recorded.size());
+        eventsDuplicateCounter.increment(entries.size() - recorded.size());
+        return recorded;
+    }
+
+    /**
+     * Build an inbox entry for this service's consumer group.
+     */
+    public InboxEvent toInboxEvent(String idempotencyKey, DomainEvent event, ConsumerRecord<?, ?> record) {
+        Instant eventTime = event.getTimestamp() != null ? event.getTimestamp() : Instant.now();
+        return InboxEvent.builder()
+            .consumerGroup(consumerGroup)
+            .idempotencyKey(idempotencyKey)
+            .eventDate(LocalDate.ofInstant(eventTime, ZoneOffset.UTC))
+            .eventId(event.getEventId())
+            .eventType(event.getEventType())
+            .topic(record != null ? record.topic() : null)
+            .partitionId(record != null ? record.partition() : null)
+            .recordOffset(record != null ? record.offset() : null)
+            .build();
+    }
+
+    /**
+     * Check whether this service's consumer group has recorded the key.
+     */
+    public boolean isRecorded(String idempotencyKey) {
+        return inboxRepository.existsByConsumerGroupAndIdempotencyKey(consumerGroup, idempotencyKey);
+    }
+
+    /**
+     * Ensure the DEFAULT and upcoming daily partitions exist, drop daily
+     * partitions past retention and purge expired rows of the DEFAULT one.
+     * Runs at startup and hourly, if partition maintenance is enabled.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 5 * * * *")
+    public void maintainPartitions() {
+        if (!maintainPartitions) {
+            return;
+        }
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        try {
+            jdbcTemplate.execute(String.format(
+                "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s DEFAULT", DEFAULT_PARTITION, TABLE));
+            for (int i = -1; i <= PARTITIONS_AHEAD; i++) {
+                createPartition(today.plusDays(i));
+            }
+            dropPartitionsBefore(today.minusDays(retentionDays));
+            purgeDefaultPartition(Instant.now().minus(Duration.ofDays(retentionDays)));
+        } catch (DataAccessException e) {
+            log.warn("Inbox partition maintenance failed, is {} a partitioned table? error={}",
+                TABLE, e.getMessage());
+        }
+    }
+
+    private void createPartition(LocalDate day) {
+        try {
+            jdbcTemplate.execute(String.format(
+                "CREATE TABLE IF NOT EXISTS %s_p%s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                TABLE, PARTITION_SUFFIX.format(day), TABLE, day, day.plusDays(1)));
+        } catch (DataAccessException e) {
+            // The DEFAULT partition already holds rows for that day; they stay there
+            log.warn("Could not create inbox partition for {}: {}", day, e.getMessage());
+        }
+    }
+
+    private void purgeDefaultPartition(Instant cutoff) {
+        int purged = jdbcTemplate.update(
+            "DELETE FROM " + DEFAULT_PARTITION + " WHERE received_at < ?", Timestamp.from(cutoff));
+        if (purged > 0) {
+            log.info("Purged {} expired rows from {}", purged, DEFAULT_PARTITION);
+        }
+    }
+
+    private void dropPartitionsBefore(LocalDate cutoff) {
+        String prefix = TABLE + "_p";
+        for (String partition : jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class)) {
+            if (!partition.startsWith(prefix)) {
+                continue;
+            }
+            LocalDate day;
+            try {
+                day = LocalDate.parse(partition.substring(prefix.length()), PARTITION_SUFFIX);
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            if (day.isBefore(cutoff)) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                log.info("Dropped expired inbox partition: {}", partition);
+            }
+        }
+    }
+
+    /**
+     * Result of {@link #processBatchOnce}.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class BatchOutcome<T extends DomainEvent> {
+
+        /**
+         * Events skipped because their key was already recorded.
+         */
+        private final List<T> duplicates;
+
+        /**
+         * Result reported by the handler for the new events.
+         */
+        private final BatchResult result;
+    }
+}
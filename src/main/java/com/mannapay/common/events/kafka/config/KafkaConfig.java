@@ -2,6 +2,15 @@ package com.mannapay.common.events.kafka.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mannapay.common.events.kafka.consumer.idempotency.OffsetWatermarkTracker;
+import com.mannapay.common.events.kafka.consumer.metrics.ConsumerLagMonitor;
+import com.mannapay.common.events.kafka.consumer.rebalance.CompositeRebalanceListener;
+import com.mannapay.common.events.kafka.consumer.routing.EventHandlerRegistry;
+import com.mannapay.common.events.kafka.consumer.routing.EventTypeFilteringDeserializer;
+import com.mannapay.common.events.kafka.consumer.routing.EventTypeRecordFilterStrategy;
+import com.mannapay.common.events.kafka.consumer.lazy.LazyEventEnvelope;
+import com.mannapay.common.events.kafka.consumer.lazy.LazyEventEnvelopeDeserializer;
+import com.mannapay.common.events.core.DomainEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.admin.NewTopic;
@@ -10,6 +19,7 @@ import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
@@ -17,6 +27,9 @@ import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.CompositeBatchInterceptor;
+import org.springframework.kafka.listener.CompositeRecordInterceptor;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
@@ -177,6 +190,32 @@ public class KafkaConfig {
             .build();
     }
 
+    @Bean
+    public NewTopic sagaRepliesTopic() {
+        return TopicBuilder.name("mannapay.saga.replies")
+            .partitions(12)
+            .replicas(3)
+            .config("min.insync.replicas", "2")
+            .build();
+    }
+
+    /**
+     * Per-service reply topic of the {@code KafkaRequestReplyClient}. Replies
+     * are only read while their request is outstanding.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "saga.request-reply.enabled", havingValue = "true")
+    public NewTopic sagaRequestReplyTopic(
+            @Value("${saga.request-reply.reply-topic:mannapay.saga.replies.${spring.application.name:unknown-service}}")
+            String replyTopic) {
+        return TopicBuilder.name(replyTopic)
+            .partitions(3)
+            .replicas(3)
+            .config("retention.ms", "3600000") // 1 hour
+            .config("min.insync.replicas", "2")
+            .build();
+    }
+
     // ==================== Producer Configuration ====================
 
     @Bean
@@ -223,6 +262,10 @@ public class KafkaConfig {
 
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(consumerProps());
+    }
+
+    private Map<String, Object> consumerProps() {
         Map<String, Object> props = new HashMap<>();
 
         // Bootstrap servers
@@ -260,12 +303,15 @@ public class KafkaConfig {
         // Isolation level for exactly-once
         props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
 
-        return new DefaultKafkaConsumerFactory<>(props);
+        return props;
     }
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
-            KafkaTemplate<String, Object> kafkaTemplate) {
+            KafkaTemplate<String, Object> kafkaTemplate,
+            CompositeRebalanceListener rebalanceListener,
+            ConsumerLagMonitor consumerLagMonitor,
+            OffsetWatermarkTracker offsetWatermarkTracker) {
 
         ConcurrentKafkaListenerContainerFactory<String, Object> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
@@ -275,11 +321,22 @@ public class KafkaConfig {
         // Manual acknowledgment for reliability
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
 
+        // Offset watermarks and partition-local caches follow partition moves
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+
+        // Idle events keep the lag gauges fresh while nothing is delivered
+        factory.getContainerProperties().setIdleEventInterval(consumerLagMonitor.getRefreshIntervalMs());
+
+        // Per-partition records/time behind from the consumer's own end offsets;
+        // offsets skipped by a delivery settle the offset watermark
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(
+            consumerLagMonitor.recordInterceptor(), offsetWatermarkTracker.recordInterceptor()));
+
         // Concurrency - number of consumer threads
         factory.setConcurrency(3);
 
         // Error handling with DLQ
-        factory.setCommonErrorHandler(errorHandler(kafkaTemplate));
+        factory.setCommonErrorHandler(errorHandler(kafkaTemplate, offsetWatermarkTracker));
 
         // Enable batch listening for high throughput (optional)
         factory.setBatchListener(false);
@@ -295,26 +352,143 @@ public class KafkaConfig {
      */
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, Object> batchKafkaListenerContainerFactory(
-            KafkaTemplate<String, Object> kafkaTemplate) {
+            KafkaTemplate<String, Object> kafkaTemplate,
+            CompositeRebalanceListener rebalanceListener,
+            ConsumerLagMonitor consumerLagMonitor,
+            OffsetWatermarkTracker offsetWatermarkTracker) {
 
         ConcurrentKafkaListenerContainerFactory<String, Object> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
 
         factory.setConsumerFactory(consumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        factory.getContainerProperties().setIdleEventInterval(consumerLagMonitor.getRefreshIntervalMs());
         factory.setConcurrency(3);
-        factory.setCommonErrorHandler(errorHandler(kafkaTemplate));
+        factory.setCommonErrorHandler(errorHandler(kafkaTemplate, offsetWatermarkTracker));
         factory.setBatchListener(true);
+        factory.setBatchInterceptor(new CompositeBatchInterceptor<>(
+            consumerLagMonitor.batchInterceptor(), offsetWatermarkTracker.batchInterceptor()));
+
+        return factory;
+    }
+
+    /**
+     * Listener container for {@code AsyncEventHandler}s.
+     *
+     * Out-of-order manual acks: the container commits an offset only once every
+     * record before it has been acknowledged, and holds back the next poll until
+     * the gaps of the current one are filled.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> asyncKafkaListenerContainerFactory(
+            KafkaTemplate<String, Object> kafkaTemplate,
+            CompositeRebalanceListener rebalanceListener,
+            ConsumerLagMonitor consumerLagMonitor,
+            OffsetWatermarkTracker offsetWatermarkTracker) {
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(consumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        factory.getContainerProperties().setIdleEventInterval(consumerLagMonitor.getRefreshIntervalMs());
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(
+            consumerLagMonitor.recordInterceptor(), offsetWatermarkTracker.recordInterceptor()));
+        factory.setConcurrency(3);
+        factory.setCommonErrorHandler(errorHandler(kafkaTemplate, offsetWatermarkTracker));
+        factory.setBatchListener(false);
+        factory.getContainerProperties().setObservationEnabled(true);
+
+        return factory;
+    }
+
+    /**
+     * Listener container for registry-routed consumers.
+     *
+     * Records whose {@code eventType} header has no registered handler are never
+     * deserialized; they arrive as null values and are discarded and acknowledged
+     * by the record filter.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> routedKafkaListenerContainerFactory(
+            KafkaTemplate<String, Object> kafkaTemplate,
+            CompositeRebalanceListener rebalanceListener,
+            ConsumerLagMonitor consumerLagMonitor,
+            OffsetWatermarkTracker offsetWatermarkTracker,
+            EventHandlerRegistry eventHandlerRegistry) {
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(
+            consumerProps(),
+            () -> new ErrorHandlingDeserializer<>(new StringDeserializer()),
+            () -> new ErrorHandlingDeserializer<>(
+                new EventTypeFilteringDeserializer(eventHandlerRegistry::isHandled))));
+
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        factory.getContainerProperties().setIdleEventInterval(consumerLagMonitor.getRefreshIntervalMs());
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(
+            consumerLagMonitor.recordInterceptor(), offsetWatermarkTracker.recordInterceptor()));
+        factory.setRecordFilterStrategy(offsetWatermarkTracker.markingDiscarded(record -> record.value() == null));
+        factory.setAckDiscarded(true);
+        factory.setConcurrency(3);
+        factory.setCommonErrorHandler(errorHandler(kafkaTemplate, offsetWatermarkTracker));
+        factory.getContainerProperties().setObservationEnabled(true);
+
+        return factory;
+    }
+
+    /**
+     * Listener container delivering {@link LazyEventEnvelope} values.
+     *
+     * Bodies are parsed only when the handler reads the payload; events no
+     * registered handler is interested in are discarded (and acknowledged) by
+     * their {@code eventType} header alone.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, LazyEventEnvelope<DomainEvent>> lazyKafkaListenerContainerFactory(
+            KafkaTemplate<String, Object> kafkaTemplate,
+            CompositeRebalanceListener rebalanceListener,
+            ConsumerLagMonitor consumerLagMonitor,
+            OffsetWatermarkTracker offsetWatermarkTracker,
+            EventHandlerRegistry eventHandlerRegistry) {
+
+        ConcurrentKafkaListenerContainerFactory<String, LazyEventEnvelope<DomainEvent>> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(
+            consumerProps(),
+            () -> new ErrorHandlingDeserializer<>(new StringDeserializer()),
+            LazyEventEnvelopeDeserializer::new));
+
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        factory.getContainerProperties().setIdleEventInterval(consumerLagMonitor.getRefreshIntervalMs());
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(
+            consumerLagMonitor.recordInterceptor(), offsetWatermarkTracker.recordInterceptor()));
+        factory.setRecordFilterStrategy(offsetWatermarkTracker.markingDiscarded(
+            EventTypeRecordFilterStrategy.forRegistry(eventHandlerRegistry)));
+        factory.setAckDiscarded(true);
+        factory.setConcurrency(3);
+        factory.setCommonErrorHandler(errorHandler(kafkaTemplate, offsetWatermarkTracker));
+        factory.getContainerProperties().setObservationEnabled(true);
 
         return factory;
     }
 
     // ==================== Error Handling ====================
 
+    /**
+     * Dead letter publishing recoverer - sends to {@code <topic>.dlq}.
+     */
     @Bean
-    public CommonErrorHandler errorHandler(KafkaTemplate<String, Object> kafkaTemplate) {
-        // Dead letter publishing recoverer - sends to DLQ after retries exhausted
-        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Object> kafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(
             kafkaTemplate,
             (record, ex) -> {
                 // Append .dlq to the original topic
@@ -324,6 +498,15 @@ public class KafkaConfig {
                 return new org.apache.kafka.common.TopicPartition(dlqTopic, -1);
             }
         );
+    }
+
+    @Bean
+    public CommonErrorHandler errorHandler(
+            KafkaTemplate<String, Object> kafkaTemplate,
+            OffsetWatermarkTracker offsetWatermarkTracker) {
+        // Sends to DLQ after retries exhausted; the DLQ'd offset counts as settled
+        ConsumerRecordRecoverer recoverer = offsetWatermarkTracker.markingRecovered(
+            deadLetterPublishingRecoverer(kafkaTemplate));
 
         // Fixed backoff: retry N times with fixed interval
         FixedBackOff backOff = new FixedBackOff(retryIntervalMs, maxRetryAttempts);
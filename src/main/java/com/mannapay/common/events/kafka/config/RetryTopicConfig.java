@@ -0,0 +1,106 @@
+package com.mannapay.common.events.kafka.config;
+
+import com.mannapay.common.events.kafka.retry.EventHandlerAwareDestinationTopicResolver;
+import com.mannapay.common.events.kafka.retry.TieredBackOffPolicy;
+import com.mannapay.common.events.kafka.retry.TieredRetryTopicNamesProviderFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.retrytopic.DestinationTopicResolver;
+import org.springframework.kafka.retrytopic.RetryTopicComponentFactory;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationSupport;
+import org.springframework.kafka.retrytopic.RetryTopicNamesProviderFactory;
+import org.springframework.kafka.retrytopic.RetryTopicSchedulerWrapper;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Non-blocking retry through tiered delay topics.
+ *
+ * A failing record is republished to {@code <topic>.retry-5s}, then
+ * {@code .retry-1m}, then {@code .retry-10m} (configurable), and finally to
+ * {@code <topic>.dlq}. Retry topic consumers pause a partition until its head
+ * record is due instead of sleeping, so healthy records on the main topic keep
+ * flowing while failures retry in the background. Non-retryable
+ * {@code EventHandlerException}s go straight to the DLQ.
+ *
+ * Enabled with {@code kafka.consumer.retry-topics.enabled=true}; applies to the
+ * listener topics in {@code kafka.consumer.retry-topics.topics}, or to all
+ * listeners if empty. Listeners not covered keep the blocking
+ * {@code FixedBackOff} error handler from {@link KafkaConfig}.
+ *
+ * The DLQ topic's own consumer is created but not started; the DLQ is
+ * handled by the replay tooling.
+ */
+@Configuration
+@ConditionalOnProperty(name = "kafka.consumer.retry-topics.enabled", havingValue = "true")
+@Slf4j
+public class RetryTopicConfig extends RetryTopicConfigurationSupport {
+
+    @Value("${kafka.consumer.retry-topics.delays:5s,1m,10m}")
+    private List<Duration> retryDelays;
+
+    @Value("${kafka.consumer.retry-topics.topics:}")
+    private List<String> retryTopics;
+
+    @Value("${kafka.consumer.retry-topics.partitions:12}")
+    private int partitions;
+
+    @Value("${kafka.consumer.retry-topics.replication-factor:-1}")
+    private short replicationFactor;
+
+    @Bean
+    public RetryTopicConfiguration tieredRetryTopicConfiguration(KafkaTemplate<String, Object> kafkaTemplate) {
+        log.info("Configuring retry topics: delays={}, topics={}",
+            retryDelays, retryTopics.isEmpty() ? "all" : retryTopics);
+
+        RetryTopicConfigurationBuilder builder = RetryTopicConfigurationBuilder.newInstance()
+            .customBackoff(new TieredBackOffPolicy(retryDelays))
+            .maxAttempts(retryDelays.size() + 1)
+            .retryTopicSuffix(TieredRetryTopicNamesProviderFactory.RETRY_SUFFIX)
+            .dltSuffix(TieredRetryTopicNamesProviderFactory.DLQ_SUFFIX)
+            .autoStartDltHandler(false)
+            .autoCreateTopicsWith(partitions, replicationFactor)
+            .notRetryOn(List.of(IllegalArgumentException.class, IllegalStateException.class));
+
+        if (!retryTopics.isEmpty()) {
+            builder.includeTopics(retryTopics);
+        }
+        return builder.create(kafkaTemplate);
+    }
+
+    /**
+     * Scheduler used to resume paused retry partitions.
+     */
+    @Bean
+    public RetryTopicSchedulerWrapper retryTopicSchedulerWrapper() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("retry-topic-");
+        scheduler.initialize();
+        return new RetryTopicSchedulerWrapper(scheduler);
+    }
+
+    @Override
+    protected RetryTopicComponentFactory createComponentFactory() {
+        return new RetryTopicComponentFactory() {
+
+            @Override
+            public RetryTopicNamesProviderFactory retryTopicNamesProviderFactory() {
+                return new TieredRetryTopicNamesProviderFactory();
+            }
+
+            @Override
+            public DestinationTopicResolver destinationTopicResolver() {
+                return new EventHandlerAwareDestinationTopicResolver(internalRetryTopicClock());
+            }
+        };
+    }
+}
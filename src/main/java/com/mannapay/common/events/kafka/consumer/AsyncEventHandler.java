@@ -0,0 +1,42 @@
+package com.mannapay.common.events.kafka.consumer;
+
+import com.mannapay.common.events.core.DomainEvent;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking variant of {@link EventHandler}.
+ *
+ * Implement this interface for handlers whose work is dominated by I/O
+ * (Feign calls, Redis, async JDBC) so the consumer thread is released while
+ * the call is in flight. Complete the stage exceptionally with an
+ * {@link EventHandlerException} to control retryability.
+ *
+ * @param <T> The type of domain event this handler processes
+ */
+@FunctionalInterface
+public interface AsyncEventHandler<T extends DomainEvent> {
+
+    /**
+     * Start handling the domain event.
+     *
+     * @param event The event to handle
+     * @return Stage completed when handling has finished
+     */
+    CompletionStage<Void> handleAsync(T event);
+
+    /**
+     * Get the event type this handler processes.
+     */
+    default Class<T> getEventType() {
+        return null; // Override if needed
+    }
+
+    /**
+     * Check if this handler can process the given event.
+     */
+    default boolean canHandle(DomainEvent event) {
+        Class<T> eventType = getEventType();
+        return eventType == null || eventType.isInstance(event);
+    }
+}
@@ -0,0 +1,46 @@
+package com.mannapay.common.events.kafka.consumer;
+
+import com.mannapay.common.events.core.DomainEvent;
+
+import java.util.List;
+
+/**
+ * Batch variant of {@link EventHandler} for bulk sinks.
+ *
+ * Implement this interface for projection and audit consumers that can write
+ * many events at once (JDBC batch inserts, Redis pipelines). The processor
+ * hands over events already filtered for duplicates and grouped by concrete
+ * event class, in offset order within each group.
+ *
+ * Failures can be reported for the whole batch by throwing, or per event via
+ * {@link BatchResult}; only the failed events are retried or dead-lettered.
+ *
+ * @param <T> The type of domain event this handler processes
+ */
+@FunctionalInterface
+public interface BatchEventHandler<T extends DomainEvent> {
+
+    /**
+     * Handle a group of events of the same concrete class.
+     *
+     * @param events The events to handle, never empty
+     * @return The per-event outcome
+     * @throws EventHandlerException if the whole batch fails
+     */
+    BatchResult handleBatch(List<T> events) throws EventHandlerException;
+
+    /**
+     * Get the event type this handler processes.
+     */
+    default Class<T> getEventType() {
+        return null; // Override if needed
+    }
+
+    /**
+     * Check if this handler can process the given event.
+     */
+    default boolean canHandle(DomainEvent event) {
+        Class<T> eventType = getEventType();
+        return eventType == null || eventType.isInstance(event);
+    }
+}
@@ -0,0 +1,84 @@
+package com.mannapay.common.events.kafka.consumer;
+
+import com.mannapay.common.events.core.DomainEvent;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link BatchEventHandler} call.
+ *
+ * Events without a reported failure are treated as handled. Failures are
+ * matched by event instance, so report the same objects the handler received.
+ */
+public final class BatchResult {
+
+    private static final BatchResult SUCCESS = new BatchResult(Collections.emptyMap());
+
+    private final Map<DomainEvent, EventHandlerException> failures;
+
+    private BatchResult(Map<DomainEvent, EventHandlerException> failures) {
+        this.failures = failures;
+    }
+
+    /**
+     * Every event in the batch was handled.
+     */
+    public static BatchResult success() {
+        return SUCCESS;
+    }
+
+    /**
+     * Start collecting per-event failures.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    /**
+     * Failure reported for the event, or null if it was handled.
+     */
+    public EventHandlerException getFailure(DomainEvent event) {
+        return failures.get(event);
+    }
+
+    public Map<DomainEvent, EventHandlerException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Builder for batch results with per-event failures.
+     */
+    public static final class Builder {
+
+        private final Map<DomainEvent, EventHandlerException> failures = new IdentityHashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder failed(DomainEvent event, EventHandlerException error) {
+            failures.put(event, error);
+            return this;
+        }
+
+        public Builder failed(DomainEvent event, Throwable error) {
+            return failed(event, error instanceof EventHandlerException handlerError
+                ? handlerError
+                : new EventHandlerException(error.getMessage(), error,
+                    event.getEventId(), event.getEventType(), true));
+        }
+
+        public BatchResult build() {
+            return failures.isEmpty() ? SUCCESS : new BatchResult(failures);
+        }
+    }
+}
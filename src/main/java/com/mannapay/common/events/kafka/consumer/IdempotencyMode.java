@@ -0,0 +1,30 @@
+package com.mannapay.common.events.kafka.consumer;
+
+/**
+ * Strategies used by {@link IdempotentEventProcessor} to detect duplicate deliveries.
+ *
+ * Configured with {@code kafka.consumer.idempotency.mode}.
+ */
+public enum IdempotencyMode {
+
+    /**
+     * One Redis entry per idempotency key, kept for the idempotency TTL.
+     * Catches duplicates regardless of where they were published.
+     */
+    KEY,
+
+    /**
+     * Per topic-partition committed-offset watermark plus a small set of
+     * offsets completed out of order. Memory grows with the number of
+     * partitions, not the number of events. Only detects redelivery of the
+     * same record (rebalances, crashes before commit), which is what an
+     * idempotent producer leaves us with.
+     */
+    OFFSET_WATERMARK,
+
+    /**
+     * Transactional JDBC inbox: the idempotency key is inserted in the same
+     * database transaction as the handler's writes. No Redis involved.
+     */
+    INBOX
+}
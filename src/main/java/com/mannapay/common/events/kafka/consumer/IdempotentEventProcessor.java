@@ -2,48 +2,157 @@ package com.mannapay.common.events.kafka.consumer;
 
 import com.mannapay.common.events.core.DomainEvent;
 import com.mannapay.common.events.core.EventEnvelope;
+import com.mannapay.common.events.inbox.InboxEvent;
+import com.mannapay.common.events.kafka.consumer.backpressure.BackpressureController;
+import com.mannapay.common.events.inbox.InboxService;
+import com.mannapay.common.events.kafka.consumer.dispatch.KeyOrderedExecutor;
+import com.mannapay.common.events.kafka.consumer.dispatch.OffsetCompletionTracker;
+import com.mannapay.common.events.kafka.consumer.idempotency.BucketedIdempotencyStore;
+import com.mannapay.common.events.kafka.consumer.idempotency.OffsetWatermarkTracker;
+import com.mannapay.common.events.kafka.consumer.idempotency.RedisIdempotencyLayout;
+import com.mannapay.common.events.kafka.consumer.lazy.LazyEventEnvelope;
+import com.mannapay.common.events.kafka.consumer.metrics.EventLatencyMetrics;
+import com.mannapay.common.events.kafka.consumer.parking.KeyParkingService;
+import com.mannapay.common.events.kafka.consumer.sequencing.EventResequencer;
+import com.mannapay.common.events.kafka.consumer.routing.EventHandlerRegistry;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Idempotent event processor ensuring exactly-once processing semantics.
  *
  * Features:
- * - Redis-based idempotency tracking
+ * - Redis-based idempotency tracking (legacy per-key or compact bucketed layout)
+ * - Optional offset-watermark tracking ({@code kafka.consumer.idempotency.mode=OFFSET_WATERMARK})
+ * - Optional transactional JDBC inbox ({@code kafka.consumer.idempotency.mode=INBOX})
+ * - Key-ordered parallel processing of polled batches
+ * - Non-blocking {@link AsyncEventHandler} support with per-partition in-flight limits
+ * - Header-driven routing through the {@link EventHandlerRegistry}
+ * - Lazily deserialized {@link LazyEventEnvelope} records
+ * - Micro-batched {@link BatchEventHandler} support for bulk sinks
+ * - Key-level parking of poison pills via {@link KeyParkingService}
+ * - Latency and in-flight reporting to the {@link BackpressureController}
+ * - Per-aggregate sequence ordering via {@link EventResequencer}
+ * - Per-topic/event-type event age and handler time histograms ({@link EventLatencyMetrics})
  * - Metrics collection
  * - Structured logging with correlation IDs
  * - Graceful error handling
  */
 @Component
 @Slf4j
-public class IdempotentEventProcessor {
+public class IdempotentEventProcessor implements ConsumerAwareRebalanceListener {
 
     private static final String PROCESSED_KEY_PREFIX = "mannapay:events:processed:";
-    private static final Duration IDEMPOTENCY_TTL = Duration.ofDays(7);
 
-    private final StringRedisTemplate redisTemplate;
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
     private final MeterRegistry meterRegistry;
+    private final OffsetWatermarkTracker offsetWatermarkTracker;
+    private final BucketedIdempotencyStore bucketedStore;
+    private final ObjectProvider<InboxService> inboxService;
+    private final KeyOrderedExecutor keyOrderedExecutor;
+    private final ObjectProvider<DeadLetterPublishingRecoverer> deadLetterRecoverer;
+    private final ObjectProvider<EventHandlerRegistry> eventHandlerRegistry;
+    private final ObjectProvider<KeyParkingService> keyParkingService;
+    private final BackpressureController backpressureController;
+    private final EventResequencer eventResequencer;
+    private final EventLatencyMetrics latencyMetrics;
+    private final IdempotencyMode idempotencyMode;
+    private final RedisIdempotencyLayout redisLayout;
+
+    private final OffsetCompletionTracker asyncCompletionTracker = new OffsetCompletionTracker();
+    private final Map<TopicPartition, Semaphore> asyncPermits = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, RoutedProgress> routedProgress = new ConcurrentHashMap<>();
+
+    // Shared with BucketedIdempotencyStore, so both layouts forget keys at the same age
+    @Value("${kafka.consumer.idempotency.ttl:P7D}")
+    private Duration idempotencyTtl;
+
+    @Value("${kafka.consumer.async.max-in-flight-per-partition:256}")
+    private int asyncMaxInFlightPerPartition;
+
+    @Value("${kafka.consumer.async.acquire-timeout-ms:60000}")
+    private long asyncAcquireTimeoutMs;
+
+    @Value("${kafka.consumer.async.handler-timeout-ms:30000}")
+    private long asyncHandlerTimeoutMs;
+
+    @Value("${kafka.consumer.retry.max-attempts:3}")
+    private int maxRetryAttempts;
+
+    @Value("${kafka.consumer.retry.interval-ms:1000}")
+    private long retryIntervalMs;
 
     private final Counter eventsProcessedCounter;
     private final Counter eventsDuplicateCounter;
     private final Counter eventsFailedCounter;
+    private final Counter eventsUnroutedCounter;
     private final Timer processingTimer;
 
-    public IdempotentEventProcessor(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+    public IdempotentEventProcessor(
+            ObjectProvider<StringRedisTemplate> redisTemplate,
+            MeterRegistry meterRegistry,
+            OffsetWatermarkTracker offsetWatermarkTracker,
+            BucketedIdempotencyStore bucketedStore,
+            ObjectProvider<InboxService> inboxService,
+            KeyOrderedExecutor keyOrderedExecutor,
+            ObjectProvider<DeadLetterPublishingRecoverer> deadLetterRecoverer,
+            ObjectProvider<EventHandlerRegistry> eventHandlerRegistry,
+            ObjectProvider<KeyParkingService> keyParkingService,
+            BackpressureController backpressureController,
+            EventResequencer eventResequencer,
+            EventLatencyMetrics latencyMetrics,
+            @Value("${kafka.consumer.idempotency.mode:KEY}") IdempotencyMode idempotencyMode,
+            @Value("${kafka.consumer.idempotency.redis-layout:LEGACY}") RedisIdempotencyLayout redisLayout) {
         this.redisTemplate = redisTemplate;
         this.meterRegistry = meterRegistry;
+        this.offsetWatermarkTracker = offsetWatermarkTracker;
+        this.bucketedStore = bucketedStore;
+        this.inboxService = inboxService;
+        this.keyOrderedExecutor = keyOrderedExecutor;
+        this.deadLetterRecoverer = deadLetterRecoverer;
+        this.eventHandlerRegistry = eventHandlerRegistry;
+        this.keyParkingService = keyParkingService;
+        this.backpressureController = backpressureController;
+        this.eventResequencer = eventResequencer;
+        this.latencyMetrics = latencyMetrics;
+        this.idempotencyMode = idempotencyMode;
+        this.redisLayout = redisLayout;
 
         this.eventsProcessedCounter = Counter.builder("mannapay.events.processed")
             .description("Total number of events processed")
@@ -57,6 +166,10 @@ public class IdempotentEventProcessor {
             .description("Total number of failed event processing attempts")
             .register(meterRegistry);
 
+        this.eventsUnroutedCounter = Counter.builder("mannapay.events.unrouted")
+            .description("Total number of events skipped because no handler is registered")
+            .register(meterRegistry);
+
         this.processingTimer = Timer.builder("mannapay.events.processing.time")
             .description("Time taken to process events")
             .register(meterRegistry);
@@ -75,6 +188,634 @@ public class IdempotentEventProcessor {
             EventHandler<T> handler,
             Acknowledgment ack) {
 
+        processEnvelope(record, handler);
+        ack.acknowledge();
+    }
+
+    /**
+     * Process an event in {@code sequenceNumber} order per aggregate.
+     *
+     * Events that arrive early (e.g. sequence 7 before 6 via a retry path) are
+     * held back and handled once their predecessor has been, without a DB
+     * lookup; sequences already processed here are acknowledged and skipped,
+     * while unseen lower ones are processed late (see {@link EventResequencer}). Buffered
+     * records are acknowledged only when handled, so use this with
+     * {@code asyncKafkaListenerContainerFactory}, whose out-of-order acks keep
+     * the committed offset behind them. A buffered event that fails when
+     * released is sent to the DLQ.
+     *
+     * Events without an aggregate ID or sequence number are processed directly.
+     *
+     * @param record The Kafka consumer record
+     * @param handler The event handler
+     * @param ack The acknowledgment
+     * @param <T> The event type
+     */
+    public <T extends DomainEvent> void processInSequence(
+            ConsumerRecord<String, EventEnvelope<T>> record,
+            EventHandler<T> handler,
+            Acknowledgment ack) {
+
+        T event = record.value().getPayload();
+        if (event.getAggregateId() == null || event.getSequenceNumber() <= 0) {
+            processIdempotently(record, handler, ack);
+            return;
+        }
+
+        // Buffered events are released on another thread
+        String group = offsetWatermarkTracker.currentGroup();
+        eventResequencer.offer(
+            event.getAggregateType() + ":" + event.getAggregateId(),
+            event.getSequenceNumber(),
+            OffsetWatermarkTracker.inGroup(group, () -> {
+                processEnvelope(record, handler);
+                ack.acknowledge();
+            }),
+            OffsetWatermarkTracker.inGroup(group, () -> {
+                eventsDuplicateCounter.increment();
+                offsetWatermarkTracker.markProcessed(record);
+                ack.acknowledge();
+            }),
+            error -> OffsetWatermarkTracker.inGroup(group, () -> deadLetterAsync(record, event, error, ack)).run());
+    }
+
+    /**
+     * Process an event with key-level poison-pill parking.
+     *
+     * Records whose key is parked are diverted to {@code <topic>.parked} in
+     * order and acknowledged, so other keys in the partition are not held up.
+     * A record that fails non-retryably, or {@code kafka.consumer.parking.max-failures}
+     * times, parks its key instead of going to the DLQ; earlier failures are
+     * rethrown for the container's regular retry. Parked keys are released
+     * with {@link KeyParkingService#unpark}.
+     *
+     * @param record The Kafka consumer record
+     * @param handler The event handler
+     * @param ack The acknowledgment
+     * @param <T> The event type
+     */
+    public <T extends DomainEvent> void processWithParking(
+            ConsumerRecord<String, EventEnvelope<T>> record,
+            EventHandler<T> handler,
+            Acknowledgment ack) {
+
+        KeyParkingService parking = keyParkingService.getObject();
+        if (parking.shouldDivert(record)) {
+            parking.divert(record);
+            offsetWatermarkTracker.markProcessed(record);
+            ack.acknowledge();
+            return;
+        }
+
+        try {
+            processEnvelope(record, handler);
+        } catch (EventHandlerException e) {
+            if (!parking.recordFailure(record, e.isRetryable())) {
+                throw e;
+            }
+            parking.park(record, e);
+            offsetWatermarkTracker.markProcessed(record);
+            ack.acknowledge();
+            return;
+        }
+
+        parking.recordSuccess(record);
+        parking.onReplayedRecordProcessed(record);
+        ack.acknowledge();
+    }
+
+    /**
+     * Process a lazily deserialized record.
+     *
+     * Redelivered records are detected and acknowledged before the body is
+     * parsed: by offset in OFFSET_WATERMARK mode, otherwise by the
+     * {@code idempotencyKey} header. Records without the header are parsed
+     * and checked by the envelope's key like {@link #processIdempotently}.
+     *
+     * @param record The Kafka consumer record
+     * @param handler The event handler
+     * @param ack The acknowledgment
+     * @param <T> The event type
+     */
+    public <T extends DomainEvent> void processLazily(
+            ConsumerRecord<String, LazyEventEnvelope<T>> record,
+            EventHandler<T> handler,
+            Acknowledgment ack) {
+
+        LazyEventEnvelope<T> lazy = record.value();
+        String headerKey = lazy.getIdempotencyKey();
+        boolean duplicate = switch (idempotencyMode) {
+            case OFFSET_WATERMARK -> offsetWatermarkTracker.isProcessed(record);
+            case INBOX -> headerKey != null && inboxService.getObject().isRecorded(headerKey);
+            default -> headerKey != null && isAlreadyProcessed(headerKey);
+        };
+        if (duplicate) {
+            log.info("Duplicate event detected, skipping: eventId={}, offset={}",
+                lazy.getEventId(), record.offset());
+            eventsDuplicateCounter.increment();
+            ack.acknowledge();
+            return;
+        }
+
+        ConsumerRecord<String, EventEnvelope<T>> parsed = new ConsumerRecord<>(
+            record.topic(), record.partition(), record.offset(),
+            record.timestamp(), record.timestampType(),
+            record.serializedKeySize(), record.serializedValueSize(),
+            record.key(), lazy.getEnvelope(),
+            record.headers(), record.leaderEpoch());
+        // Skip a second lookup when the header check already covered the envelope's key
+        boolean checked = idempotencyMode == IdempotencyMode.OFFSET_WATERMARK
+            || (headerKey != null && headerKey.equals(parsed.value().getIdempotencyKey()));
+        processEnvelope(parsed, handler, checked);
+        ack.acknowledge();
+    }
+
+    /**
+     * Process an event with the handlers registered for its type.
+     *
+     * Handlers are looked up in the {@link EventHandlerRegistry} by the
+     * {@code eventType} header (falling back to the payload class), so there is
+     * no per-record {@code canHandle} or {@code instanceof} chain. Events nobody
+     * handles are acknowledged and skipped. Use with
+     * {@code routedKafkaListenerContainerFactory} to also skip their deserialization.
+     *
+     * With several handlers, those that succeeded are not run again when a
+     * later one fails and the record is retried; progress is kept per
+     * partition for the record being retried. In INBOX mode all handlers share
+     * one transaction and are rolled back together, so all of them re-run.
+     *
+     * @param record The Kafka consumer record
+     * @param ack The acknowledgment
+     */
+    public void processRouted(ConsumerRecord<String, EventEnvelope<DomainEvent>> record, Acknowledgment ack) {
+        EventHandlerRegistry registry = eventHandlerRegistry.getObject();
+        String eventType = EventHandlerRegistry.eventTypeOf(record);
+        List<EventHandler<DomainEvent>> handlers = eventType != null
+            ? registry.handlersFor(eventType)
+            : registry.handlersFor(record.value().getPayload().getClass());
+
+        if (handlers.isEmpty()) {
+            log.debug("No handler registered, skipping: topic={}, offset={}, eventType={}",
+                record.topic(), record.offset(), eventType);
+            eventsUnroutedCounter.increment();
+            offsetWatermarkTracker.markProcessed(record);
+            ack.acknowledge();
+            return;
+        }
+
+        EventHandler<DomainEvent> handler = handlers.size() == 1
+            ? handlers.get(0)
+            : fanOut(record, handlers);
+        processIdempotently(record, handler, ack);
+    }
+
+    /**
+     * Handler running several handlers in turn, skipping those that already
+     * succeeded on an earlier attempt of the same record.
+     */
+    private EventHandler<DomainEvent> fanOut(ConsumerRecord<?, ?> record, List<EventHandler<DomainEvent>> handlers) {
+        if (idempotencyMode == IdempotencyMode.INBOX) {
+            return event -> handlers.forEach(h -> h.handle(event));
+        }
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        return event -> {
+            // One record per partition is in flight on a record container; a different
+            // offset means the previous one was recovered or skipped
+            RoutedProgress progress = routedProgress.compute(partition, (tp, current) ->
+                current != null && current.offset == record.offset() ? current : new RoutedProgress(record.offset()));
+            for (int i = 0; i < handlers.size(); i++) {
+                if (!progress.completed.get(i)) {
+                    handlers.get(i).handle(event);
+                    progress.completed.set(i);
+                }
+            }
+            routedProgress.remove(partition, progress);
+        };
+    }
+
+    /**
+     * Process a polled batch concurrently, serialized per record key.
+     *
+     * Records with the same key (same aggregate) in the same partition run one
+     * after another in offset order; different keys run in parallel on the {@link KeyOrderedExecutor},
+     * so throughput is no longer capped by the partition count. Once a record
+     * fails, later records with the same key in its partition are skipped to
+     * keep per-aggregate ordering.
+     *
+     * The batch is acknowledged only if every partition completed contiguously.
+     * Otherwise the first record that did not complete is reported through
+     * {@link BatchListenerFailedException}: the container commits the records
+     * before it and retries/DLQs from there; records after it that did complete
+     * are redelivered and skipped as duplicates.
+     *
+     * Use with {@code batchKafkaListenerContainerFactory}.
+     *
+     * @param records The polled records
+     * @param handler The event handler
+     * @param ack The batch acknowledgment
+     * @param <T> The event type
+     */
+    public <T extends DomainEvent> void processBatchInParallel(
+            List<ConsumerRecord<String, EventEnvelope<T>>> records,
+            EventHandler<T> handler,
+            Acknowledgment ack) {
+
+        OffsetCompletionTracker completionTracker = new OffsetCompletionTracker();
+        Set<String> failedKeys = ConcurrentHashMap.newKeySet();
+        Map<ConsumerRecord<?, ?>, Exception> failures = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(records.size());
+        String group = offsetWatermarkTracker.currentGroup();
+
+        for (ConsumerRecord<String, EventEnvelope<T>> record : records) {
+            // Watermark checks must see offsets in order, so they run here on the consumer thread
+            if (idempotencyMode == IdempotencyMode.OFFSET_WATERMARK
+                    && offsetWatermarkTracker.isProcessed(record)) {
+                eventsDuplicateCounter.increment();
+                continue;
+            }
+
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            // Ordering (and skipping after a failure) only applies within a partition
+            String orderingKey = record.key() != null ? partition + "|" + record.key() : partition.toString();
+            completionTracker.register(partition, record.offset());
+
+            futures.add(keyOrderedExecutor.submit(orderingKey, OffsetWatermarkTracker.inGroup(group, () -> {
+                if (failedKeys.contains(orderingKey)) {
+                    return;
+                }
+                try {
+                    processEnvelope(record, handler);
+                    completionTracker.complete(partition, record.offset());
+                } catch (Exception e) {
+                    failedKeys.add(orderingKey);
+                    failures.put(record, e);
+                }
+            })));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        for (ConsumerRecord<String, EventEnvelope<T>> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            long committable = completionTracker.committableOffset(partition).orElse(Long.MAX_VALUE);
+            if (record.offset() >= committable) {
+                // Lowest pending offset of a partition is always a failed record, never a skipped one
+                throw new BatchListenerFailedException("Parallel batch processing failed",
+                    failures.get(record), record);
+            }
+        }
+
+        ack.acknowledge();
+    }
+
+    /**
+     * Process a polled batch with a bulk handler.
+     *
+     * Duplicates (including repeated keys within the batch) are dropped first,
+     * then the remaining events are grouped by concrete class and each group is
+     * passed to the handler in one call. Order is kept within a group but not
+     * across groups, so batch handlers suit sinks that are insensitive to the
+     * relative order of different event types (projections with upserts, audit).
+     *
+     * Events the handler reports as failed, or all events of a group whose call
+     * threw, are left unmarked. The lowest failed record is reported through
+     * {@link BatchListenerFailedException}: the container commits the records
+     * before it and retries/DLQs from there; later records that succeeded are
+     * redelivered and skipped as duplicates.
+     *
+     * Use with {@code batchKafkaListenerContainerFactory}.
+     *
+     * @param records The polled records
+     * @param handler The batch event handler
+     * @param ack The batch acknowledgment
+     * @param <T> The event type
+     */
+    public <T extends DomainEvent> void processBatch(
+            List<ConsumerRecord<String, EventEnvelope<T>>> records,
+            BatchEventHandler<T> handler,
+            Acknowledgment ack) {
+
+        long startTime = System.nanoTime();
+        Set<String> seenKeys = new HashSet<>();
+        Map<Class<?>, List<ConsumerRecord<String, EventEnvelope<T>>>> groups = new LinkedHashMap<>();
+
+        for (ConsumerRecord<String, EventEnvelope<T>> record : records) {
+            EventEnvelope<T> envelope = record.value();
+            T event = envelope.getPayload();
+            String idempotencyKey = envelope.getIdempotencyKey();
+
+            if (!handler.canHandle(event)) {
+                offsetWatermarkTracker.markProcessed(record);
+                continue;
+            }
+            if (!seenKeys.add(idempotencyKey)
+                    || (idempotencyMode != IdempotencyMode.INBOX && isDuplicate(record, idempotencyKey))) {
+                eventsDuplicateCounter.increment();
+                continue;
+            }
+            latencyMetrics.recordConsumed(record.topic(), event);
+            groups.computeIfAbsent(event.getClass(), k -> new ArrayList<>()).add(record);
+        }
+
+        Map<ConsumerRecord<?, ?>, Exception> failures = new HashMap<>();
+        int processed = 0;
+        for (List<ConsumerRecord<String, EventEnvelope<T>>> group : groups.values()) {
+            processed += handleBatchGroup(group, handler, failures);
+        }
+
+        eventsProcessedCounter.increment(processed);
+        eventsFailedCounter.increment(failures.size());
+        processingTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+
+        log.debug("Batch processed: records={}, groups={}, processed={}, failed={}",
+            records.size(), groups.size(), processed, failures.size());
+
+        for (ConsumerRecord<String, EventEnvelope<T>> record : records) {
+            Exception failure = failures.get(record);
+            if (failure != null) {
+                throw new BatchListenerFailedException("Batch handler failed", failure, record);
+            }
+        }
+
+        ack.acknowledge();
+    }
+
+    /**
+     * Hand one type group to the batch handler and record the outcome.
+     *
+     * @return the number of events handled successfully
+     */
+    private <T extends DomainEvent> int handleBatchGroup(
+            List<ConsumerRecord<String, EventEnvelope<T>>> group,
+            BatchEventHandler<T> handler,
+            Map<ConsumerRecord<?, ?>, Exception> failures) {
+
+        List<T> events = new ArrayList<>(group.size());
+        group.forEach(record -> events.add(record.value().getPayload()));
+
+        BatchResult result;
+        Set<DomainEvent> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            if (idempotencyMode == IdempotencyMode.INBOX) {
+                InboxService inbox = inboxService.getObject();
+                List<InboxEvent> entries = new ArrayList<>(group.size());
+                group.forEach(record -> entries.add(inbox.toInboxEvent(
+                    record.value().getIdempotencyKey(), record.value().getPayload(), record)));
+                InboxService.BatchOutcome<T> outcome = inbox.processBatchOnce(entries, events, handler);
+                duplicates.addAll(outcome.getDuplicates());
+                eventsDuplicateCounter.increment(duplicates.size());
+                result = outcome.getResult();
+            } else {
+                result = handler.handleBatch(events);
+            }
+        } catch (Exception e) {
+            log.error("Batch handler failed: eventClass={}, size={}, error={}",
+                events.get(0).getClass().getSimpleName(), events.size(), e.getMessage(), e);
+            group.forEach(record -> failures.put(record, e));
+            return 0;
+        }
+
+        int handled = 0;
+        for (ConsumerRecord<String, EventEnvelope<T>> record : group) {
+            T event = record.value().getPayload();
+            EventHandlerException failure = result.getFailure(event);
+            if (failure != null) {
+                log.error("Batch event failed: eventType={}, eventId={}, retryable={}, error={}",
+                    event.getEventType(), event.getEventId(), failure.isRetryable(), failure.getMessage());
+                failures.put(record, failure);
+            } else if (!duplicates.contains(event)) {
+                if (idempotencyMode != IdempotencyMode.INBOX) {
+                    recordProcessed(record, record.value().getIdempotencyKey(), event);
+                }
+                handled++;
+            }
+        }
+        return handled;
+    }
+
+    /**
+     * Process an event with a non-blocking handler.
+     *
+     * The consumer thread only runs the duplicate check and starts the handler;
+     * completion (marking, metrics, ack) happens when the returned stage
+     * completes, on the worker pool. Failures, and attempts not completed within
+     * {@code kafka.consumer.async.handler-timeout-ms}, are retried with the
+     * configured fixed backoff and then published to the DLQ, after which the
+     * record is acknowledged like any other.
+     *
+     * Each partition may have at most {@code kafka.consumer.async.max-in-flight-per-partition}
+     * records outstanding; beyond that the consumer thread waits for a slot.
+     * Use with {@code asyncKafkaListenerContainerFactory}, whose out-of-order
+     * acks commit an offset only after every record before it completed.
+     *
+     * INBOX idempotency needs the handler inside a DB transaction and is not
+     * supported here.
+     *
+     * @param record The Kafka consumer record
+     * @param handler The async event handler
+     * @param ack The acknowledgment
+     * @param <T> The event type
+     */
+    public <T extends DomainEvent> void processAsync(
+            ConsumerRecord<String, EventEnvelope<T>> record,
+            AsyncEventHandler<T> handler,
+            Acknowledgment ack) {
+
+        if (idempotencyMode == IdempotencyMode.INBOX) {
+            throw new IllegalStateException("INBOX idempotency requires a synchronous EventHandler");
+        }
+
+        EventEnvelope<T> envelope = record.value();
+        T event = envelope.getPayload();
+        String idempotencyKey = envelope.getIdempotencyKey();
+
+        if (isDuplicate(record, idempotencyKey)) {
+            log.info("Duplicate event detected, skipping: eventId={}, idempotencyKey={}",
+                event.getEventId(), idempotencyKey);
+            eventsDuplicateCounter.increment();
+            ack.acknowledge();
+            return;
+        }
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        Semaphore permits = asyncPermits.computeIfAbsent(partition,
+            tp -> new Semaphore(asyncMaxInFlightPerPartition));
+        acquireInFlightSlot(permits, event);
+        asyncCompletionTracker.register(partition, record.offset());
+        backpressureController.recordStarted(record);
+        latencyMetrics.recordConsumed(record.topic(), event);
+
+        long startTime = System.nanoTime();
+        // Backpressure samples handler latency, not the retry back-off in between
+        AtomicLong attemptStart = new AtomicLong(startTime);
+        String group = offsetWatermarkTracker.currentGroup();
+        Executor completionExecutor = task -> keyOrderedExecutor.execute(OffsetWatermarkTracker.inGroup(group, task));
+
+        handleAsyncWithRetry(event, handler, 0, attemptStart)
+            .whenCompleteAsync((result, error) -> {
+                try {
+                    if (error == null) {
+                        completeAsync(record, idempotencyKey, event, startTime);
+                        ack.acknowledge();
+                    } else {
+                        failAsync(record, event, unwrap(error), ack);
+                    }
+                } finally {
+                    asyncCompletionTracker.complete(partition, record.offset());
+                    permits.release();
+                    backpressureController.recordCompleted(record, System.nanoTime() - attemptStart.get());
+                }
+            }, completionExecutor);
+    }
+
+    /**
+     * Number of async records dispatched but not yet completed for a partition.
+     */
+    public int getAsyncInFlight(TopicPartition partition) {
+        return asyncCompletionTracker.inFlight(partition);
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        releasePartitionState(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        releasePartitionState(partitions);
+    }
+
+    /**
+     * Forget in-flight slots, completion state and routed-handler progress of
+     * partitions no longer assigned; async stages still running release into
+     * the dropped semaphore.
+     */
+    private void releasePartitionState(Collection<TopicPartition> partitions) {
+        partitions.forEach(asyncPermits::remove);
+        partitions.forEach(routedProgress::remove);
+        asyncCompletionTracker.clear(partitions);
+    }
+
+    private void acquireInFlightSlot(Semaphore permits, DomainEvent event) {
+        try {
+            if (!permits.tryAcquire(asyncAcquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new EventHandlerException("In-flight limit reached for partition",
+                    event.getEventId(), event.getEventType(), true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EventHandlerException.retryable("Interrupted waiting for in-flight slot", e);
+        }
+    }
+
+    private <T extends DomainEvent> CompletableFuture<Void> handleAsyncWithRetry(
+            T event, AsyncEventHandler<T> handler, int attempt, AtomicLong attemptStart) {
+
+        attemptStart.set(System.nanoTime());
+        CompletableFuture<Void> attemptFuture;
+        try {
+            // Time out a copy, so a stuck stage frees its slot without the handler's future being completed
+            attemptFuture = handler.handleAsync(event).toCompletableFuture()
+                .copy()
+                .orTimeout(asyncHandlerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            attemptFuture = CompletableFuture.failedFuture(e);
+        }
+
+        return attemptFuture.handle((result, error) -> {
+            if (error == null) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            Throwable cause = unwrap(error);
+            boolean retryable = !(cause instanceof EventHandlerException ehe) || ehe.isRetryable();
+            if (!retryable || attempt >= maxRetryAttempts) {
+                return CompletableFuture.<Void>failedFuture(cause);
+            }
+            log.warn("Async event handling failed, retrying: eventId={}, attempt={}, error={}",
+                event.getEventId(), attempt + 1, cause.getMessage());
+            Executor delayed = CompletableFuture.delayedExecutor(retryIntervalMs, TimeUnit.MILLISECONDS,
+                keyOrderedExecutor::execute);
+            return CompletableFuture.runAsync(() -> { }, delayed)
+                .thenCompose(ignored -> handleAsyncWithRetry(event, handler, attempt + 1, attemptStart));
+        }).thenCompose(future -> future);
+    }
+
+    private void completeAsync(ConsumerRecord<String, ?> record, String idempotencyKey,
+                               DomainEvent event, long startTime) {
+        try {
+            recordProcessed(record, idempotencyKey, event);
+        } catch (Exception e) {
+            // Handled already; a redelivery would only be a duplicate, so still acknowledge
+            log.warn("Failed to record processed event: eventId={}, error={}", event.getEventId(), e.getMessage());
+        }
+
+        eventsProcessedCounter.increment();
+        long duration = System.nanoTime() - startTime;
+        processingTimer.record(duration, TimeUnit.NANOSECONDS);
+        latencyMetrics.recordHandled(record.topic(), event, duration);
+
+        log.info("Event processed successfully: eventType={}, eventId={}, correlationId={}, durationMs={}",
+            event.getEventType(),
+            event.getEventId(),
+            event.getCorrelationId(),
+            TimeUnit.NANOSECONDS.toMillis(duration));
+    }
+
+    private void failAsync(ConsumerRecord<String, ?> record, DomainEvent event, Throwable error, Acknowledgment ack) {
+        eventsFailedCounter.increment();
+        log.error("Async event processing failed: topic={}, eventType={}, eventId={}, correlationId={}, error={}",
+            record.topic(),
+            event.getEventType(),
+            event.getEventId(),
+            event.getCorrelationId(),
+            error.getMessage(),
+            error);
+
+        Exception cause = error instanceof Exception e ? e : new EventHandlerException("Unexpected error", error);
+        deadLetterAsync(record, event, cause, ack);
+    }
+
+    private void deadLetterAsync(ConsumerRecord<String, ?> record, DomainEvent event, Exception cause, Acknowledgment ack) {
+        try {
+            deadLetterRecoverer.getObject().accept(record, cause);
+            offsetWatermarkTracker.markProcessed(record);
+            ack.acknowledge();
+        } catch (Exception dlqError) {
+            // Never ack an unrecovered record; like the blocking error handler, keep trying
+            log.error("DLQ publish failed, retrying: eventId={}, error={}", event.getEventId(), dlqError.getMessage());
+            String group = offsetWatermarkTracker.currentGroup();
+            CompletableFuture.delayedExecutor(retryIntervalMs, TimeUnit.MILLISECONDS, keyOrderedExecutor::execute)
+                .execute(OffsetWatermarkTracker.inGroup(group, () -> deadLetterAsync(record, event, cause, ack)));
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Process one enveloped record: dedup, handle, record, metrics.
+     *
+     * @throws EventHandlerException if the handler fails
+     */
+    private <T extends DomainEvent> void processEnvelope(
+            ConsumerRecord<String, EventEnvelope<T>> record,
+            EventHandler<T> handler) {
+        processEnvelope(record, handler, false);
+    }
+
+    /**
+     * Process one enveloped record.
+     *
+     * @param checkedNew true if the caller already found the record not to be a
+     *                   duplicate; the lookup is skipped unless INBOX mode needs
+     *                   it for its atomic insert
+     */
+    private <T extends DomainEvent> void processEnvelope(
+            ConsumerRecord<String, EventEnvelope<T>> record,
+            EventHandler<T> handler,
+            boolean checkedNew) {
+
         EventEnvelope<T> envelope = record.value();
         T event = envelope.getPayload();
         String idempotencyKey = envelope.getIdempotencyKey();
@@ -89,28 +830,21 @@ public class IdempotentEventProcessor {
             event.getEventId(),
             event.getCorrelationId());
 
+        backpressureController.recordStarted(record);
+        latencyMetrics.recordConsumed(record.topic(), event);
         try {
-            // Check idempotency
-            if (isAlreadyProcessed(idempotencyKey)) {
+            // Process the event unless it is a duplicate
+            if (!handleOnce(record, idempotencyKey, event, handler, checkedNew)) {
                 log.info("Duplicate event detected, skipping: eventId={}, idempotencyKey={}",
                     event.getEventId(), idempotencyKey);
                 eventsDuplicateCounter.increment();
-                ack.acknowledge();
                 return;
             }
 
-            // Process the event
-            handler.handle(event);
-
-            // Mark as processed
-            markAsProcessed(idempotencyKey, event);
-
-            // Acknowledge
-            ack.acknowledge();
-
             eventsProcessedCounter.increment();
             long duration = System.nanoTime() - startTime;
             processingTimer.record(duration, TimeUnit.NANOSECONDS);
+            latencyMetrics.recordHandled(record.topic(), event, duration);
 
             log.info("Event processed successfully: eventType={}, eventId={}, correlationId={}, durationMs={}",
                 event.getEventType(),
@@ -119,10 +853,12 @@ public class IdempotentEventProcessor {
                 TimeUnit.NANOSECONDS.toMillis(duration));
 
         } catch (EventHandlerException e) {
-            handleProcessingError(record, envelope, e, ack);
+            handleProcessingError(record, envelope, e);
         } catch (Exception e) {
             handleProcessingError(record, envelope,
-                new EventHandlerException("Unexpected error", e, true), ack);
+                new EventHandlerException("Unexpected error", e, true));
+        } finally {
+            backpressureController.recordCompleted(record, System.nanoTime() - startTime);
         }
     }
 
@@ -141,22 +877,22 @@ public class IdempotentEventProcessor {
         }
 
         long startTime = System.nanoTime();
+        latencyMetrics.recordConsumed(record.topic(), event);
 
         try {
-            if (isAlreadyProcessed(idempotencyKey)) {
+            if (!handleOnce(record, idempotencyKey, event, handler, false)) {
                 log.info("Duplicate event detected, skipping: eventId={}", event.getEventId());
                 eventsDuplicateCounter.increment();
                 ack.acknowledge();
                 return;
             }
 
-            handler.handle(event);
-            markAsProcessed(idempotencyKey, event);
             ack.acknowledge();
 
             eventsProcessedCounter.increment();
             long duration = System.nanoTime() - startTime;
             processingTimer.record(duration, TimeUnit.NANOSECONDS);
+            latencyMetrics.recordHandled(record.topic(), event, duration);
 
             log.info("Event processed: eventType={}, eventId={}, durationMs={}",
                 event.getEventType(), event.getEventId(), TimeUnit.NANOSECONDS.toMillis(duration));
@@ -173,20 +909,78 @@ public class IdempotentEventProcessor {
      * Check if an event has already been processed.
      */
     public boolean isAlreadyProcessed(String idempotencyKey) {
+        if (redisLayout != RedisIdempotencyLayout.LEGACY && bucketedStore.contains(idempotencyKey)) {
+            return true;
+        }
+        if (redisLayout == RedisIdempotencyLayout.BUCKETED) {
+            return false;
+        }
         String key = PROCESSED_KEY_PREFIX + idempotencyKey;
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+        return Boolean.TRUE.equals(redisTemplate.getObject().hasKey(key));
     }
 
     /**
      * Mark an event as processed.
      */
     public void markAsProcessed(String idempotencyKey, DomainEvent event) {
+        if (redisLayout != RedisIdempotencyLayout.LEGACY) {
+            bucketedStore.add(idempotencyKey);
+        }
+        if (redisLayout == RedisIdempotencyLayout.BUCKETED) {
+            return;
+        }
         String key = PROCESSED_KEY_PREFIX + idempotencyKey;
         String value = String.format("%s|%s|%s",
             event.getEventType(),
             event.getEventId(),
             Instant.now().toString());
-        redisTemplate.opsForValue().set(key, value, IDEMPOTENCY_TTL);
+        redisTemplate.getObject().opsForValue().set(key, value, idempotencyTtl);
+    }
+
+    /**
+     * Run the handler unless the event was already processed, then record it.
+     *
+     * @return false if the event was a duplicate and the handler was skipped
+     */
+    private <T extends DomainEvent> boolean handleOnce(
+            ConsumerRecord<String, ?> record,
+            String idempotencyKey,
+            T event,
+            EventHandler<T> handler,
+            boolean checkedNew) {
+
+        if (idempotencyMode == IdempotencyMode.INBOX) {
+            // Dedup and handler writes commit atomically in one DB transaction
+            return inboxService.getObject().processOnce(idempotencyKey, event, record, handler);
+        }
+
+        if (!checkedNew && isDuplicate(record, idempotencyKey)) {
+            return false;
+        }
+        handler.handle(event);
+        recordProcessed(record, idempotencyKey, event);
+        return true;
+    }
+
+    /**
+     * Duplicate check for the configured idempotency mode.
+     */
+    private boolean isDuplicate(ConsumerRecord<String, ?> record, String idempotencyKey) {
+        if (idempotencyMode == IdempotencyMode.OFFSET_WATERMARK) {
+            return offsetWatermarkTracker.isProcessed(record);
+        }
+        return isAlreadyProcessed(idempotencyKey);
+    }
+
+    /**
+     * Record successful processing for the configured idempotency mode.
+     */
+    private void recordProcessed(ConsumerRecord<String, ?> record, String idempotencyKey, DomainEvent event) {
+        if (idempotencyMode == IdempotencyMode.OFFSET_WATERMARK) {
+            offsetWatermarkTracker.markProcessed(record);
+            return;
+        }
+        markAsProcessed(idempotencyKey, event);
     }
 
     /**
@@ -195,8 +989,7 @@ public class IdempotentEventProcessor {
     private void handleProcessingError(
             ConsumerRecord<String, ?> record,
             EventEnvelope<? extends DomainEvent> envelope,
-            EventHandlerException e,
-            Acknowledgment ack) {
+            EventHandlerException e) {
 
         DomainEvent event = envelope.getPayload();
         eventsFailedCounter.increment();
@@ -241,4 +1034,17 @@ public class IdempotentEventProcessor {
         }
         return null;
     }
+
+    /**
+     * Handlers of a routed record that already succeeded.
+     */
+    private static final class RoutedProgress {
+
+        private final long offset;
+        private final BitSet completed = new BitSet();
+
+        private RoutedProgress(long offset) {
+            this.offset = offset;
+        }
+    }
 }
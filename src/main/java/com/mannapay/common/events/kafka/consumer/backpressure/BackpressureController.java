@@ -0,0 +1,311 @@
+package com.mannapay.common.events.kafka.consumer.backpressure;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.KafkaUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saturation-driven flow control for listener containers.
+ *
+ * The processor reports when each record starts and finishes; the controller
+ * keeps an exponentially weighted handler latency and per-partition in-flight
+ * counts per listener container, and on every tick pauses or resumes that
+ * container's partitions:
+ * - saturated (latency above the high mark, or a partition over its in-flight
+ *   limit): partitions are paused; paused consumers keep polling, so the group
+ *   membership stays healthy and no rebalance is triggered
+ * - recovered (latency below the low mark): paused partitions are resumed;
+ *   between the marks the previous state is kept, so the controller does not
+ *   flap around a single threshold
+ *
+ * It also adapts the effective poll size with AIMD: halved on saturation,
+ * increased by a tenth of the maximum while healthy. A live consumer's
+ * {@code max.poll.records} is fixed, so with
+ * {@code kafka.consumer.backpressure.poll-budget.enabled=true} the adaptive
+ * value is enforced as a per-partition record budget per tick while
+ * saturated: a partition that delivered more than it in a tick is paused
+ * until the controller recovers.
+ *
+ * Containers are told apart by consumer group, the identity known on the
+ * handler thread (async completions carry it along, see
+ * {@code OffsetWatermarkTracker#inGroup}); a slow listener only throttles
+ * its own container. Off unless {@code kafka.consumer.backpressure.enabled=true}.
+ *
+ * Only partitions paused by this controller are resumed by it.
+ */
+@Component
+@Slf4j
+public class BackpressureController {
+
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+    private static final String UNKNOWN_GROUP = "unknown";
+
+    private final ObjectProvider<KafkaListenerEndpointRegistry> endpointRegistry;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long latencyHighNanos;
+    private final long latencyLowNanos;
+    private final int maxInFlightPerPartition;
+    private final int minPollRecords;
+    private final int maxPollRecords;
+    private final boolean pollBudgetEnabled;
+
+    private final Map<String, ContainerState> containers = new ConcurrentHashMap<>();
+
+    public BackpressureController(
+            ObjectProvider<KafkaListenerEndpointRegistry> endpointRegistry,
+            MeterRegistry meterRegistry,
+            @Value("${kafka.consumer.backpressure.enabled:false}") boolean enabled,
+            @Value("${kafka.consumer.backpressure.latency-high-ms:2000}") long latencyHighMs,
+            @Value("${kafka.consumer.backpressure.latency-low-ms:500}") long latencyLowMs,
+            @Value("${kafka.consumer.backpressure.max-in-flight-per-partition:500}") int maxInFlightPerPartition,
+            @Value("${kafka.consumer.backpressure.min-poll-records:10}") int minPollRecords,
+            @Value("${kafka.consumer.max-poll-records:500}") int maxPollRecords,
+            @Value("${kafka.consumer.backpressure.poll-budget.enabled:false}") boolean pollBudgetEnabled) {
+
+        this.endpointRegistry = endpointRegistry;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.latencyHighNanos = TimeUnit.MILLISECONDS.toNanos(latencyHighMs);
+        this.latencyLowNanos = TimeUnit.MILLISECONDS.toNanos(latencyLowMs);
+        this.maxInFlightPerPartition = maxInFlightPerPartition;
+        this.minPollRecords = minPollRecords;
+        this.maxPollRecords = maxPollRecords;
+        this.pollBudgetEnabled = pollBudgetEnabled;
+    }
+
+    /**
+     * Record that the handler started on a record. Must run on the consumer
+     * thread or carry its consumer group.
+     */
+    public void recordStarted(ConsumerRecord<?, ?> record) {
+        if (!enabled) {
+            return;
+        }
+        ContainerState state = stateOf(currentGroup());
+        TopicPartition partition = partitionOf(record);
+        state.inFlight.computeIfAbsent(partition, tp -> new AtomicInteger()).incrementAndGet();
+        if (pollBudgetEnabled) {
+            state.deliveredThisTick.computeIfAbsent(partition, tp -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Record that the handler finished a record, successfully or not. Must
+     * run on the consumer thread or carry its consumer group.
+     */
+    public void recordCompleted(ConsumerRecord<?, ?> record, long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        ContainerState state = stateOf(currentGroup());
+        AtomicInteger count = state.inFlight.get(partitionOf(record));
+        if (count != null) {
+            count.decrementAndGet();
+        }
+        state.completedThisTick.incrementAndGet();
+        state.updateLatency(durationNanos);
+    }
+
+    /**
+     * Re-evaluate saturation, adapt the poll budget and pause/resume partitions,
+     * per container.
+     */
+    @Scheduled(fixedDelayString = "${kafka.consumer.backpressure.interval-ms:500}")
+    public void evaluate() {
+        if (!enabled) {
+            return;
+        }
+        KafkaListenerEndpointRegistry registry = endpointRegistry.getIfAvailable();
+        if (registry == null) {
+            return;
+        }
+        Map<String, Set<TopicPartition>> live = new ConcurrentHashMap<>();
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            String group = groupOf(container);
+            ContainerState state = stateOf(group);
+            Collection<TopicPartition> assigned = container.getAssignedPartitions();
+            if (assigned != null) {
+                live.computeIfAbsent(group, g -> new HashSet<>()).addAll(assigned);
+            }
+            evaluate(container, state, assigned);
+        }
+
+        // Forget state of partitions no longer assigned to the container
+        containers.forEach((group, state) -> {
+            Set<TopicPartition> assigned = live.getOrDefault(group, Set.of());
+            state.pausedByController.retainAll(assigned);
+            state.inFlight.keySet().removeIf(tp -> !assigned.contains(tp) && state.inFlightOf(tp) <= 0);
+            state.deliveredThisTick.keySet().retainAll(assigned);
+            state.deliveredThisTick.values().forEach(count -> count.set(0));
+        });
+    }
+
+    private void evaluate(MessageListenerContainer container, ContainerState state,
+                          Collection<TopicPartition> assigned) {
+        if (state.completedThisTick.getAndSet(0) == 0) {
+            // Nothing completed (e.g. all paused): let the latency estimate decay
+            state.decayLatency();
+        }
+        double latency = state.latencyEwmaNanos;
+
+        boolean overloaded = latency > latencyHighNanos;
+        boolean recovered = latency < latencyLowNanos;
+
+        if (overloaded) {
+            state.effectiveMaxPollRecords = Math.max(minPollRecords, state.effectiveMaxPollRecords / 2);
+        } else if (recovered) {
+            state.effectiveMaxPollRecords = Math.min(maxPollRecords,
+                state.effectiveMaxPollRecords + Math.max(1, maxPollRecords / 10));
+        }
+
+        // Engage above the high mark, release only below the low mark
+        if (state.saturated ? recovered : overloaded) {
+            state.saturated = !state.saturated;
+            log.info("Consumer backpressure {}: group={}, latencyMs={}, maxPollRecords={}",
+                state.saturated ? "engaged" : "released", state.group,
+                TimeUnit.NANOSECONDS.toMillis((long) latency), state.effectiveMaxPollRecords);
+        }
+
+        if (assigned == null) {
+            return;
+        }
+        for (TopicPartition partition : assigned) {
+            boolean partitionOverloaded = state.inFlightOf(partition) > maxInFlightPerPartition;
+            boolean overBudget = pollBudgetEnabled && state.saturated
+                && state.deliveredOf(partition) > state.effectiveMaxPollRecords;
+            if (overloaded || overBudget || partitionOverloaded) {
+                pause(container, state, partition);
+            } else if (!state.saturated && state.inFlightOf(partition) <= maxInFlightPerPartition / 2) {
+                resume(container, state, partition);
+            }
+        }
+    }
+
+    public boolean isSaturated(String group) {
+        ContainerState state = containers.get(group);
+        return state != null && state.saturated;
+    }
+
+    public int getEffectiveMaxPollRecords(String group) {
+        ContainerState state = containers.get(group);
+        return state != null ? state.effectiveMaxPollRecords : maxPollRecords;
+    }
+
+    public double getLatencyEwmaMillis(String group) {
+        ContainerState state = containers.get(group);
+        return state != null ? state.latencyEwmaNanos / 1_000_000.0 : 0;
+    }
+
+    public int inFlightOf(String group, TopicPartition partition) {
+        ContainerState state = containers.get(group);
+        return state != null ? state.inFlightOf(partition) : 0;
+    }
+
+    private void pause(MessageListenerContainer container, ContainerState state, TopicPartition partition) {
+        if (!container.isPartitionPauseRequested(partition) && state.pausedByController.add(partition)) {
+            container.pausePartition(partition);
+            log.debug("Paused partition: group={}, partition={}", state.group, partition);
+        }
+    }
+
+    private void resume(MessageListenerContainer container, ContainerState state, TopicPartition partition) {
+        if (state.pausedByController.remove(partition)) {
+            container.resumePartition(partition);
+            log.debug("Resumed partition: group={}, partition={}", state.group, partition);
+        }
+    }
+
+    private ContainerState stateOf(String group) {
+        return containers.computeIfAbsent(group, this::register);
+    }
+
+    private ContainerState register(String group) {
+        ContainerState state = new ContainerState(group, maxPollRecords);
+        Gauge.builder("mannapay.consumer.backpressure.paused.partitions", state, s -> s.pausedByController.size())
+            .description("Partitions paused by the backpressure controller")
+            .tag("group", group)
+            .register(meterRegistry);
+        Gauge.builder("mannapay.consumer.backpressure.max.poll.records", state, s -> s.effectiveMaxPollRecords)
+            .description("Adaptive record budget per backpressure tick")
+            .tag("group", group)
+            .register(meterRegistry);
+        Gauge.builder("mannapay.consumer.handler.latency.ewma", state, s -> s.latencyEwmaNanos / 1_000_000.0)
+            .description("Exponentially weighted handler latency in milliseconds")
+            .tag("group", group)
+            .register(meterRegistry);
+        return state;
+    }
+
+    private static String currentGroup() {
+        String group = KafkaUtils.getConsumerGroupId();
+        return group != null ? group : UNKNOWN_GROUP;
+    }
+
+    private static String groupOf(MessageListenerContainer container) {
+        String group = container.getGroupId();
+        return group != null ? group : UNKNOWN_GROUP;
+    }
+
+    private static TopicPartition partitionOf(ConsumerRecord<?, ?> record) {
+        return new TopicPartition(record.topic(), record.partition());
+    }
+
+    /**
+     * Flow-control state of one listener container.
+     */
+    private static final class ContainerState {
+
+        private final String group;
+        private final Map<TopicPartition, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        private final Set<TopicPartition> pausedByController = ConcurrentHashMap.newKeySet();
+        private final Map<TopicPartition, AtomicInteger> deliveredThisTick = new ConcurrentHashMap<>();
+        private final AtomicInteger completedThisTick = new AtomicInteger();
+
+        private volatile double latencyEwmaNanos;
+        private volatile int effectiveMaxPollRecords;
+        private volatile boolean saturated;
+
+        private ContainerState(String group, int maxPollRecords) {
+            this.group = group;
+            this.effectiveMaxPollRecords = maxPollRecords;
+        }
+
+        private int inFlightOf(TopicPartition partition) {
+            AtomicInteger count = inFlight.get(partition);
+            return count != null ? count.get() : 0;
+        }
+
+        private int deliveredOf(TopicPartition partition) {
+            AtomicInteger count = deliveredThisTick.get(partition);
+            return count != null ? count.get() : 0;
+        }
+
+        private synchronized void updateLatency(long durationNanos) {
+            latencyEwmaNanos = latencyEwmaNanos == 0
+                ? durationNanos
+                : LATENCY_EWMA_ALPHA * durationNanos + (1 - LATENCY_EWMA_ALPHA) * latencyEwmaNanos;
+        }
+
+        private synchronized void decayLatency() {
+            latencyEwmaNanos = (1 - LATENCY_EWMA_ALPHA) * latencyEwmaNanos;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.mannapay.common.events.kafka.consumer.dispatch;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Worker pool that runs tasks concurrently across keys but strictly in
+ * submission order per key.
+ *
+ * Each key keeps only a reference to its last submitted task; a new task for
+ * the same key is chained behind it. The reference is removed as soon as the
+ * chain drains, so memory is bounded by the number of keys in flight.
+ *
+ * Unordered work can be run on the same pool through {@link #execute(Runnable)}.
+ */
+@Component
+@Slf4j
+public class KeyOrderedExecutor {
+
+    private final ExecutorService workers;
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public KeyOrderedExecutor(@Value("${kafka.consumer.parallel.worker-threads:16}") int workerThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "event-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.workers = Executors.newFixedThreadPool(workerThreads, threadFactory);
+    }
+
+    /**
+     * Run the task after every previously submitted task for the same key.
+     *
+     * A failed predecessor does not cancel the task; callers decide whether
+     * to skip work behind a failure.
+     */
+    public CompletableFuture<Void> submit(String key, Runnable task) {
+        AtomicReference<CompletableFuture<Void>> scheduled = new AtomicReference<>();
+
+        tails.compute(key, (k, tail) -> {
+            CompletableFuture<Void> previous = tail != null ? tail : CompletableFuture.completedFuture(null);
+            scheduled.set(previous
+                .handle((result, error) -> null)
+                .thenRunAsync(task, workers));
+            return scheduled.get();
+        });
+
+        CompletableFuture<Void> future = scheduled.get();
+        future.whenComplete((result, error) -> tails.remove(key, future));
+        return future;
+    }
+
+    /**
+     * Run a task on the worker pool without any ordering.
+     */
+    public void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Number of keys with queued or running tasks.
+     */
+    public int getActiveKeyCount() {
+        return tails.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Event worker pool did not terminate in time, {} keys still active", tails.size());
+            workers.shutdownNow();
+        }
+    }
+}
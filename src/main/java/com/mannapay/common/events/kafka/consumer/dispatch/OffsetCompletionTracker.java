@@ -0,0 +1,89 @@
+package com.mannapay.common.events.kafka.consumer.dispatch;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contiguous completion tracking for records processed out of order.
+ *
+ * Records are registered in offset order when dispatched and completed in
+ * any order. The committable offset of a partition is the lowest offset
+ * still pending, i.e. everything below it has completed, so committing it
+ * never skips an unfinished record.
+ */
+public class OffsetCompletionTracker {
+
+    private final Map<TopicPartition, PartitionState> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Register a dispatched record.
+     */
+    public void register(TopicPartition partition, long offset) {
+        partitions.computeIfAbsent(partition, tp -> new PartitionState()).register(offset);
+    }
+
+    /**
+     * Mark a dispatched record as completed.
+     */
+    public void complete(TopicPartition partition, long offset) {
+        PartitionState state = partitions.get(partition);
+        if (state != null) {
+            state.complete(offset);
+        }
+    }
+
+    /**
+     * Next offset to commit for the partition: every offset below it has completed.
+     */
+    public OptionalLong committableOffset(TopicPartition partition) {
+        PartitionState state = partitions.get(partition);
+        return state != null ? state.committableOffset() : OptionalLong.empty();
+    }
+
+    /**
+     * Number of dispatched records not yet completed for the partition.
+     */
+    public int inFlight(TopicPartition partition) {
+        PartitionState state = partitions.get(partition);
+        return state != null ? state.inFlight() : 0;
+    }
+
+    /**
+     * Forget partitions, e.g. after they were revoked.
+     */
+    public void clear(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+
+    private static final class PartitionState {
+
+        private final TreeSet<Long> pending = new TreeSet<>();
+        private long highestCompleted = -1L;
+
+        synchronized void register(long offset) {
+            pending.add(offset);
+        }
+
+        synchronized void complete(long offset) {
+            if (pending.remove(offset)) {
+                highestCompleted = Math.max(highestCompleted, offset);
+            }
+        }
+
+        synchronized OptionalLong committableOffset() {
+            if (!pending.isEmpty()) {
+                return OptionalLong.of(pending.first());
+            }
+            return highestCompleted >= 0 ? OptionalLong.of(highestCompleted + 1) : OptionalLong.empty();
+        }
+
+        synchronized int inFlight() {
+            return pending.size();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact Redis idempotency layout.
+ *
+ * Idempotency keys are reduced to a 16-byte digest (the raw bits for UUID keys,
+ * truncated SHA-256 otherwise) and stored as binary fields of small hashes:
+ * <pre>
+ * mannapay:events:processed:b:&lt;bucket&gt;:&lt;shard&gt;  -&gt;  { &lt;16 bytes&gt; : "1" }
+ * </pre>
+ * The bucket is the time window the event was marked in; the whole hash expires
+ * once its window is older than the TTL, so there is no per-event expiry entry.
+ * Lookups check every live bucket for the shard in one pipelined round trip.
+ *
+ * Compared with the LEGACY layout this drops, per event, the textual key,
+ * the value string and the expires-dict entry; what remains is the 16-byte
+ * field and a few bytes of entry header inside a shared hash. Hashes stay
+ * listpack-encoded (the compact form) only while they hold at most
+ * {@code hash-max-listpack-entries} (128 by default) fields, so size
+ * {@code bucket-shards} at (events per bucket / 128) or raise that Redis
+ * setting; past the limit a hash converts to a regular hashtable and most of
+ * the saving is lost.
+ *
+ * No measured figures are recorded here yet. {@link IdempotencyMemoryBenchmark}
+ * writes 1M keys in each layout against a real Redis and reports the
+ * {@code INFO memory} {@code used_memory} delta and a sample key's
+ * {@code MEMORY USAGE}; run it against the target Redis version and settings
+ * before sizing a deployment, and record the results here.
+ *
+ * Entries are kept for {@code kafka.consumer.idempotency.ttl}, the same setting
+ * the LEGACY layout uses for its per-key expiry.
+ */
+@Component
+public class BucketedIdempotencyStore {
+
+    private static final String BUCKET_KEY_PREFIX = "mannapay:events:processed:b:";
+    private static final byte[] PRESENT = {'1'};
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    private final Duration ttl;
+    private final long bucketWidthSeconds;
+    private final int shards;
+    private final int liveBuckets;
+
+    public BucketedIdempotencyStore(
+            ObjectProvider<StringRedisTemplate> redisTemplate,
+            @Value("${kafka.consumer.idempotency.ttl:P7D}") Duration ttl,
+            @Value("${kafka.consumer.idempotency.bucket-width:P1D}") Duration bucketWidth,
+            @Value("${kafka.consumer.idempotency.bucket-shards:8192}") int shards) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+        this.bucketWidthSeconds = bucketWidth.toSeconds();
+        this.shards = shards;
+        // Buckets that may still hold entries younger than the TTL
+        this.liveBuckets = (int) ((ttl.toSeconds() + bucketWidthSeconds - 1) / bucketWidthSeconds) + 1;
+    }
+
+    /**
+     * Check whether the idempotency key was marked within the TTL.
+     */
+    public boolean contains(String idempotencyKey) {
+        byte[] field = digest(idempotencyKey);
+        int shard = shardOf(field);
+        long currentBucket = currentBucket();
+
+        List<Object> results = redisTemplate.getObject().executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < liveBuckets; i++) {
+                connection.hashCommands().hExists(bucketKey(currentBucket - i, shard), field);
+            }
+            return null;
+        });
+        return results.stream().anyMatch(Boolean.TRUE::equals);
+    }
+
+    /**
+     * Mark the idempotency key as processed in the current bucket.
+     */
+    public void add(String idempotencyKey) {
+        byte[] field = digest(idempotencyKey);
+        long bucket = currentBucket();
+        byte[] key = bucketKey(bucket, shardOf(field));
+        // Expire once the newest possible entry in this bucket is older than the TTL
+        long expireAt = (bucket + 1) * bucketWidthSeconds + ttl.toSeconds();
+
+        redisTemplate.getObject().executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSet(key, field, PRESENT);
+            connection.keyCommands().expireAt(key, expireAt);
+            return null;
+        });
+    }
+
+    private long currentBucket() {
+        return Instant.now().getEpochSecond() / bucketWidthSeconds;
+    }
+
+    private int shardOf(byte[] digest) {
+        return Math.floorMod(ByteBuffer.wrap(digest, 12, 4).getInt(), shards);
+    }
+
+    private byte[] bucketKey(long bucket, int shard) {
+        return (BUCKET_KEY_PREFIX + bucket + ":" + shard).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 16-byte digest of an idempotency key.
+     */
+    static byte[] digest(String idempotencyKey) {
+        if (idempotencyKey.length() == 36) {
+            try {
+                UUID uuid = UUID.fromString(idempotencyKey);
+                return ByteBuffer.allocate(16)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .array();
+            } catch (IllegalArgumentException notAUuid) {
+                // Fall through to hashing
+            }
+        }
+        try {
+            byte[] sha = MessageDigest.getInstance("SHA-256")
+                .digest(idempotencyKey.getBytes(StandardCharsets.UTF_8));
+            byte[] field = new byte[16];
+            System.arraycopy(sha, 0, field, 0, 16);
+            return field;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
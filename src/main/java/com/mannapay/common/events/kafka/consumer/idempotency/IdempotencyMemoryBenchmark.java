@@ -0,0 +1,130 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Measures the Redis memory used by each idempotency layout.
+ *
+ * Writes the same number of UUID idempotency keys in the LEGACY layout (one
+ * string key with expiry per event, as {@code IdempotentEventProcessor} writes
+ * them) and in the BUCKETED layout (through {@link BucketedIdempotencyStore}),
+ * and reports the {@code INFO memory} {@code used_memory} delta and the
+ * {@code MEMORY USAGE} of a sample key for each.
+ *
+ * The target database must be empty; it is flushed between and after runs.
+ * <pre>
+ * mvn -q compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:$(cat target/cp.txt) \
+ *     com.mannapay.common.events.kafka.consumer.idempotency.IdempotencyMemoryBenchmark \
+ *     [host] [port] [database] [keys] [bucket-shards]
+ * </pre>
+ * Defaults: localhost 6379, database 15, 1,000,000 keys, 8192 shards.
+ */
+public final class IdempotencyMemoryBenchmark {
+
+    private static final String LEGACY_KEY_PREFIX = "mannapay:events:processed:";
+    private static final Duration TTL = Duration.ofDays(7);
+    private static final int BATCH = 10_000;
+
+    private IdempotencyMemoryBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int database = args.length > 2 ? Integer.parseInt(args[2]) : 15;
+        int keys = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+        int shards = args.length > 4 ? Integer.parseInt(args[4]) : 8192;
+
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
+        config.setDatabase(database);
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        try {
+            StringRedisTemplate template = new StringRedisTemplate(connectionFactory);
+            template.afterPropertiesSet();
+
+            Long size = template.execute((RedisCallback<Long>) RedisConnection::dbSize);
+            if (size == null || size != 0) {
+                throw new IllegalStateException("Database " + database + " is not empty (" + size + " keys)");
+            }
+
+            System.out.printf("Redis %s:%d db %d, %,d keys, %d bucket shards%n", host, port, database, keys, shards);
+            report("LEGACY", keys, template, () -> writeLegacy(template, keys));
+
+            BucketedIdempotencyStore store = new BucketedIdempotencyStore(
+                new StaticListableBeanFactory(Map.of("redisTemplate", template))
+                    .getBeanProvider(StringRedisTemplate.class),
+                TTL, Duration.ofDays(1), shards);
+            report("BUCKETED", keys, template, () -> {
+                for (int i = 0; i < keys; i++) {
+                    store.add(UUID.randomUUID().toString());
+                }
+            });
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private static void report(String layout, int keys, StringRedisTemplate template,
+                               Runnable write) {
+        long before = usedMemory(template);
+        long start = System.nanoTime();
+        write.run();
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        long after = usedMemory(template);
+
+        String sample = template.randomKey();
+        Long sampleBytes = sample == null ? null : template.execute((RedisCallback<Long>) connection ->
+            (Long) connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8),
+                sample.getBytes(StandardCharsets.UTF_8)));
+        Long topLevelKeys = template.execute((RedisCallback<Long>) RedisConnection::dbSize);
+
+        System.out.printf("%-8s used_memory delta %,d bytes (%.1f bytes/key), %,d top-level keys, "
+                + "sample MEMORY USAGE %s = %s bytes, encoding %s, write %d ms%n",
+            layout, after - before, (after - before) / (double) keys, topLevelKeys,
+            sample, sampleBytes, sample == null ? null : template.execute((RedisCallback<Object>) connection ->
+                connection.keyCommands().encodingOf(sample.getBytes(StandardCharsets.UTF_8))),
+            elapsedMs);
+
+        template.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+    }
+
+    private static void writeLegacy(StringRedisTemplate template, int keys) {
+        for (int written = 0; written < keys; written += BATCH) {
+            int batch = Math.min(BATCH, keys - written);
+            template.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < batch; i++) {
+                    UUID eventId = UUID.randomUUID();
+                    String value = String.format("%s|%s|%s", "PaymentCompleted", eventId, Instant.now());
+                    connection.stringCommands().setEx(
+                        (LEGACY_KEY_PREFIX + eventId).getBytes(StandardCharsets.UTF_8),
+                        TTL.toSeconds(),
+                        value.getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        }
+    }
+
+    private static long usedMemory(StringRedisTemplate template) {
+        Properties info = template.execute((RedisCallback<Properties>) connection ->
+            connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+}
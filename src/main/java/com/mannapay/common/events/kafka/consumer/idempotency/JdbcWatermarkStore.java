@@ -0,0 +1,57 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * JDBC-backed watermark store (PostgreSQL).
+ *
+ * Expected schema:
+ * <pre>
+ * CREATE TABLE consumer_offset_watermarks (
+ *     consumer_group VARCHAR(255) NOT NULL,
+ *     topic          VARCHAR(255) NOT NULL,
+ *     partition_id   INT          NOT NULL,
+ *     watermark      TEXT         NOT NULL,
+ *     updated_at     TIMESTAMPTZ  NOT NULL DEFAULT now(),
+ *     PRIMARY KEY (consumer_group, topic, partition_id)
+ * );
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "kafka.consumer.idempotency.watermark-store", havingValue = "jdbc")
+public class JdbcWatermarkStore implements WatermarkStore {
+
+    private static final String SELECT_SQL =
+        "SELECT watermark FROM consumer_offset_watermarks " +
+        "WHERE consumer_group = ? AND topic = ? AND partition_id = ?";
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO consumer_offset_watermarks (consumer_group, topic, partition_id, watermark, updated_at) " +
+        "VALUES (?, ?, ?, ?, now()) " +
+        "ON CONFLICT (consumer_group, topic, partition_id) " +
+        "DO UPDATE SET watermark = EXCLUDED.watermark, updated_at = EXCLUDED.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcWatermarkStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Optional<PartitionWatermark> load(String consumerGroup, TopicPartition partition) {
+        List<String> rows = jdbcTemplate.queryForList(SELECT_SQL, String.class,
+            consumerGroup, partition.topic(), partition.partition());
+        return rows.stream().findFirst().map(PartitionWatermark::decode);
+    }
+
+    @Override
+    public void save(String consumerGroup, TopicPartition partition, String encodedWatermark) {
+        jdbcTemplate.update(UPSERT_SQL, consumerGroup, partition.topic(), partition.partition(), encodedWatermark);
+    }
+}
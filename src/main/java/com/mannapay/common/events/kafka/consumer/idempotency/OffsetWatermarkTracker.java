@@ -0,0 +1,277 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+import com.mannapay.common.events.kafka.consumer.IdempotencyMode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.kafka.support.KafkaUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offset-watermark idempotency tracking.
+ *
+ * Keeps one {@link PartitionWatermark} per consumer group and assigned
+ * topic-partition in memory, so the duplicate check is a compare against
+ * local state. Every state change is written through to the
+ * {@link WatermarkStore} before the record is acknowledged, so a crash
+ * between processing and commit is still detected on redelivery.
+ *
+ * The watermark must advance past every offset the container commits, not
+ * only past handled ones:
+ * - On assignment it is seeded from the group's committed offset (or the
+ *   consumer position), so it never trails the commit
+ * - The record/batch interceptors settle offsets a delivery skips over
+ *   (transaction markers, compacted records)
+ * - {@link #markingRecovered} and {@link #markingDiscarded} settle records
+ *   sent to the DLQ or dropped by a filter; the processor settles the ones
+ *   it skips, parks or dead-letters itself
+ * - At most {@code kafka.consumer.idempotency.watermark.max-ahead} ranges are
+ *   kept ahead of a gap; beyond that the gap is abandoned and the watermark
+ *   moves past it
+ *
+ * The group is the one of the listener container calling in (its
+ * {@code group.id} override, if any). Work handed to other threads must
+ * carry it along; see {@link #inGroup}.
+ *
+ * Caveat: offsets are positional. Seeking a group backwards on purpose will
+ * make the rewound records look like duplicates until the stored watermark
+ * is removed.
+ */
+@Component
+@Slf4j
+public class OffsetWatermarkTracker implements ConsumerAwareRebalanceListener {
+
+    private final WatermarkStore watermarkStore;
+    private final String defaultConsumerGroup;
+    private final boolean enabled;
+    private final int maxAhead;
+
+    private final Map<GroupPartition, PartitionWatermark> watermarks = new ConcurrentHashMap<>();
+
+    private final Counter gapsSkippedCounter;
+
+    public OffsetWatermarkTracker(
+            WatermarkStore watermarkStore,
+            MeterRegistry meterRegistry,
+            @Value("${spring.application.name:unknown-service}") String applicationName,
+            @Value("${kafka.consumer.idempotency.mode:KEY}") IdempotencyMode idempotencyMode,
+            @Value("${kafka.consumer.idempotency.watermark.max-ahead:1000}") int maxAhead) {
+        this.watermarkStore = watermarkStore;
+        this.defaultConsumerGroup = applicationName + "-group";
+        this.enabled = idempotencyMode == IdempotencyMode.OFFSET_WATERMARK;
+        this.maxAhead = maxAhead;
+
+        this.gapsSkippedCounter = Counter.builder("mannapay.events.watermark.gaps.skipped")
+            .description("Offset gaps abandoned because too many ranges completed ahead of them")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Check whether the record was already settled.
+     */
+    public boolean isProcessed(ConsumerRecord<?, ?> record) {
+        return watermarkFor(currentGroup(), partitionOf(record)).isProcessed(record.offset());
+    }
+
+    /**
+     * Record the record as settled (processed, dead-lettered or skipped) and
+     * persist the new watermark. No-op unless OFFSET_WATERMARK mode is on.
+     */
+    public void markProcessed(ConsumerRecord<?, ?> record) {
+        if (!enabled) {
+            return;
+        }
+        String group = currentGroup();
+        TopicPartition tp = partitionOf(record);
+        PartitionWatermark watermark = watermarkFor(group, tp);
+        synchronized (watermark) {
+            if (watermark.markProcessed(record.offset())) {
+                capAndSave(group, tp, watermark);
+            }
+        }
+    }
+
+    /**
+     * Interceptor for record listener containers; settles skipped offsets.
+     */
+    public <K, V> RecordInterceptor<K, V> recordInterceptor() {
+        return (record, consumer) -> {
+            markDelivered(record);
+            return record;
+        };
+    }
+
+    /**
+     * Interceptor for batch listener containers; settles skipped offsets.
+     */
+    public <K, V> BatchInterceptor<K, V> batchInterceptor() {
+        return (records, consumer) -> {
+            markDelivered(records);
+            return records;
+        };
+    }
+
+    /**
+     * Wrap a DLQ recoverer so recovered records are settled.
+     */
+    public ConsumerRecordRecoverer markingRecovered(ConsumerRecordRecoverer recoverer) {
+        return (record, exception) -> {
+            recoverer.accept(record, exception);
+            markProcessed(record);
+        };
+    }
+
+    /**
+     * Wrap a record filter so discarded records are settled.
+     */
+    public <K, V> RecordFilterStrategy<K, V> markingDiscarded(RecordFilterStrategy<K, V> filter) {
+        return record -> {
+            boolean discard = filter.filter(record);
+            if (discard) {
+                markProcessed(record);
+            }
+            return discard;
+        };
+    }
+
+    /**
+     * Consumer group of the listener container on the calling thread.
+     */
+    public String currentGroup() {
+        String group = KafkaUtils.getConsumerGroupId();
+        return group != null ? group : defaultConsumerGroup;
+    }
+
+    /**
+     * Wrap a task so it runs with the given consumer group, as captured by
+     * {@link #currentGroup()} on the consumer thread.
+     */
+    public static Runnable inGroup(String group, Runnable task) {
+        return () -> {
+            String previous = KafkaUtils.getConsumerGroupId();
+            KafkaUtils.setConsumerGroupId(group);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    KafkaUtils.setConsumerGroupId(previous);
+                } else {
+                    KafkaUtils.clearConsumerGroupId();
+                }
+            }
+        };
+    }
+
+    /**
+     * Number of partitions currently tracked in memory.
+     */
+    public int getTrackedPartitionCount() {
+        return watermarks.size();
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        String group = consumer.groupMetadata().groupId();
+        evict(group, partitions);
+
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+        for (TopicPartition tp : partitions) {
+            OffsetAndMetadata offset = committed.get(tp);
+            long position = offset != null ? offset.offset() : consumer.position(tp);
+            PartitionWatermark watermark = watermarkFor(group, tp);
+            synchronized (watermark) {
+                if (watermark.seed(position)) {
+                    capAndSave(group, tp, watermark);
+                }
+            }
+        }
+        log.debug("Seeded offset watermarks: group={}, partitions={}", group, partitions);
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        evict(consumer.groupMetadata().groupId(), partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        evict(consumer.groupMetadata().groupId(), partitions);
+    }
+
+    private void markDelivered(ConsumerRecords<?, ?> records) {
+        if (!enabled) {
+            return;
+        }
+        for (TopicPartition tp : records.partitions()) {
+            records.records(tp).forEach(this::markDelivered);
+        }
+    }
+
+    private void markDelivered(ConsumerRecord<?, ?> record) {
+        if (!enabled) {
+            return;
+        }
+        String group = currentGroup();
+        TopicPartition tp = partitionOf(record);
+        PartitionWatermark watermark = watermarkFor(group, tp);
+        synchronized (watermark) {
+            if (watermark.markDelivered(record.offset())) {
+                capAndSave(group, tp, watermark);
+            }
+        }
+    }
+
+    /**
+     * Abandon the lowest gaps while too many ranges are held ahead of them,
+     * then persist. Caller holds the watermark's lock.
+     */
+    private void capAndSave(String group, TopicPartition tp, PartitionWatermark watermark) {
+        while (watermark.getCompletedAheadCount() > maxAhead) {
+            long from = watermark.getWatermark();
+            long skipped = watermark.skipFirstGap();
+            gapsSkippedCounter.increment();
+            log.warn("Abandoned offset gap: group={}, partition={}, from={}, offsets={}",
+                group, tp, from, skipped);
+        }
+        watermarkStore.save(group, tp, watermark.encode());
+    }
+
+    private PartitionWatermark watermarkFor(String group, TopicPartition tp) {
+        return watermarks.computeIfAbsent(new GroupPartition(group, tp), key -> watermarkStore.load(group, tp)
+            .orElseGet(PartitionWatermark::new));
+    }
+
+    private void evict(String group, Collection<TopicPartition> partitions) {
+        partitions.forEach(tp -> watermarks.remove(new GroupPartition(group, tp)));
+        log.debug("Evicted offset watermarks: group={}, partitions={}", group, partitions);
+    }
+
+    private static TopicPartition partitionOf(ConsumerRecord<?, ?> record) {
+        return new TopicPartition(record.topic(), record.partition());
+    }
+
+    /**
+     * Key of a watermark: the same partition is tracked separately per group.
+     */
+    private record GroupPartition(String group, TopicPartition partition) {
+    }
+}
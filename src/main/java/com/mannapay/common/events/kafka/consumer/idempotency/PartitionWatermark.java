@@ -0,0 +1,218 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Processed-offset state of a single topic-partition.
+ *
+ * Every offset below the watermark is settled: processed, dead-lettered,
+ * filtered, or never delivered (transaction markers, compacted records).
+ * Offsets at or above the watermark that settled out of order are kept as
+ * merged {@code [start, end)} ranges until the gap below them closes, at
+ * which point the watermark advances past them. Consecutive out-of-order
+ * completions therefore cost one range, not one entry each.
+ *
+ * The highest delivered offset is tracked as well (in memory only): a
+ * delivery that jumps past it settles the skipped offsets, since the
+ * consumer will never see them.
+ *
+ * Encoded form: {@code <watermark>} or {@code <watermark>|<r1>,<r2>,...}
+ * where each range is {@code <start>-<end>} (end exclusive), or a single
+ * {@code <offset>}.
+ */
+public class PartitionWatermark {
+
+    private static final long UNKNOWN = -1L;
+
+    private long watermark;
+    private long delivered = UNKNOWN;
+    private final TreeMap<Long, Long> completedAhead = new TreeMap<>();
+
+    public PartitionWatermark() {
+        this.watermark = UNKNOWN;
+    }
+
+    public PartitionWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * Check whether an offset has already been settled.
+     *
+     * The first offset seen for a partition without stored or seeded state
+     * becomes the watermark: everything below it sits behind the committed
+     * position.
+     */
+    public synchronized boolean isProcessed(long offset) {
+        if (watermark == UNKNOWN) {
+            watermark = offset;
+            return false;
+        }
+        if (offset < watermark) {
+            return true;
+        }
+        Map.Entry<Long, Long> range = completedAhead.floorEntry(offset);
+        return range != null && offset < range.getValue();
+    }
+
+    /**
+     * Record an offset as settled.
+     *
+     * @return true if the state changed and should be persisted
+     */
+    public synchronized boolean markProcessed(long offset) {
+        return markRange(offset, offset + 1);
+    }
+
+    /**
+     * Record a delivered offset; offsets skipped since the previous delivery
+     * are settled.
+     *
+     * @return true if the state changed and should be persisted
+     */
+    public synchronized boolean markDelivered(long offset) {
+        if (watermark == UNKNOWN) {
+            watermark = offset;
+        }
+        boolean changed = false;
+        if (delivered != UNKNOWN && offset > delivered + 1) {
+            changed = markRange(delivered + 1, offset);
+        }
+        delivered = Math.max(delivered, offset);
+        return changed;
+    }
+
+    /**
+     * Seed from the partition's committed (or current) position on assignment.
+     * Everything below the position is settled; the next delivery is expected
+     * at the position.
+     *
+     * @return true if the state changed and should be persisted
+     */
+    public synchronized boolean seed(long position) {
+        delivered = position - 1;
+        if (watermark != UNKNOWN && position <= watermark) {
+            return false;
+        }
+        watermark = position;
+        completedAhead.headMap(position, true).entrySet().removeIf(range -> range.getValue() <= position);
+        Map.Entry<Long, Long> straddling = completedAhead.pollFirstEntry();
+        if (straddling != null) {
+            completedAhead.put(Math.max(straddling.getKey(), position), straddling.getValue());
+        }
+        advance();
+        return true;
+    }
+
+    /**
+     * Give up on the lowest open gap: move the watermark to the end of the
+     * first completed range.
+     *
+     * @return the number of offsets skipped, or 0 if nothing is ahead
+     */
+    public synchronized long skipFirstGap() {
+        Map.Entry<Long, Long> first = completedAhead.pollFirstEntry();
+        if (first == null) {
+            return 0;
+        }
+        long skipped = first.getKey() - watermark;
+        watermark = first.getValue();
+        advance();
+        return skipped;
+    }
+
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Number of disjoint ranges settled ahead of the watermark.
+     */
+    public synchronized int getCompletedAheadCount() {
+        return completedAhead.size();
+    }
+
+    /**
+     * Encode for persistence.
+     */
+    public synchronized String encode() {
+        if (completedAhead.isEmpty()) {
+            return Long.toString(watermark);
+        }
+        StringBuilder sb = new StringBuilder().append(watermark).append('|');
+        Iterator<Map.Entry<Long, Long>> it = completedAhead.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Long> range = it.next();
+            sb.append(range.getKey());
+            if (range.getValue() > range.getKey() + 1) {
+                sb.append('-').append(range.getValue());
+            }
+            if (it.hasNext()) {
+                sb.append(',');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode a persisted watermark.
+     */
+    public static PartitionWatermark decode(String encoded) {
+        int separator = encoded.indexOf('|');
+        if (separator < 0) {
+            return new PartitionWatermark(Long.parseLong(encoded));
+        }
+        PartitionWatermark result = new PartitionWatermark(Long.parseLong(encoded.substring(0, separator)));
+        for (String range : encoded.substring(separator + 1).split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            long start = Long.parseLong(dash < 0 ? range : range.substring(0, dash));
+            long end = dash < 0 ? start + 1 : Long.parseLong(range.substring(dash + 1));
+            result.markRange(start, end);
+        }
+        return result;
+    }
+
+    /**
+     * Settle {@code [start, end)}, merging with adjacent or overlapping ranges.
+     */
+    private boolean markRange(long start, long end) {
+        if (watermark == UNKNOWN) {
+            watermark = end;
+            return true;
+        }
+        start = Math.max(start, watermark);
+        if (start >= end) {
+            return false;
+        }
+
+        Map.Entry<Long, Long> before = completedAhead.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            if (before.getValue() >= end) {
+                return false;
+            }
+            start = before.getKey();
+        }
+        Iterator<Map.Entry<Long, Long>> overlapping =
+            completedAhead.subMap(start, true, end, true).entrySet().iterator();
+        while (overlapping.hasNext()) {
+            end = Math.max(end, overlapping.next().getValue());
+            overlapping.remove();
+        }
+        completedAhead.put(start, end);
+        advance();
+        return true;
+    }
+
+    private void advance() {
+        Map.Entry<Long, Long> first = completedAhead.firstEntry();
+        if (first != null && first.getKey() <= watermark) {
+            watermark = Math.max(watermark, first.getValue());
+            completedAhead.pollFirstEntry();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+/**
+ * Redis storage layout for key-based idempotency.
+ *
+ * Configured with {@code kafka.consumer.idempotency.redis-layout}.
+ *
+ * Migration path from LEGACY to BUCKETED:
+ * 1. Deploy every instance of the consumer group with MIGRATING
+ * 2. Wait at least the idempotency TTL (7 days) so every live legacy key
+ *    has a bucketed counterpart
+ * 3. Switch to BUCKETED; legacy keys expire on their own
+ *
+ * Rolling back to LEGACY is safe at any point during step 1 or 2.
+ */
+public enum RedisIdempotencyLayout {
+
+    /**
+     * One top-level key per event: {@code mannapay:events:processed:<key>}.
+     */
+    LEGACY,
+
+    /**
+     * Writes both layouts, reads bucketed first and falls back to legacy.
+     */
+    MIGRATING,
+
+    /**
+     * Time-bucketed hashes with 16-byte binary fields only.
+     */
+    BUCKETED
+}
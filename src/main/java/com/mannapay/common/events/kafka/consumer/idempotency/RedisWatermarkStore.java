@@ -0,0 +1,43 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Redis-backed watermark store.
+ *
+ * One hash per consumer group, one field per topic-partition:
+ * {@code mannapay:events:watermarks:<group>} -> {@code <topic>:<partition>} = encoded watermark.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka.consumer.idempotency.watermark-store", havingValue = "redis", matchIfMissing = true)
+public class RedisWatermarkStore implements WatermarkStore {
+
+    private static final String WATERMARK_KEY_PREFIX = "mannapay:events:watermarks:";
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+
+    public RedisWatermarkStore(ObjectProvider<StringRedisTemplate> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Optional<PartitionWatermark> load(String consumerGroup, TopicPartition partition) {
+        Object value = redisTemplate.getObject().opsForHash().get(WATERMARK_KEY_PREFIX + consumerGroup, field(partition));
+        return Optional.ofNullable(value).map(v -> PartitionWatermark.decode(v.toString()));
+    }
+
+    @Override
+    public void save(String consumerGroup, TopicPartition partition, String encodedWatermark) {
+        redisTemplate.getObject().opsForHash().put(WATERMARK_KEY_PREFIX + consumerGroup, field(partition), encodedWatermark);
+    }
+
+    private String field(TopicPartition partition) {
+        return partition.topic() + ":" + partition.partition();
+    }
+}
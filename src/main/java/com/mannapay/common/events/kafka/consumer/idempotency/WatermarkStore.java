@@ -0,0 +1,24 @@
+package com.mannapay.common.events.kafka.consumer.idempotency;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Optional;
+
+/**
+ * Persistence for per-partition offset watermarks.
+ *
+ * Select the implementation with {@code kafka.consumer.idempotency.watermark-store}
+ * ({@code redis} by default, or {@code jdbc}).
+ */
+public interface WatermarkStore {
+
+    /**
+     * Load the stored watermark for a partition, if any.
+     */
+    Optional<PartitionWatermark> load(String consumerGroup, TopicPartition partition);
+
+    /**
+     * Persist the encoded watermark for a partition.
+     */
+    void save(String consumerGroup, TopicPartition partition, String encodedWatermark);
+}
@@ -0,0 +1,150 @@
+package com.mannapay.common.events.kafka.consumer.lazy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mannapay.common.events.core.DomainEvent;
+import com.mannapay.common.events.core.EventEnvelope;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.kafka.support.serializer.DeserializationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Record value that exposes Kafka headers immediately and parses the
+ * {@link EventEnvelope} body only on first access.
+ *
+ * Filtering, routing and duplicate checks can run on the headers set by
+ * {@code EventPublisher} (eventType, eventId, idempotencyKey, ...) so records
+ * that are skipped never pay for JSON parsing. The parsed envelope is cached;
+ * a malformed body surfaces as a non-retryable {@link DeserializationException}
+ * when the payload is first read.
+ *
+ * @param <T> The type of domain event being wrapped
+ */
+public class LazyEventEnvelope<T extends DomainEvent> {
+
+    private final String topic;
+    private final Headers headers;
+    private final byte[] data;
+    private final ObjectMapper objectMapper;
+
+    private volatile EventEnvelope<T> envelope;
+
+    public LazyEventEnvelope(String topic, Headers headers, byte[] data, ObjectMapper objectMapper) {
+        this.topic = topic;
+        this.headers = headers;
+        this.data = data;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Event type from the {@code eventType} header, or null if absent.
+     */
+    public String getEventType() {
+        return getHeader("eventType");
+    }
+
+    /**
+     * Event ID from the {@code eventId} header, or null if absent.
+     */
+    public String getEventId() {
+        return getHeader("eventId");
+    }
+
+    /**
+     * Idempotency key from the {@code idempotencyKey} header, or null if absent.
+     */
+    public String getIdempotencyKey() {
+        return getHeader("idempotencyKey");
+    }
+
+    /**
+     * Aggregate ID from the {@code aggregateId} header, or null if absent.
+     */
+    public String getAggregateId() {
+        return getHeader("aggregateId");
+    }
+
+    /**
+     * Correlation ID from the {@code correlationId} header, or null if absent.
+     */
+    public String getCorrelationId() {
+        return getHeader("correlationId");
+    }
+
+    /**
+     * Read a string header, or null if absent.
+     */
+    public String getHeader(String name) {
+        Header header = headers != null ? headers.lastHeader(name) : null;
+        return header != null && header.value() != null
+            ? new String(header.value(), StandardCharsets.UTF_8)
+            : null;
+    }
+
+    public Headers getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Size of the serialized body in bytes.
+     */
+    public int getSerializedSize() {
+        return data != null ? data.length : 0;
+    }
+
+    /**
+     * Check whether the body has been parsed yet.
+     */
+    public boolean isDeserialized() {
+        return envelope != null;
+    }
+
+    /**
+     * Get the envelope, parsing the body on first access.
+     *
+     * @throws DeserializationException if the body is not a valid envelope
+     */
+    public EventEnvelope<T> getEnvelope() {
+        EventEnvelope<T> result = envelope;
+        if (result == null) {
+            synchronized (this) {
+                result = envelope;
+                if (result == null) {
+                    result = parse();
+                    envelope = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the domain event, parsing the body on first access.
+     */
+    public T getPayload() {
+        return getEnvelope().getPayload();
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventEnvelope<T> parse() {
+        if (data == null) {
+            throw new DeserializationException("Null event envelope on topic " + topic, null, false, null);
+        }
+        try {
+            return objectMapper.readValue(data, EventEnvelope.class);
+        } catch (IOException e) {
+            throw new DeserializationException(
+                "Failed to deserialize event envelope on topic " + topic + ": " + e.getMessage(), data, false, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LazyEventEnvelope{topic=" + topic
+            + ", eventType=" + getEventType()
+            + ", eventId=" + getEventId()
+            + ", deserialized=" + isDeserialized() + "}";
+    }
+}
@@ -0,0 +1,37 @@
+package com.mannapay.common.events.kafka.consumer.lazy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mannapay.common.events.core.DomainEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.JacksonUtils;
+
+/**
+ * Value deserializer producing {@link LazyEventEnvelope} instances.
+ *
+ * Only captures the raw bytes and headers; no JSON is parsed on the consumer
+ * thread until a handler reads the payload.
+ */
+public class LazyEventEnvelopeDeserializer implements Deserializer<LazyEventEnvelope<DomainEvent>> {
+
+    private final ObjectMapper objectMapper;
+
+    public LazyEventEnvelopeDeserializer() {
+        this(JacksonUtils.enhancedObjectMapper());
+    }
+
+    public LazyEventEnvelopeDeserializer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public LazyEventEnvelope<DomainEvent> deserialize(String topic, byte[] data) {
+        return deserialize(topic, new RecordHeaders(), data);
+    }
+
+    @Override
+    public LazyEventEnvelope<DomainEvent> deserialize(String topic, Headers headers, byte[] data) {
+        return new LazyEventEnvelope<>(topic, headers, data, objectMapper);
+    }
+}
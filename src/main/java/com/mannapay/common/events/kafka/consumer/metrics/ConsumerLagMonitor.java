@@ -0,0 +1,231 @@
+package com.mannapay.common.events.kafka.consumer.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-partition consumer lag, computed in-process.
+ *
+ * Installed as a record/batch interceptor on the listener containers, so it
+ * runs on the consumer thread just before each delivery and reads the lag
+ * the consumer already tracks from fetch responses (end offset minus
+ * position) - no admin or broker round trip. Gauges, tagged {@code topic}
+ * and {@code partition}:
+ * - {@code mannapay.consumer.records.behind}: records between the one being
+ *   delivered and the partition's end offset
+ * - {@code mannapay.consumer.time.behind}: age of the partition's last
+ *   delivered record while the partition is behind, zero once caught up
+ *
+ * Deliveries of one partition also refresh every other partition assigned
+ * to the consumer, at most once per {@code kafka.consumer.lag.refresh-interval},
+ * and a consumer that gets no records at all (caught up, paused or stuck)
+ * refreshes on its container idle events, published at the same interval.
+ * The time behind of a partition whose deliveries stopped keeps growing.
+ * A paused partition is not fetched, so its end offset is the last one seen.
+ *
+ * Gauges of a partition are removed when it is revoked or lost.
+ */
+@Component
+@Slf4j
+public class ConsumerLagMonitor implements ConsumerAwareRebalanceListener {
+
+    private final MeterRegistry meterRegistry;
+
+    private final long refreshIntervalMs;
+
+    private final Map<TopicPartition, PartitionLag> lags = new ConcurrentHashMap<>();
+
+    /**
+     * Last full refresh of the consumer owned by the calling thread.
+     */
+    private final ThreadLocal<long[]> lastRefresh = ThreadLocal.withInitial(() -> new long[1]);
+
+    public ConsumerLagMonitor(
+            MeterRegistry meterRegistry,
+            @Value("${kafka.consumer.lag.refresh-interval:PT5S}") Duration refreshInterval) {
+        this.meterRegistry = meterRegistry;
+        this.refreshIntervalMs = refreshInterval.toMillis();
+    }
+
+    /**
+     * Interval of the full refreshes; set it as the containers' idle event interval.
+     */
+    public long getRefreshIntervalMs() {
+        return refreshIntervalMs;
+    }
+
+    /**
+     * Interceptor for record listener containers.
+     */
+    public <K, V> RecordInterceptor<K, V> recordInterceptor() {
+        return (record, consumer) -> {
+            observe(record, consumer);
+            refreshIfDue(consumer);
+            return record;
+        };
+    }
+
+    /**
+     * Interceptor for batch listener containers; observes the oldest record of
+     * each partition in the batch.
+     */
+    public <K, V> BatchInterceptor<K, V> batchInterceptor() {
+        return (records, consumer) -> {
+            observeBatch(records, consumer);
+            refreshIfDue(consumer);
+            return records;
+        };
+    }
+
+    /**
+     * Update the lag of a record's partition. Must run on the consumer thread.
+     */
+    public void observe(ConsumerRecord<?, ?> record, Consumer<?, ?> consumer) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        try {
+            OptionalLong lag = consumer.currentLag(partition);
+            if (lag.isEmpty()) {
+                return;
+            }
+            // Lag is measured from the position after the whole poll; add the
+            // records of this poll still queued behind the one delivered now
+            long queued = Math.max(0, consumer.position(partition) - record.offset() - 1);
+            PartitionLag partitionLag = lags.computeIfAbsent(partition, this::register);
+            partitionLag.nextOffset = record.offset() + 1;
+            partitionLag.timestamp = record.timestamp();
+            partitionLag.recordsBehind = lag.getAsLong() + queued;
+        } catch (RuntimeException e) {
+            // Partition revoked mid-poll or consumer closing; the next delivery updates it
+            log.debug("Could not read lag for {}: {}", partition, e.getMessage());
+        }
+    }
+
+    /**
+     * Refresh the lag of every partition assigned to the consumer, delivering
+     * or not. Must run on the consumer thread.
+     */
+    public void refresh(Consumer<?, ?> consumer) {
+        lastRefresh.get()[0] = System.currentTimeMillis();
+        try {
+            for (TopicPartition partition : consumer.assignment()) {
+                OptionalLong lag = consumer.currentLag(partition);
+                if (lag.isEmpty()) {
+                    continue;
+                }
+                PartitionLag partitionLag = lags.computeIfAbsent(partition, this::register);
+                // Records of the last poll not yet delivered are behind as well
+                long queued = partitionLag.nextOffset >= 0
+                    ? Math.max(0, consumer.position(partition) - partitionLag.nextOffset)
+                    : 0;
+                partitionLag.recordsBehind = lag.getAsLong() + queued;
+            }
+        } catch (RuntimeException e) {
+            log.debug("Could not refresh lag: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Refresh on idle containers: polls returning nothing pass no interceptor.
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            refresh(event.getConsumer());
+        }
+    }
+
+    private void refreshIfDue(Consumer<?, ?> consumer) {
+        if (System.currentTimeMillis() - lastRefresh.get()[0] >= refreshIntervalMs) {
+            refresh(consumer);
+        }
+    }
+
+    private void observeBatch(ConsumerRecords<?, ?> records, Consumer<?, ?> consumer) {
+        for (TopicPartition partition : records.partitions()) {
+            List<? extends ConsumerRecord<?, ?>> partitionRecords = records.records(partition);
+            if (!partitionRecords.isEmpty()) {
+                observe(partitionRecords.get(0), consumer);
+            }
+        }
+    }
+
+    /**
+     * Records behind for a partition, or -1 if not observed.
+     */
+    public long getRecordsBehind(TopicPartition partition) {
+        PartitionLag lag = lags.get(partition);
+        return lag != null ? lag.recordsBehind : -1;
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        remove(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        remove(partitions);
+    }
+
+    private void remove(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            PartitionLag lag = lags.remove(partition);
+            if (lag != null) {
+                lag.meters.forEach(meterRegistry::remove);
+            }
+        }
+    }
+
+    private PartitionLag register(TopicPartition partition) {
+        PartitionLag lag = new PartitionLag();
+        String partitionTag = String.valueOf(partition.partition());
+        lag.meters.add(Gauge.builder("mannapay.consumer.records.behind", lag, l -> l.recordsBehind)
+            .description("Records between the current delivery and the partition end offset")
+            .tag("topic", partition.topic())
+            .tag("partition", partitionTag)
+            .register(meterRegistry));
+        lag.meters.add(TimeGauge.builder("mannapay.consumer.time.behind", lag, TimeUnit.MILLISECONDS,
+                PartitionLag::timeBehindMs)
+            .description("Age of the last delivery while the partition is behind")
+            .tag("topic", partition.topic())
+            .tag("partition", partitionTag)
+            .register(meterRegistry));
+        return lag;
+    }
+
+    private static final class PartitionLag {
+        private final List<Meter> meters = new ArrayList<>(2);
+        private volatile long recordsBehind;
+        private volatile long nextOffset = -1;
+        private volatile long timestamp;
+
+        private long timeBehindMs() {
+            return recordsBehind > 0 && timestamp > 0
+                ? Math.max(0, System.currentTimeMillis() - timestamp)
+                : 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.mannapay.common.events.kafka.consumer.metrics;
+
+import com.mannapay.common.events.core.DomainEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-topic and per-event-type latency histograms.
+ *
+ * Two timers, both tagged {@code topic} and {@code eventType} and published as
+ * percentile histograms so SLOs can be alerted on per hop of a flow:
+ * - {@code mannapay.events.age}: time from {@code DomainEvent.timestamp} to the
+ *   moment the consumer starts handling the event (producer, broker and
+ *   consumer queueing combined)
+ * - {@code mannapay.events.handler.time}: time spent in the handler,
+ *   including idempotency bookkeeping
+ *
+ * Negative ages caused by clock skew between hosts are recorded as zero.
+ */
+@Component
+public class EventLatencyMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> ageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> handlerTimers = new ConcurrentHashMap<>();
+
+    public EventLatencyMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Record the age of an event as it is picked up for handling.
+     */
+    public void recordConsumed(String topic, DomainEvent event) {
+        Instant timestamp = event.getTimestamp();
+        if (timestamp == null) {
+            return;
+        }
+        long ageMillis = Math.max(0, System.currentTimeMillis() - timestamp.toEpochMilli());
+        ageTimer(topic, eventTypeOf(event)).record(ageMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record the time the handler took for an event.
+     */
+    public void recordHandled(String topic, DomainEvent event, long durationNanos) {
+        handlerTimer(topic, eventTypeOf(event)).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer ageTimer(String topic, String eventType) {
+        return ageTimers.computeIfAbsent(topic + "|" + eventType, k ->
+            Timer.builder("mannapay.events.age")
+                .description("Event age at consume (now minus event timestamp)")
+                .tag("topic", topic)
+                .tag("eventType", eventType)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(meterRegistry));
+    }
+
+    private Timer handlerTimer(String topic, String eventType) {
+        return handlerTimers.computeIfAbsent(topic + "|" + eventType, k ->
+            Timer.builder("mannapay.events.handler.time")
+                .description("Time spent handling an event")
+                .tag("topic", topic)
+                .tag("eventType", eventType)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(meterRegistry));
+    }
+
+    private static String eventTypeOf(DomainEvent event) {
+        return event.getEventType() != null ? event.getEventType() : event.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,355 @@
+package com.mannapay.common.events.kafka.consumer.parking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Service for key-level poison-pill parking.
+ *
+ * When a record fails permanently, its key is parked: the record and every
+ * later record with the same key are diverted, in order, to
+ * {@code <topic>.parked}, while other keys keep processing at full speed.
+ *
+ * Unparking replays the key's parked records to the original topic in order.
+ * New records for the key keep being diverted behind them until the consumer
+ * has processed the last replayed record and no more were parked meanwhile;
+ * only then is the key released, so per-key order is preserved throughout.
+ * If a replayed record fails again the key is parked again.
+ */
+@Service
+@Slf4j
+public class KeyParkingService {
+
+    public static final String PARKING_SUFFIX = ".parked";
+    public static final String PARKED_FROM_TOPIC_HEADER = "parkedFromTopic";
+    public static final String PARKED_REASON_HEADER = "parkedReason";
+    public static final String PARKED_REPLAY_HEADER = "parkedReplay";
+    public static final String PARKED_REPLAY_LAST_HEADER = "parkedReplayLast";
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final ParkedKeyRegistry registry;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ConsumerFactory<String, Object> consumerFactory;
+    private final ProducerFactory<String, Object> producerFactory;
+    private final int maxFailuresBeforeParking;
+
+    // One entry per partition: only the record at the head of a partition is retried,
+    // so a count for an earlier offset is stale (the record was recovered or skipped)
+    private final Map<TopicPartition, FailureCount> failureCounts = new ConcurrentHashMap<>();
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "parking-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter recordsParkedCounter;
+    private final Counter keysUnparkedCounter;
+
+    public KeyParkingService(
+            ParkedKeyRegistry registry,
+            KafkaTemplate<String, Object> kafkaTemplate,
+            ConsumerFactory<String, Object> consumerFactory,
+            ProducerFactory<String, Object> producerFactory,
+            MeterRegistry meterRegistry,
+            @Value("${kafka.consumer.parking.max-failures:3}") int maxFailuresBeforeParking) {
+
+        this.registry = registry;
+        this.kafkaTemplate = kafkaTemplate;
+        this.consumerFactory = consumerFactory;
+        this.producerFactory = producerFactory;
+        this.maxFailuresBeforeParking = maxFailuresBeforeParking;
+
+        this.recordsParkedCounter = Counter.builder("mannapay.events.parked")
+            .description("Records diverted to a parking topic")
+            .register(meterRegistry);
+
+        this.keysUnparkedCounter = Counter.builder("mannapay.events.unparked")
+            .description("Keys released after their parked records were replayed")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Decide whether a record must be diverted instead of processed.
+     *
+     * Replayed records are checked against the store, since the unpark may
+     * have been requested on another instance.
+     */
+    public boolean shouldDivert(ConsumerRecord<String, ?> record) {
+        if (record.key() == null) {
+            return false;
+        }
+        boolean replayed = record.headers().lastHeader(PARKED_REPLAY_HEADER) != null;
+        ParkedKey parkedKey = replayed
+            ? registry.reload(record.topic(), record.key())
+            : registry.get(record.topic(), record.key());
+
+        if (parkedKey == null) {
+            return false;
+        }
+        // While unparking, replayed records go through and new ones queue behind them
+        return parkedKey.getState() == ParkedKey.State.PARKED || !replayed;
+    }
+
+    /**
+     * Divert a record of a parked key to the parking topic.
+     */
+    public void divert(ConsumerRecord<String, ?> record) {
+        ParkedKey parkedKey = registry.get(record.topic(), record.key());
+        long offset = sendToParking(record, parkedKey != null ? parkedKey.getReason() : null);
+        if (parkedKey != null) {
+            registry.put(parkedKey.withLastOffset(offset));
+        }
+    }
+
+    /**
+     * Count a failed attempt for a record.
+     *
+     * @return true once the record failed often enough (or non-retryably) to park its key
+     */
+    public boolean recordFailure(ConsumerRecord<String, ?> record, boolean retryable) {
+        if (record.key() == null) {
+            return false;
+        }
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        FailureCount count = failureCounts.compute(partition, (tp, current) ->
+            current != null && current.offset() == record.offset()
+                ? new FailureCount(record.offset(), current.failures() + 1)
+                : new FailureCount(record.offset(), 1));
+        if (!retryable || count.failures() >= maxFailuresBeforeParking) {
+            failureCounts.remove(partition, count);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Clear failure bookkeeping after a record was processed.
+     */
+    public void recordSuccess(ConsumerRecord<String, ?> record) {
+        if (!failureCounts.isEmpty()) {
+            failureCounts.remove(new TopicPartition(record.topic(), record.partition()));
+        }
+    }
+
+    /**
+     * Park the key of a failed record and divert the record itself.
+     */
+    public void park(ConsumerRecord<String, ?> record, Throwable cause) {
+        String reason = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        long offset = sendToParking(record, reason);
+
+        ParkedKey existing = registry.get(record.topic(), record.key());
+        ParkedKey parkedKey = existing != null
+            // A replayed record failed again: the next round starts at its new copy
+            ? existing.withState(ParkedKey.State.PARKED).withFirstOffset(offset).withLastOffset(offset)
+            : new ParkedKey(record.topic(), record.key(), ParkedKey.State.PARKED,
+                offset, offset, Instant.now(), reason);
+        registry.put(parkedKey);
+
+        log.warn("Key parked: topic={}, key={}, offset={}, parkingOffset={}, reason={}",
+            record.topic(), record.key(), record.offset(), offset, reason);
+    }
+
+    /**
+     * Replay the parked records of a key in order and release it once caught up.
+     *
+     * @return false if the key is not parked
+     */
+    public boolean unpark(String topic, String key) {
+        ParkedKey parkedKey = registry.reload(topic, key);
+        if (parkedKey == null) {
+            return false;
+        }
+        registry.put(parkedKey.withState(ParkedKey.State.UNPARKING));
+        replayExecutor.execute(() -> replay(topic, key, parkedKey.getFirstOffset()));
+        log.info("Unparking key: topic={}, key={}, fromOffset={}", topic, key, parkedKey.getFirstOffset());
+        return true;
+    }
+
+    /**
+     * Called on the consumer thread after a replayed record was processed.
+     *
+     * After the last record of a replay round, either releases the key or,
+     * if more records were diverted meanwhile, replays those as well.
+     */
+    public void onReplayedRecordProcessed(ConsumerRecord<String, ?> record) {
+        Header last = record.headers().lastHeader(PARKED_REPLAY_LAST_HEADER);
+        if (last == null) {
+            return;
+        }
+        long lastReplayed = Long.parseLong(new String(last.value(), StandardCharsets.UTF_8));
+        ParkedKey parkedKey = registry.reload(record.topic(), record.key());
+        if (parkedKey == null || parkedKey.getState() != ParkedKey.State.UNPARKING) {
+            return;
+        }
+
+        if (parkedKey.getLastOffset() > lastReplayed) {
+            // Records diverted during the replay are queued behind it; replay them next
+            registry.put(parkedKey.withFirstOffset(lastReplayed + 1));
+            replayExecutor.execute(() -> replay(record.topic(), record.key(), lastReplayed + 1));
+            return;
+        }
+
+        registry.remove(record.topic(), record.key());
+        keysUnparkedCounter.increment();
+        log.info("Key unparked: topic={}, key={}", record.topic(), record.key());
+    }
+
+    public List<ParkedKey> getParkedKeys() {
+        return new ArrayList<>(registry.getParkedKeys());
+    }
+
+    private long sendToParking(ConsumerRecord<String, ?> record, String reason) {
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!header.key().startsWith("parked")) {
+                headers.add(header);
+            }
+        }
+        headers.add(PARKED_FROM_TOPIC_HEADER, record.topic().getBytes(StandardCharsets.UTF_8));
+        if (reason != null) {
+            headers.add(PARKED_REASON_HEADER, reason.getBytes(StandardCharsets.UTF_8));
+        }
+
+        ProducerRecord<String, Object> parked = new ProducerRecord<>(
+            record.topic() + PARKING_SUFFIX, null, record.key(), record.value(), headers);
+        try {
+            // Synchronous so the record is parked before the source offset is acknowledged
+            RecordMetadata metadata = kafkaTemplate.send(parked).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .getRecordMetadata();
+            recordsParkedCounter.increment();
+            return metadata.offset();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parking record", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Failed to park record: topic=" + record.topic()
+                + ", offset=" + record.offset(), e);
+        }
+    }
+
+    /**
+     * Re-publish the key's parked records from the given parking offset to the end.
+     */
+    private void replay(String topic, String key, long fromOffset) {
+        String parkingTopic = topic + PARKING_SUFFIX;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        try (Consumer<byte[], byte[]> consumer = createConsumer();
+             Producer<byte[], byte[]> producer = createProducer()) {
+
+            // Same partition the default partitioner chose when parking
+            int partitions = consumer.partitionsFor(parkingTopic).size();
+            TopicPartition tp = new TopicPartition(parkingTopic, Utils.toPositive(Utils.murmur2(keyBytes)) % partitions);
+            consumer.assign(List.of(tp));
+            long end = consumer.endOffsets(List.of(tp)).get(tp);
+            consumer.seek(tp, fromOffset);
+
+            List<ConsumerRecord<byte[], byte[]>> parked = new ArrayList<>();
+            long position = fromOffset;
+            while (position < end) {
+                for (ConsumerRecord<byte[], byte[]> record : consumer.poll(POLL_TIMEOUT).records(tp)) {
+                    if (record.offset() < end && record.key() != null && key.equals(new String(record.key(), StandardCharsets.UTF_8))) {
+                        parked.add(record);
+                    }
+                }
+                position = consumer.position(tp);
+            }
+
+            if (parked.isEmpty()) {
+                registry.remove(topic, key);
+                keysUnparkedCounter.increment();
+                log.info("Key unparked, nothing to replay: topic={}, key={}", topic, key);
+                return;
+            }
+
+            for (int i = 0; i < parked.size(); i++) {
+                ConsumerRecord<byte[], byte[]> record = parked.get(i);
+                Headers headers = new RecordHeaders();
+                for (Header header : record.headers()) {
+                    if (!header.key().startsWith("parked")) {
+                        headers.add(header);
+                    }
+                }
+                headers.add(PARKED_REPLAY_HEADER, String.valueOf(record.offset()).getBytes(StandardCharsets.UTF_8));
+                if (i == parked.size() - 1) {
+                    headers.add(PARKED_REPLAY_LAST_HEADER,
+                        String.valueOf(record.offset()).getBytes(StandardCharsets.UTF_8));
+                }
+                producer.send(new ProducerRecord<>(topic, null, record.key(), record.value(), headers));
+            }
+            producer.flush();
+
+            log.info("Parked records replayed: topic={}, key={}, count={}, fromOffset={}",
+                topic, key, parked.size(), fromOffset);
+
+        } catch (RuntimeException e) {
+            // Key stays UNPARKING; unpark can be requested again
+            log.error("Failed to replay parked records: topic={}, key={}, error={}", topic, key, e.getMessage(), e);
+        }
+    }
+
+    private Consumer<byte[], byte[]> createConsumer() {
+        Map<String, Object> props = new HashMap<>(consumerFactory.getConfigurationProperties());
+        props.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, props.get(ConsumerConfig.CLIENT_ID_CONFIG) + "-parking");
+        return new KafkaConsumer<>(props, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+    }
+
+    private Producer<byte[], byte[]> createProducer() {
+        Map<String, Object> props = new HashMap<>(producerFactory.getConfigurationProperties());
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, props.get(ProducerConfig.CLIENT_ID_CONFIG) + "-parking");
+        return new KafkaProducer<>(props, new ByteArraySerializer(), new ByteArraySerializer());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replayExecutor.shutdown();
+    }
+
+    /**
+     * Failed attempts of the record being retried in a partition.
+     */
+    private record FailureCount(long offset, int failures) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.mannapay.common.events.kafka.consumer.parking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * A record key whose records are diverted to the parking topic.
+ *
+ * States:
+ * - PARKED: Every record for the key is diverted
+ * - UNPARKING: Parked records are being replayed; new records are still
+ *   diverted behind them until the replay has caught up
+ *
+ * Offsets refer to the key's partition of the parking topic: the first record
+ * of the current replay round and the last record diverted so far.
+ */
+@Getter
+@AllArgsConstructor
+public class ParkedKey {
+
+    public enum State {
+        PARKED,
+        UNPARKING
+    }
+
+    private final String topic;
+    private final String key;
+    private final State state;
+    private final long firstOffset;
+    private final long lastOffset;
+    private final Instant parkedAt;
+    private final String reason;
+
+    public ParkedKey withState(State newState) {
+        return new ParkedKey(topic, key, newState, firstOffset, lastOffset, parkedAt, reason);
+    }
+
+    public ParkedKey withLastOffset(long offset) {
+        return new ParkedKey(topic, key, state, firstOffset, Math.max(lastOffset, offset), parkedAt, reason);
+    }
+
+    public ParkedKey withFirstOffset(long offset) {
+        return new ParkedKey(topic, key, state, offset, lastOffset, parkedAt, reason);
+    }
+
+    /**
+     * Encode as {@code state|firstOffset|lastOffset|parkedAtMillis|reason}.
+     */
+    public String encode() {
+        return state + "|" + firstOffset + "|" + lastOffset + "|" + parkedAt.toEpochMilli() + "|"
+            + (reason != null ? reason : "");
+    }
+
+    public static ParkedKey decode(String topic, String key, String encoded) {
+        String[] parts = encoded.split("\\|", 5);
+        return new ParkedKey(
+            topic,
+            key,
+            State.valueOf(parts[0]),
+            Long.parseLong(parts[1]),
+            Long.parseLong(parts[2]),
+            Instant.ofEpochMilli(Long.parseLong(parts[3])),
+            parts.length > 4 && !parts[4].isEmpty() ? parts[4] : null);
+    }
+}
@@ -0,0 +1,120 @@
+package com.mannapay.common.events.kafka.consumer.parking;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory set of parked keys backed by Redis.
+ *
+ * Lookups on the consumer thread hit only the local map; changes are written
+ * through to {@code mannapay:events:parked:<group>} (field {@code <topic>|<key>})
+ * and the map is refreshed periodically so every instance of the group sees
+ * keys parked or unparked elsewhere.
+ */
+@Component
+@Slf4j
+public class ParkedKeyRegistry {
+
+    private static final String PARKED_KEY_PREFIX = "mannapay:events:parked:";
+    private static final String FIELD_SEPARATOR = "|";
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    private final String redisKey;
+    private final Map<String, ParkedKey> parked = new ConcurrentHashMap<>();
+
+    public ParkedKeyRegistry(
+            ObjectProvider<StringRedisTemplate> redisTemplate,
+            @Value("${spring.application.name:unknown-service}") String applicationName) {
+        this.redisTemplate = redisTemplate;
+        this.redisKey = PARKED_KEY_PREFIX + applicationName + "-group";
+    }
+
+    /**
+     * Parked state of a key from memory, or null if not parked.
+     */
+    public ParkedKey get(String topic, String key) {
+        return parked.isEmpty() ? null : parked.get(field(topic, key));
+    }
+
+    /**
+     * Parked state of a key read from the store, updating memory.
+     */
+    public ParkedKey reload(String topic, String key) {
+        String field = field(topic, key);
+        Object value = redisTemplate.getObject().opsForHash().get(redisKey, field);
+        if (value == null) {
+            parked.remove(field);
+            return null;
+        }
+        ParkedKey parkedKey = ParkedKey.decode(topic, key, value.toString());
+        parked.put(field, parkedKey);
+        return parkedKey;
+    }
+
+    /**
+     * Store and remember a parked key.
+     */
+    public void put(ParkedKey parkedKey) {
+        String field = field(parkedKey.getTopic(), parkedKey.getKey());
+        redisTemplate.getObject().opsForHash().put(redisKey, field, parkedKey.encode());
+        parked.put(field, parkedKey);
+    }
+
+    /**
+     * Forget a parked key.
+     */
+    public void remove(String topic, String key) {
+        String field = field(topic, key);
+        redisTemplate.getObject().opsForHash().delete(redisKey, field);
+        parked.remove(field);
+    }
+
+    public Collection<ParkedKey> getParkedKeys() {
+        return Collections.unmodifiableCollection(parked.values());
+    }
+
+    /**
+     * Reload the whole set from the store.
+     * Runs at startup and periodically.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${kafka.consumer.parking.refresh-interval-ms:10000}")
+    public void refresh() {
+        StringRedisTemplate template = redisTemplate.getIfAvailable();
+        if (template == null) {
+            // No Redis in this service, so nothing can have been parked
+            return;
+        }
+        try {
+            Map<Object, Object> entries = template.opsForHash().entries(redisKey);
+            Map<String, ParkedKey> loaded = new ConcurrentHashMap<>();
+            entries.forEach((field, value) -> {
+                String name = field.toString();
+                int separator = name.indexOf(FIELD_SEPARATOR);
+                String topic = name.substring(0, separator);
+                String key = name.substring(separator + 1);
+                loaded.put(name, ParkedKey.decode(topic, key, value.toString()));
+            });
+            parked.keySet().retainAll(loaded.keySet());
+            parked.putAll(loaded);
+        } catch (DataAccessException e) {
+            log.warn("Failed to refresh parked keys, keeping {} cached: {}", parked.size(), e.getMessage());
+        }
+    }
+
+    private static String field(String topic, String key) {
+        return topic + FIELD_SEPARATOR + key;
+    }
+}
@@ -0,0 +1,81 @@
+package com.mannapay.common.events.kafka.consumer.rebalance;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Rebalance listener installed on every listener container factory.
+ *
+ * A container accepts a single rebalance listener, so this one fans each
+ * callback out to every other {@link ConsumerAwareRebalanceListener} bean
+ * (offset watermarks, partition-affinity caches, ...) in {@code @Order}
+ * order. A failing delegate is logged and does not stop the others.
+ *
+ * Delegates are resolved on first use, so listeners may depend on beans
+ * that themselves need the container factories.
+ */
+@Component
+@Slf4j
+public class CompositeRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private final ObjectProvider<ConsumerAwareRebalanceListener> listeners;
+
+    private volatile List<ConsumerAwareRebalanceListener> delegates;
+
+    public CompositeRebalanceListener(ObjectProvider<ConsumerAwareRebalanceListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        invoke("revokedBeforeCommit", partitions, l -> l.onPartitionsRevokedBeforeCommit(consumer, partitions));
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        invoke("revokedAfterCommit", partitions, l -> l.onPartitionsRevokedAfterCommit(consumer, partitions));
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        invoke("lost", partitions, l -> l.onPartitionsLost(consumer, partitions));
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        invoke("assigned", partitions, l -> l.onPartitionsAssigned(consumer, partitions));
+    }
+
+    /**
+     * Listeners receiving the callbacks.
+     */
+    public List<ConsumerAwareRebalanceListener> getDelegates() {
+        List<ConsumerAwareRebalanceListener> resolved = delegates;
+        if (resolved == null) {
+            resolved = listeners.orderedStream()
+                .filter(listener -> listener != this)
+                .toList();
+            delegates = resolved;
+        }
+        return resolved;
+    }
+
+    private void invoke(String callback, Collection<TopicPartition> partitions,
+                        java.util.function.Consumer<ConsumerAwareRebalanceListener> action) {
+        for (ConsumerAwareRebalanceListener listener : getDelegates()) {
+            try {
+                action.accept(listener);
+            } catch (Exception e) {
+                log.error("Rebalance listener failed: listener={}, callback={}, partitions={}, error={}",
+                    listener.getClass().getSimpleName(), callback, partitions, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.mannapay.common.events.kafka.consumer.rebalance;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-memory aggregate state scoped to the partitions this instance owns.
+ *
+ * Every record for an aggregate key lands on the same partition, so while a
+ * partition is assigned here no other instance of the group handles its
+ * aggregates and their state can be kept in memory instead of reloaded per
+ * event. Entries live in one LRU map per assigned partition:
+ * - created (and optionally warmed) when the partition is assigned
+ * - dropped as a whole when it is revoked or lost
+ * - keys of partitions not assigned here are loaded but never cached
+ *
+ * Only cache state this consumer is the sole writer of. Handlers that update
+ * the aggregate must {@link #put} the new state (or {@link #invalidate} it)
+ * in the same flow that writes it to the DB.
+ *
+ * Created through {@link PartitionAffinityCacheManager#createCache}.
+ *
+ * @param <V> The cached state type
+ */
+@Slf4j
+public class PartitionAffinityCache<V> {
+
+    private final String name;
+    private final String topic;
+    private final int maxEntriesPerPartition;
+    private final PartitionCacheWarmer<V> warmer;
+
+    private final Map<Integer, Map<String, V>> partitions = new ConcurrentHashMap<>();
+    private volatile int partitionCount;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    PartitionAffinityCache(String name, String topic, int maxEntriesPerPartition,
+                           PartitionCacheWarmer<V> warmer, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.topic = topic;
+        this.maxEntriesPerPartition = maxEntriesPerPartition;
+        this.warmer = warmer;
+
+        this.hitCounter = Counter.builder("mannapay.consumer.partition.cache.hits")
+            .description("Partition-affinity cache hits")
+            .tag("cache", name)
+            .register(meterRegistry);
+
+        this.missCounter = Counter.builder("mannapay.consumer.partition.cache.misses")
+            .description("Partition-affinity cache misses")
+            .tag("cache", name)
+            .register(meterRegistry);
+    }
+
+    /**
+     * State of the record's aggregate (the record key), loading it on a miss.
+     */
+    public V get(ConsumerRecord<String, ?> record, Function<String, V> loader) {
+        if (!topic.equals(record.topic())) {
+            // e.g. a retry topic with a different partition count
+            return get(record.key(), loader);
+        }
+        return get(record.partition(), record.key(), loader);
+    }
+
+    /**
+     * State of an aggregate, loading it on a miss. The partition is derived
+     * from the key the way the default producer partitioner does.
+     */
+    public V get(String aggregateKey, Function<String, V> loader) {
+        return get(partitionOf(aggregateKey), aggregateKey, loader);
+    }
+
+    /**
+     * Cached state of an aggregate, or null.
+     */
+    public V getIfPresent(String aggregateKey) {
+        Map<String, V> entries = entriesOf(partitionOf(aggregateKey));
+        if (entries == null) {
+            return null;
+        }
+        synchronized (entries) {
+            return entries.get(aggregateKey);
+        }
+    }
+
+    /**
+     * Store the current state of an aggregate; ignored if its partition is not assigned here.
+     */
+    public void put(String aggregateKey, V value) {
+        Map<String, V> entries = entriesOf(partitionOf(aggregateKey));
+        if (entries != null) {
+            synchronized (entries) {
+                entries.put(aggregateKey, value);
+            }
+        }
+    }
+
+    public void invalidate(String aggregateKey) {
+        Map<String, V> entries = entriesOf(partitionOf(aggregateKey));
+        if (entries != null) {
+            synchronized (entries) {
+                entries.remove(aggregateKey);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Number of cached entries across assigned partitions.
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, V> entries : partitions.values()) {
+            synchronized (entries) {
+                size += entries.size();
+            }
+        }
+        return size;
+    }
+
+    void assigned(TopicPartition partition, int topicPartitionCount) {
+        if (topicPartitionCount > 0) {
+            partitionCount = topicPartitionCount;
+        }
+        Map<String, V> entries = newEntries();
+        if (warmer != null) {
+            long start = System.currentTimeMillis();
+            try {
+                Map<String, V> warmed = warmer.warm(partition, key -> partitionOf(key) == partition.partition());
+                warmed.forEach((key, value) -> {
+                    if (partitionOf(key) == partition.partition()) {
+                        entries.put(key, value);
+                    }
+                });
+                log.info("Warmed partition cache: cache={}, partition={}, entries={}, durationMs={}",
+                    name, partition, entries.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.warn("Partition cache warm-up failed, starting cold: cache={}, partition={}, error={}",
+                    name, partition, e.getMessage());
+                entries.clear();
+            }
+        }
+        partitions.put(partition.partition(), entries);
+    }
+
+    void revoked(Collection<TopicPartition> revoked) {
+        revoked.stream()
+            .filter(tp -> tp.topic().equals(topic))
+            .forEach(tp -> partitions.remove(tp.partition()));
+    }
+
+    private V get(int partition, String aggregateKey, Function<String, V> loader) {
+        Map<String, V> entries = entriesOf(partition);
+        if (entries == null) {
+            missCounter.increment();
+            return loader.apply(aggregateKey);
+        }
+        synchronized (entries) {
+            V value = entries.get(aggregateKey);
+            if (value != null) {
+                hitCounter.increment();
+                return value;
+            }
+        }
+        missCounter.increment();
+        V loaded = loader.apply(aggregateKey);
+        if (loaded != null) {
+            synchronized (entries) {
+                entries.putIfAbsent(aggregateKey, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    private Map<String, V> entriesOf(int partition) {
+        return partition < 0 ? null : partitions.get(partition);
+    }
+
+    private int partitionOf(String aggregateKey) {
+        int count = partitionCount;
+        if (aggregateKey == null || count <= 0) {
+            return -1;
+        }
+        byte[] keyBytes = aggregateKey.getBytes(StandardCharsets.UTF_8);
+        return Utils.toPositive(Utils.murmur2(keyBytes)) % count;
+    }
+
+    private Map<String, V> newEntries() {
+        return new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntriesPerPartition;
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+package com.mannapay.common.events.kafka.consumer.rebalance;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates {@link PartitionAffinityCache}s and keeps them in step with the
+ * partitions assigned to the listener containers.
+ *
+ * Receives the containers' rebalance callbacks through the
+ * {@link CompositeRebalanceListener}: assigned partitions get a fresh (and
+ * optionally warmed) cache scope before their first record is delivered,
+ * revoked or lost partitions are dropped.
+ *
+ * Example:
+ * <pre>
+ * walletCache = cacheManager.createCache("wallets", "mannapay.wallet.events",
+ *     (partition, owns) -> walletRepository.findRecentlyActive().stream()
+ *         .filter(w -> owns.test(w.getId()))
+ *         .collect(toMap(Wallet::getId, identity())));
+ * ...
+ * Wallet wallet = walletCache.get(event.getAggregateId(), walletRepository::getById);
+ * </pre>
+ */
+@Component
+@Slf4j
+public class PartitionAffinityCacheManager implements ConsumerAwareRebalanceListener {
+
+    private final MeterRegistry meterRegistry;
+    private final int defaultMaxEntriesPerPartition;
+
+    private final Map<String, PartitionAffinityCache<?>> caches = new ConcurrentHashMap<>();
+    private final List<PartitionAffinityCache<?>> cacheList = new CopyOnWriteArrayList<>();
+    private final Set<TopicPartition> assigned = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> partitionCounts = new ConcurrentHashMap<>();
+
+    public PartitionAffinityCacheManager(
+            MeterRegistry meterRegistry,
+            @Value("${kafka.consumer.partition-cache.max-entries-per-partition:10000}") int defaultMaxEntriesPerPartition) {
+        this.meterRegistry = meterRegistry;
+        this.defaultMaxEntriesPerPartition = defaultMaxEntriesPerPartition;
+    }
+
+    /**
+     * Create a cache for the aggregates of a topic without warm-up.
+     */
+    public <V> PartitionAffinityCache<V> createCache(String name, String topic) {
+        return createCache(name, topic, defaultMaxEntriesPerPartition, null);
+    }
+
+    /**
+     * Create a cache for the aggregates of a topic, warmed on assignment.
+     */
+    public <V> PartitionAffinityCache<V> createCache(String name, String topic, PartitionCacheWarmer<V> warmer) {
+        return createCache(name, topic, defaultMaxEntriesPerPartition, warmer);
+    }
+
+    /**
+     * Create a cache for the aggregates of a topic.
+     *
+     * @param name Cache name, used as metric tag
+     * @param topic The topic whose partitions scope the entries
+     * @param maxEntriesPerPartition LRU bound per partition
+     * @param warmer Loads entries on assignment, or null
+     */
+    public <V> PartitionAffinityCache<V> createCache(String name, String topic, int maxEntriesPerPartition,
+                                                     PartitionCacheWarmer<V> warmer) {
+        PartitionAffinityCache<V> cache = new PartitionAffinityCache<>(
+            name, topic, maxEntriesPerPartition, warmer, meterRegistry);
+        if (caches.putIfAbsent(name, cache) != null) {
+            throw new IllegalStateException("Partition cache already exists: " + name);
+        }
+        cacheList.add(cache);
+
+        // Partitions assigned before the cache was created (e.g. a lazily created handler bean)
+        int partitionCount = partitionCounts.getOrDefault(topic, 0);
+        assigned.stream()
+            .filter(tp -> tp.topic().equals(topic))
+            .forEach(tp -> cache.assigned(tp, partitionCount));
+        return cache;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> PartitionAffinityCache<V> getCache(String name) {
+        return (PartitionAffinityCache<V>) caches.get(name);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        assigned.addAll(partitions);
+        partitions.stream()
+            .map(TopicPartition::topic)
+            .distinct()
+            .forEach(topic -> partitionCounts.put(topic, partitionCount(consumer, topic)));
+
+        for (PartitionAffinityCache<?> cache : cacheList) {
+            int partitionCount = partitionCounts.getOrDefault(cache.getTopic(), 0);
+            partitions.stream()
+                .filter(tp -> tp.topic().equals(cache.getTopic()))
+                .forEach(tp -> cache.assigned(tp, partitionCount));
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        drop(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        drop(partitions);
+    }
+
+    private void drop(Collection<TopicPartition> partitions) {
+        partitions.forEach(assigned::remove);
+        cacheList.forEach(cache -> cache.revoked(partitions));
+        log.debug("Dropped partition caches: partitions={}", partitions);
+    }
+
+    private static int partitionCount(Consumer<?, ?> consumer, String topic) {
+        try {
+            List<PartitionInfo> infos = consumer.partitionsFor(topic);
+            return infos != null ? infos.size() : 0;
+        } catch (Exception e) {
+            log.warn("Could not read partition count: topic={}, error={}", topic, e.getMessage());
+            return 0;
+        }
+    }
+}
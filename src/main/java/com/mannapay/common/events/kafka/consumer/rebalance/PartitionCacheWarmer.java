@@ -0,0 +1,27 @@
+package com.mannapay.common.events.kafka.consumer.rebalance;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Loads the initial entries of a {@link PartitionAffinityCache} for a newly
+ * assigned partition, e.g. the aggregates with recent activity.
+ *
+ * Runs on the consumer thread inside the rebalance, before any record of the
+ * partition is delivered, so it must be bounded: a slow warmer delays the
+ * whole group's rebalance.
+ *
+ * @param <V> The cached state type
+ */
+@FunctionalInterface
+public interface PartitionCacheWarmer<V> {
+
+    /**
+     * @param partition The assigned partition
+     * @param owns Whether an aggregate key maps to this partition
+     * @return Entries by aggregate key; keys not owned by the partition are ignored
+     */
+    Map<String, V> warm(TopicPartition partition, Predicate<String> owns);
+}
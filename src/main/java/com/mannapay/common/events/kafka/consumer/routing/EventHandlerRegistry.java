@@ -0,0 +1,167 @@
+package com.mannapay.common.events.kafka.consumer.routing;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.mannapay.common.events.core.DomainEvent;
+import com.mannapay.common.events.kafka.consumer.EventHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable dispatch table from event type to {@link EventHandler} beans.
+ *
+ * Built once at startup from every {@code EventHandler} bean in the context.
+ * A handler's event class comes from {@link EventHandler#getEventType()} or,
+ * if that is not overridden, from its generic type argument. Event type names
+ * are taken from the {@link JsonSubTypes} declarations on the event base
+ * classes, i.e. the same names carried in the {@code eventType} Kafka header:
+ * - a concrete event class maps to the name its base class registers it under
+ * - an abstract base class (e.g. {@code TransferEvent}) maps to all its subtypes
+ * - {@code DomainEvent} or an unresolvable type matches every event
+ *
+ * Routing reads only the header, so records no handler cares about can be
+ * skipped before the body is deserialized (see {@link EventTypeFilteringDeserializer}).
+ */
+@Component
+@Slf4j
+public class EventHandlerRegistry {
+
+    public static final String EVENT_TYPE_HEADER = "eventType";
+
+    private final Map<String, List<EventHandler<DomainEvent>>> handlersByType;
+    private final Map<Class<?>, List<EventHandler<DomainEvent>>> handlersByClass;
+    private final List<EventHandler<DomainEvent>> wildcardHandlers;
+
+    public EventHandlerRegistry(ObjectProvider<EventHandler<?>> handlers) {
+        Map<String, List<EventHandler<DomainEvent>>> byType = new HashMap<>();
+        Map<Class<?>, List<EventHandler<DomainEvent>>> byClass = new HashMap<>();
+        List<EventHandler<DomainEvent>> wildcard = new ArrayList<>();
+
+        handlers.orderedStream().forEach(handler -> {
+            @SuppressWarnings("unchecked")
+            EventHandler<DomainEvent> typed = (EventHandler<DomainEvent>) handler;
+            Class<?> eventClass = resolveEventClass(handler);
+
+            if (eventClass == null || eventClass == DomainEvent.class) {
+                wildcard.add(typed);
+                return;
+            }
+            resolveEventTypeNames(eventClass).forEach((name, subtype) -> {
+                byType.computeIfAbsent(name, k -> new ArrayList<>()).add(typed);
+                byClass.computeIfAbsent(subtype, k -> new ArrayList<>()).add(typed);
+            });
+        });
+
+        // Wildcard handlers also run for every specifically routed type
+        byType.replaceAll((name, list) -> concat(list, wildcard));
+        byClass.replaceAll((type, list) -> concat(list, wildcard));
+
+        this.handlersByType = Map.copyOf(byType);
+        this.handlersByClass = Map.copyOf(byClass);
+        this.wildcardHandlers = List.copyOf(wildcard);
+
+        log.info("Event handler registry built: eventTypes={}, wildcardHandlers={}",
+            handlersByType.keySet(), wildcardHandlers.size());
+    }
+
+    /**
+     * Handlers for an event type name; empty if none is interested.
+     */
+    public List<EventHandler<DomainEvent>> handlersFor(String eventType) {
+        return handlersByType.getOrDefault(eventType, wildcardHandlers);
+    }
+
+    /**
+     * Handlers for an event class; empty if none is interested.
+     */
+    public List<EventHandler<DomainEvent>> handlersFor(Class<? extends DomainEvent> eventClass) {
+        return handlersByClass.getOrDefault(eventClass, wildcardHandlers);
+    }
+
+    /**
+     * Check whether any handler is interested in the event type.
+     */
+    public boolean isHandled(String eventType) {
+        return !wildcardHandlers.isEmpty() || handlersByType.containsKey(eventType);
+    }
+
+    /**
+     * Read the {@code eventType} header of a record, or null if absent.
+     */
+    public static String eventTypeOf(ConsumerRecord<?, ?> record) {
+        return eventTypeOf(record.headers());
+    }
+
+    /**
+     * Read the {@code eventType} header, or null if absent.
+     */
+    public static String eventTypeOf(Headers headers) {
+        Header header = headers.lastHeader(EVENT_TYPE_HEADER);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private static Class<?> resolveEventClass(EventHandler<?> handler) {
+        Class<?> declared = handler.getEventType();
+        if (declared != null) {
+            return declared;
+        }
+        return ResolvableType.forClass(handler.getClass()).as(EventHandler.class).getGeneric(0).resolve();
+    }
+
+    /**
+     * Event type names (and their classes) covered by an event class.
+     */
+    private static Map<String, Class<?>> resolveEventTypeNames(Class<?> eventClass) {
+        Map<String, Class<?>> names = new LinkedHashMap<>();
+
+        // Abstract bases cover every subtype they declare
+        JsonSubTypes own = eventClass.getDeclaredAnnotation(JsonSubTypes.class);
+        if (own != null) {
+            for (JsonSubTypes.Type type : own.value()) {
+                names.put(typeName(type), type.value());
+            }
+        }
+
+        // Concrete classes use the name a base class registers them under
+        for (Class<?> c = eventClass.getSuperclass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            JsonSubTypes declared = c.getDeclaredAnnotation(JsonSubTypes.class);
+            if (declared == null) {
+                continue;
+            }
+            for (JsonSubTypes.Type type : declared.value()) {
+                if (type.value() == eventClass) {
+                    names.put(typeName(type), eventClass);
+                }
+            }
+        }
+
+        // Fallback used by DomainEvent.initializeDefaults()
+        if (names.isEmpty() && !Modifier.isAbstract(eventClass.getModifiers())) {
+            names.put(eventClass.getSimpleName(), eventClass);
+        }
+        return names;
+    }
+
+    private static String typeName(JsonSubTypes.Type type) {
+        return type.name().isEmpty() ? type.value().getSimpleName() : type.name();
+    }
+
+    private static List<EventHandler<DomainEvent>> concat(
+            List<EventHandler<DomainEvent>> first, List<EventHandler<DomainEvent>> second) {
+        List<EventHandler<DomainEvent>> combined = new ArrayList<>(first);
+        combined.addAll(second);
+        return List.copyOf(combined);
+    }
+}
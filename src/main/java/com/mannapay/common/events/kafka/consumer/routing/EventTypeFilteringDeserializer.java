@@ -0,0 +1,49 @@
+package com.mannapay.common.events.kafka.consumer.routing;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * JSON value deserializer that skips records by their {@code eventType} header.
+ *
+ * Records whose header names a type nobody handles are returned as null
+ * without parsing the body; the container's record filter then discards
+ * (and acknowledges) them. Records without the header are parsed normally.
+ */
+public class EventTypeFilteringDeserializer implements Deserializer<Object> {
+
+    private final Predicate<String> acceptedEventType;
+    private final JsonDeserializer<Object> delegate = new JsonDeserializer<>();
+
+    public EventTypeFilteringDeserializer(Predicate<String> acceptedEventType) {
+        this.acceptedEventType = acceptedEventType;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        delegate.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return delegate.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        String eventType = EventHandlerRegistry.eventTypeOf(headers);
+        if (eventType != null && !acceptedEventType.test(eventType)) {
+            return null;
+        }
+        return delegate.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,47 @@
+package com.mannapay.common.events.kafka.consumer.routing;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Record filter that discards events by their {@code eventType} header.
+ *
+ * Only the header is inspected, so combined with a lazy value type
+ * (see {@code LazyEventEnvelope}) non-matching events cost a header lookup.
+ * Records without the header are always passed to the listener.
+ *
+ * @param <K> The record key type
+ * @param <V> The record value type
+ */
+public class EventTypeRecordFilterStrategy<K, V> implements RecordFilterStrategy<K, V> {
+
+    private final Predicate<String> acceptedEventType;
+
+    public EventTypeRecordFilterStrategy(Predicate<String> acceptedEventType) {
+        this.acceptedEventType = acceptedEventType;
+    }
+
+    /**
+     * Accept only the given event type names.
+     */
+    public static <K, V> EventTypeRecordFilterStrategy<K, V> accepting(String... eventTypes) {
+        Set<String> accepted = Set.of(eventTypes);
+        return new EventTypeRecordFilterStrategy<>(accepted::contains);
+    }
+
+    /**
+     * Accept the event types some registered handler is interested in.
+     */
+    public static <K, V> EventTypeRecordFilterStrategy<K, V> forRegistry(EventHandlerRegistry registry) {
+        return new EventTypeRecordFilterStrategy<>(registry::isHandled);
+    }
+
+    @Override
+    public boolean filter(ConsumerRecord<K, V> consumerRecord) {
+        String eventType = EventHandlerRegistry.eventTypeOf(consumerRecord);
+        return eventType != null && !acceptedEventType.test(eventType);
+    }
+}
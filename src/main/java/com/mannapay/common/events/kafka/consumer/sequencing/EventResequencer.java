@@ -0,0 +1,383 @@
+package com.mannapay.common.events.kafka.consumer.sequencing;
+
+import com.mannapay.common.events.kafka.consumer.dispatch.KeyOrderedExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Per-aggregate resequencing buffer keyed on {@code DomainEvent.sequenceNumber}.
+ *
+ * Events are released strictly in sequence order per aggregate, entirely in
+ * memory:
+ * - the expected sequence is processed at once, followed by any buffered
+ *   successors that are now contiguous
+ * - early events are buffered until the gap closes
+ * - a sequence this instance already processed, or already buffered, is a
+ *   duplicate and discarded
+ * - a gap open longer than {@code kafka.consumer.resequencing.gap-timeout} (or a
+ *   full buffer) is skipped: buffered events are released from the lowest one
+ *
+ * A lower sequence that was never seen here (it predates the baseline, or its
+ * gap was skipped) is processed late rather than discarded; the processor's
+ * idempotency check still catches a true redelivery.
+ *
+ * The baseline of an aggregate seen for the first time (e.g. after a restart
+ * or rebalance) comes from the {@link SequenceBaseline} bean if there is one,
+ * otherwise from the first event seen.
+ *
+ * Events released by the gap timeout are handed to the {@link KeyOrderedExecutor}
+ * under the aggregate key, never run on the scheduler thread; until they have
+ * run, later events of the aggregate queue behind them there. Buffers are
+ * bounded per aggregate and in total, and idle aggregates beyond
+ * {@code max-aggregates} are forgotten least recently used first.
+ */
+@Component
+@Slf4j
+public class EventResequencer {
+
+    private static final int MAX_SKIPPED_RANGES = 16;
+
+    private final KeyOrderedExecutor executor;
+    private final ObjectProvider<SequenceBaseline> sequenceBaseline;
+    private final Duration gapTimeout;
+    private final int maxBufferedPerAggregate;
+    private final int maxBufferedTotal;
+
+    private final Map<String, AggregateState> states;
+    private final AtomicInteger bufferedTotal = new AtomicInteger();
+
+    private final Counter eventsReorderedCounter;
+    private final Counter duplicatesCounter;
+    private final Counter gapsSkippedCounter;
+    private final Counter lateEventsCounter;
+
+    public EventResequencer(
+            KeyOrderedExecutor executor,
+            ObjectProvider<SequenceBaseline> sequenceBaseline,
+            MeterRegistry meterRegistry,
+            @Value("${kafka.consumer.resequencing.gap-timeout:PT30S}") Duration gapTimeout,
+            @Value("${kafka.consumer.resequencing.max-buffered-per-aggregate:100}") int maxBufferedPerAggregate,
+            @Value("${kafka.consumer.resequencing.max-buffered:10000}") int maxBufferedTotal,
+            @Value("${kafka.consumer.resequencing.max-aggregates:100000}") int maxAggregates) {
+
+        this.executor = executor;
+        this.sequenceBaseline = sequenceBaseline;
+        this.gapTimeout = gapTimeout;
+        this.maxBufferedPerAggregate = maxBufferedPerAggregate;
+        this.maxBufferedTotal = maxBufferedTotal;
+        this.states = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AggregateState> eldest) {
+                return size() > maxAggregates && eldest.getValue().isIdle();
+            }
+        };
+
+        this.eventsReorderedCounter = Counter.builder("mannapay.events.resequencing.buffered")
+            .description("Events that arrived early and were buffered")
+            .register(meterRegistry);
+
+        this.duplicatesCounter = Counter.builder("mannapay.events.resequencing.duplicates")
+            .description("Events discarded as duplicates by sequence number")
+            .register(meterRegistry);
+
+        this.gapsSkippedCounter = Counter.builder("mannapay.events.resequencing.gaps")
+            .description("Sequence gaps skipped after timeout or buffer overflow")
+            .register(meterRegistry);
+
+        this.lateEventsCounter = Counter.builder("mannapay.events.resequencing.late")
+            .description("Events below the expected sequence that were processed late")
+            .register(meterRegistry);
+
+        Gauge.builder("mannapay.events.resequencing.pending", bufferedTotal, AtomicInteger::get)
+            .description("Events currently held in resequencing buffers")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Offer an event of an aggregate.
+     *
+     * {@code process} runs in sequence order; if it throws for the offered event
+     * itself on the calling thread the exception propagates and the sequence is
+     * not advanced, so a redelivery processes it again. Failures of events run
+     * later or on the executor are passed to {@code onFailure} and the sequence
+     * moves on.
+     *
+     * @param aggregateKey Aggregate identity, e.g. {@code Transfer:<id>}
+     * @param sequence The event's sequence number within the aggregate
+     * @param process Handles the event
+     * @param discard Acknowledges a duplicate without handling it
+     * @param onFailure Handles a failure of an event run later
+     */
+    public void offer(String aggregateKey, long sequence,
+                      Runnable process, Runnable discard, Consumer<Exception> onFailure) {
+
+        AggregateState state;
+        synchronized (states) {
+            state = states.computeIfAbsent(aggregateKey, k -> new AggregateState());
+        }
+
+        synchronized (state) {
+            if (state.expected == 0) {
+                seed(aggregateKey, state, sequence);
+            }
+
+            if (sequence < state.expected) {
+                if (sequence >= state.knownFrom && !state.isSkipped(sequence)) {
+                    discardDuplicate(aggregateKey, state, sequence, discard);
+                    return;
+                }
+                lateEventsCounter.increment();
+                log.warn("Late event processed out of order: aggregate={}, sequence={}, expected={}",
+                    aggregateKey, sequence, state.expected);
+                if (state.releasing > 0) {
+                    release(aggregateKey, state, List.of(new PendingEvent(sequence, process, onFailure)));
+                } else {
+                    process.run();
+                }
+                // Only once handled (or handed off): a failure above leaves it unseen for the redelivery
+                state.takeSkipped(sequence);
+                return;
+            }
+
+            if (state.buffer.containsKey(sequence)) {
+                discardDuplicate(aggregateKey, state, sequence, discard);
+                return;
+            }
+
+            if (sequence > state.expected) {
+                state.buffer.put(sequence, new PendingEvent(sequence, process, onFailure));
+                bufferedTotal.incrementAndGet();
+                eventsReorderedCounter.increment();
+                log.debug("Early event buffered: aggregate={}, sequence={}, expected={}",
+                    aggregateKey, sequence, state.expected);
+
+                if (state.buffer.size() > maxBufferedPerAggregate || bufferedTotal.get() > maxBufferedTotal) {
+                    skipGap(aggregateKey, state, "buffer full");
+                    drainInline(aggregateKey, state);
+                }
+                return;
+            }
+
+            if (state.releasing > 0) {
+                // Released events of this aggregate are still queued: run behind them
+                state.buffer.put(sequence, new PendingEvent(sequence, process, onFailure));
+                bufferedTotal.incrementAndGet();
+                release(aggregateKey, state, takeContiguous(state));
+                return;
+            }
+            process.run();
+            state.expected = sequence + 1;
+            drainInline(aggregateKey, state);
+        }
+    }
+
+    /**
+     * Release aggregates whose oldest gap has been open longer than the timeout.
+     * The released events run on the executor, not on this thread.
+     */
+    @Scheduled(fixedDelayString = "${kafka.consumer.resequencing.check-interval-ms:1000}")
+    public void releaseExpiredGaps() {
+        if (bufferedTotal.get() == 0) {
+            return;
+        }
+        List<Map.Entry<String, AggregateState>> waiting = new ArrayList<>();
+        synchronized (states) {
+            states.entrySet().forEach(entry -> {
+                if (!entry.getValue().buffer.isEmpty()) {
+                    waiting.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+            });
+        }
+
+        long deadline = System.nanoTime() - gapTimeout.toNanos();
+        for (Map.Entry<String, AggregateState> entry : waiting) {
+            AggregateState state = entry.getValue();
+            synchronized (state) {
+                if (!state.buffer.isEmpty() && state.oldestBufferedAt() < deadline) {
+                    skipGap(entry.getKey(), state, "gap timeout");
+                    release(entry.getKey(), state, takeContiguous(state));
+                }
+            }
+        }
+    }
+
+    public int getBufferedCount() {
+        return bufferedTotal.get();
+    }
+
+    /**
+     * Next expected sequence of an aggregate, or 0 if unknown.
+     */
+    public long getExpectedSequence(String aggregateKey) {
+        synchronized (states) {
+            AggregateState state = states.get(aggregateKey);
+            return state != null ? state.expected : 0;
+        }
+    }
+
+    private void seed(String aggregateKey, AggregateState state, long sequence) {
+        SequenceBaseline baseline = sequenceBaseline.getIfAvailable();
+        OptionalLong lastProcessed = baseline != null ? baseline.lastProcessed(aggregateKey) : OptionalLong.empty();
+        if (lastProcessed.isPresent()) {
+            // Everything up to the service's own last sequence is known processed
+            state.expected = lastProcessed.getAsLong() + 1;
+            state.knownFrom = Long.MIN_VALUE;
+        } else {
+            // Nothing below the first event has been seen here
+            state.expected = sequence;
+            state.knownFrom = sequence;
+        }
+    }
+
+    private void discardDuplicate(String aggregateKey, AggregateState state, long sequence, Runnable discard) {
+        duplicatesCounter.increment();
+        log.debug("Duplicate sequence discarded: aggregate={}, sequence={}, expected={}",
+            aggregateKey, sequence, state.expected);
+        discard.run();
+    }
+
+    private void skipGap(String aggregateKey, AggregateState state, String cause) {
+        long next = state.buffer.firstKey();
+        log.warn("Skipping sequence gap ({}): aggregate={}, missing={}..{}, buffered={}",
+            cause, aggregateKey, state.expected, next - 1, state.buffer.size());
+        gapsSkippedCounter.increment();
+        state.addSkipped(state.expected, next);
+        state.expected = next;
+    }
+
+    /**
+     * Run buffered events that are now contiguous on the calling thread, or
+     * queue them on the executor while earlier releases are pending there.
+     */
+    private void drainInline(String aggregateKey, AggregateState state) {
+        List<PendingEvent> contiguous = takeContiguous(state);
+        if (state.releasing > 0) {
+            release(aggregateKey, state, contiguous);
+            return;
+        }
+        for (PendingEvent pending : contiguous) {
+            run(aggregateKey, pending);
+        }
+    }
+
+    /**
+     * Remove buffered events that are now contiguous and advance the sequence past them.
+     */
+    private List<PendingEvent> takeContiguous(AggregateState state) {
+        List<PendingEvent> contiguous = new ArrayList<>();
+        PendingEvent pending;
+        while ((pending = state.buffer.remove(state.expected)) != null) {
+            bufferedTotal.decrementAndGet();
+            contiguous.add(pending);
+            state.expected++;
+        }
+        return contiguous;
+    }
+
+    /**
+     * Hand events to the executor under the aggregate key, in order.
+     * Caller holds the state's lock.
+     */
+    private void release(String aggregateKey, AggregateState state, List<PendingEvent> events) {
+        for (PendingEvent pending : events) {
+            state.releasing++;
+            executor.submit(aggregateKey, () -> {
+                try {
+                    run(aggregateKey, pending);
+                } finally {
+                    synchronized (state) {
+                        state.releasing--;
+                    }
+                }
+            });
+        }
+    }
+
+    private void run(String aggregateKey, PendingEvent pending) {
+        try {
+            pending.process.run();
+        } catch (Exception e) {
+            log.error("Buffered event failed: aggregate={}, sequence={}, error={}",
+                aggregateKey, pending.sequence, e.getMessage());
+            pending.onFailure.accept(e);
+        }
+    }
+
+    private static final class AggregateState {
+        private long expected;
+        // Sequences below this were never seen here
+        private long knownFrom;
+        // Events handed to the executor and not yet run
+        private int releasing;
+        private final TreeMap<Long, PendingEvent> buffer = new TreeMap<>();
+        // Skipped gaps as [start, end) ranges
+        private final TreeMap<Long, Long> skipped = new TreeMap<>();
+
+        long oldestBufferedAt() {
+            return buffer.values().stream().mapToLong(p -> p.bufferedAtNanos).min().orElse(Long.MAX_VALUE);
+        }
+
+        boolean isIdle() {
+            return buffer.isEmpty() && releasing == 0;
+        }
+
+        void addSkipped(long start, long end) {
+            skipped.put(start, end);
+            if (skipped.size() > MAX_SKIPPED_RANGES) {
+                // Forget the oldest gap; everything up to it counts as unseen
+                knownFrom = Math.max(knownFrom, skipped.pollFirstEntry().getValue());
+            }
+        }
+
+        boolean isSkipped(long sequence) {
+            Map.Entry<Long, Long> range = skipped.floorEntry(sequence);
+            return range != null && sequence < range.getValue();
+        }
+
+        /**
+         * Remove a sequence from the skipped gaps, if it is in one.
+         */
+        void takeSkipped(long sequence) {
+            Map.Entry<Long, Long> range = skipped.floorEntry(sequence);
+            if (range == null || sequence >= range.getValue()) {
+                return;
+            }
+            skipped.remove(range.getKey());
+            if (range.getKey() < sequence) {
+                skipped.put(range.getKey(), sequence);
+            }
+            if (sequence + 1 < range.getValue()) {
+                skipped.put(sequence + 1, range.getValue());
+            }
+        }
+    }
+
+    private static final class PendingEvent {
+        private final long sequence;
+        private final Runnable process;
+        private final Consumer<Exception> onFailure;
+        private final long bufferedAtNanos = System.nanoTime();
+
+        PendingEvent(long sequence, Runnable process, Consumer<Exception> onFailure) {
+            this.sequence = sequence;
+            this.process = process;
+            this.onFailure = onFailure;
+        }
+    }
+}
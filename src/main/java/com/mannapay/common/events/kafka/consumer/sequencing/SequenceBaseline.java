@@ -0,0 +1,22 @@
+package com.mannapay.common.events.kafka.consumer.sequencing;
+
+import java.util.OptionalLong;
+
+/**
+ * Last sequence number processed per aggregate, as known to the service.
+ *
+ * Register an implementation as a bean to seed the {@link EventResequencer}
+ * from the service's own state (e.g. the version stored with an aggregate's
+ * projection) when it first sees an aggregate after a restart, rebalance or
+ * eviction. Without one, the first event seen sets the baseline.
+ */
+@FunctionalInterface
+public interface SequenceBaseline {
+
+    /**
+     * Last sequence number processed for the aggregate, or empty if unknown.
+     *
+     * @param aggregateKey Aggregate identity, e.g. {@code Transfer:<id>}
+     */
+    OptionalLong lastProcessed(String aggregateKey);
+}
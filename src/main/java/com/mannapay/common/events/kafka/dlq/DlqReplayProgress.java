@@ -0,0 +1,110 @@
+package com.mannapay.common.events.kafka.dlq;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of a DLQ replay run.
+ *
+ * States:
+ * - RUNNING: Partitions are being scanned
+ * - COMPLETED: Every partition was scanned up to its end offset at start
+ * - CANCELLED: The run was cancelled; checkpoints allow resuming it
+ * - FAILED: A partition scan failed; checkpoints allow resuming it
+ */
+public class DlqReplayProgress {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final String replayId;
+    private final String dlqTopic;
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final Map<Integer, Long> positions = new ConcurrentHashMap<>();
+
+    private volatile State state = State.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    DlqReplayProgress(String replayId, String dlqTopic) {
+        this.replayId = replayId;
+        this.dlqTopic = dlqTopic;
+    }
+
+    void recordScanned(int partition, long nextOffset) {
+        scanned.incrementAndGet();
+        positions.put(partition, nextOffset);
+    }
+
+    void recordReplayed() {
+        replayed.incrementAndGet();
+    }
+
+    void finish(State finalState, String errorMessage) {
+        this.state = finalState;
+        this.error = errorMessage;
+        this.finishedAt = Instant.now();
+    }
+
+    public String getReplayId() {
+        return replayId;
+    }
+
+    public String getDlqTopic() {
+        return dlqTopic;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Records read from the DLQ, including those filtered out.
+     */
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    /**
+     * Records re-published to the target topic.
+     */
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    /**
+     * Next offset to scan, per DLQ partition.
+     */
+    public Map<Integer, Long> getPositions() {
+        return Collections.unmodifiableMap(positions);
+    }
+
+    @Override
+    public String toString() {
+        return "DlqReplayProgress{replayId=" + replayId
+            + ", state=" + state
+            + ", scanned=" + scanned.get()
+            + ", replayed=" + replayed.get() + "}";
+    }
+}
@@ -0,0 +1,88 @@
+package com.mannapay.common.events.kafka.dlq;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Parameters of a DLQ replay run.
+ *
+ * Filters are combined with AND; unset filters match everything. The time
+ * window applies to the DLQ record timestamp, i.e. when the record failed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DlqReplayRequest {
+
+    /**
+     * Identifies the run; checkpoints are stored under this ID so a stopped
+     * run resumes where it left off when started again with the same ID.
+     */
+    private String replayId;
+
+    /**
+     * DLQ topic to scan, e.g. {@code mannapay.payment.events.dlq}.
+     */
+    private String dlqTopic;
+
+    /**
+     * Topic to re-publish to. Defaults to the record's original topic header,
+     * or the DLQ topic without its {@code .dlq} suffix.
+     */
+    private String targetTopic;
+
+    /**
+     * Event types to replay (matched against the {@code eventType} header).
+     */
+    private Set<String> eventTypes;
+
+    /**
+     * Pattern matched against the exception class and message recorded by
+     * the dead letter recoverer.
+     */
+    private Pattern errorPattern;
+
+    /**
+     * Only replay records that failed at or after this time.
+     */
+    private Instant failedAfter;
+
+    /**
+     * Only replay records that failed before this time.
+     */
+    private Instant failedBefore;
+
+    /**
+     * Maximum records re-published per second across all partitions.
+     */
+    @Builder.Default
+    private double maxRecordsPerSecond = 100;
+
+    /**
+     * Number of partitions scanned concurrently.
+     */
+    @Builder.Default
+    private int parallelism = 4;
+
+    /**
+     * Records scanned per partition between progress checkpoints.
+     */
+    @Builder.Default
+    private int checkpointInterval = 500;
+
+    /**
+     * Consumer group of the recovering service; when set, the replay waits
+     * while that group's lag on the target topic exceeds {@link #maxConsumerLag}.
+     */
+    private String targetConsumerGroup;
+
+    @Builder.Default
+    private long maxConsumerLag = 10_000;
+}
@@ -0,0 +1,399 @@
+package com.mannapay.common.events.kafka.dlq;
+
+import com.mannapay.common.events.kafka.consumer.idempotency.PartitionWatermark;
+import com.mannapay.common.events.kafka.consumer.idempotency.WatermarkStore;
+import com.mannapay.common.events.kafka.consumer.routing.EventHandlerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Service for bulk replay of dead-lettered records.
+ *
+ * This service provides methods to:
+ * - Scan a DLQ topic with one consumer per partition, several partitions at a time
+ * - Filter by event type, recorded exception and failure time window
+ * - Re-publish matches (key, value and headers unchanged) to the original topic
+ * - Limit the re-publish rate and wait while the recovering consumer group lags
+ * - Checkpoint progress per partition so a stopped run can be resumed
+ *
+ * Each run scans up to the end offsets seen at its start, so records that fail
+ * again during the replay are not picked up by the same run. Replayed records
+ * keep their idempotency keys; events that were processed in the meantime are
+ * skipped by the consumer as duplicates.
+ */
+@Service
+@Slf4j
+public class DlqReplayService {
+
+    public static final String REPLAY_ID_HEADER = "dlqReplayId";
+
+    private static final String CHECKPOINT_GROUP_PREFIX = "dlq-replay:";
+    private static final String DLQ_SUFFIX = ".dlq";
+    private static final String DLT_HEADER_PREFIX = "kafka_dlt-";
+    private static final String RETRY_TOPIC_HEADER_PREFIX = "retry_topic-";
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long LAG_CHECK_INTERVAL_MS = 5000;
+
+    private final ConsumerFactory<String, Object> consumerFactory;
+    private final ProducerFactory<String, Object> producerFactory;
+    private final WatermarkStore checkpointStore;
+    private final Map<String, ReplayRun> runs = new ConcurrentHashMap<>();
+
+    private final Counter recordsReplayedCounter;
+
+    public DlqReplayService(
+            ConsumerFactory<String, Object> consumerFactory,
+            ProducerFactory<String, Object> producerFactory,
+            WatermarkStore checkpointStore,
+            MeterRegistry meterRegistry) {
+
+        this.consumerFactory = consumerFactory;
+        this.producerFactory = producerFactory;
+        this.checkpointStore = checkpointStore;
+
+        this.recordsReplayedCounter = Counter.builder("mannapay.dlq.replayed")
+            .description("Records re-published from a DLQ")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Start a replay run in the background.
+     *
+     * @return the live progress of the run
+     * @throws IllegalStateException if a run with the same ID is still running
+     */
+    public DlqReplayProgress start(DlqReplayRequest request) {
+        if (request.getReplayId() == null || request.getDlqTopic() == null) {
+            throw new IllegalArgumentException("replayId and dlqTopic are required");
+        }
+
+        ReplayRun run = new ReplayRun(request);
+        if (runs.putIfAbsent(request.getReplayId(), run) != null) {
+            run.close();
+            throw new IllegalStateException("Replay already running: " + request.getReplayId());
+        }
+
+        List<Integer> partitions;
+        try (Consumer<byte[], byte[]> consumer = createConsumer(request, "meta")) {
+            partitions = consumer.partitionsFor(request.getDlqTopic()).stream()
+                .map(PartitionInfo::partition)
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (RuntimeException e) {
+            run.close();
+            runs.remove(request.getReplayId());
+            throw e;
+        }
+
+        log.info("Starting DLQ replay: replayId={}, dlqTopic={}, partitions={}, rate={}/s",
+            request.getReplayId(), request.getDlqTopic(), partitions.size(), request.getMaxRecordsPerSecond());
+
+        CompletableFuture<?>[] scans = partitions.stream()
+            .map(partition -> CompletableFuture.runAsync(() -> replayPartition(run, partition), run.workers))
+            .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(scans).whenComplete((result, error) -> {
+            run.close();
+            runs.remove(request.getReplayId(), run);
+
+            if (error != null) {
+                run.progress.finish(DlqReplayProgress.State.FAILED, error.getMessage());
+                log.error("DLQ replay failed: {}", run.progress, error);
+            } else if (run.cancelled) {
+                run.progress.finish(DlqReplayProgress.State.CANCELLED, null);
+                log.warn("DLQ replay cancelled: {}", run.progress);
+            } else {
+                run.progress.finish(DlqReplayProgress.State.COMPLETED, null);
+                log.info("DLQ replay completed: {}", run.progress);
+            }
+        });
+
+        return run.progress;
+    }
+
+    /**
+     * Progress of a running replay.
+     */
+    public Optional<DlqReplayProgress> getProgress(String replayId) {
+        return Optional.ofNullable(runs.get(replayId)).map(run -> run.progress);
+    }
+
+    /**
+     * Stop a running replay after the records in flight; it can be resumed later.
+     *
+     * @return false if no such replay is running
+     */
+    public boolean cancel(String replayId) {
+        ReplayRun run = runs.get(replayId);
+        if (run == null) {
+            return false;
+        }
+        run.cancelled = true;
+        return true;
+    }
+
+    private void replayPartition(ReplayRun run, int partition) {
+        DlqReplayRequest request = run.request;
+        TopicPartition tp = new TopicPartition(request.getDlqTopic(), partition);
+        String checkpointGroup = CHECKPOINT_GROUP_PREFIX + request.getReplayId();
+
+        try (Consumer<byte[], byte[]> consumer = createConsumer(request, String.valueOf(partition))) {
+            consumer.assign(List.of(tp));
+            long end = consumer.endOffsets(List.of(tp)).get(tp);
+            long position = checkpointStore.load(checkpointGroup, tp)
+                .map(PartitionWatermark::getWatermark)
+                .filter(offset -> offset >= 0)
+                .orElseGet(() -> consumer.beginningOffsets(List.of(tp)).get(tp));
+            consumer.seek(tp, position);
+
+            int sinceCheckpoint = 0;
+            while (position < end && !run.cancelled) {
+                for (ConsumerRecord<byte[], byte[]> record : consumer.poll(POLL_TIMEOUT).records(tp)) {
+                    if (record.offset() >= end || run.cancelled) {
+                        break;
+                    }
+                    if (matches(request, record)) {
+                        run.awaitConsumerCatchUp();
+                        run.rateLimiter.acquire();
+                        republish(run, record);
+                    }
+                    position = record.offset() + 1;
+                    run.progress.recordScanned(partition, position);
+
+                    if (++sinceCheckpoint >= request.getCheckpointInterval()) {
+                        checkpoint(run, checkpointGroup, tp, position);
+                        sinceCheckpoint = 0;
+                    }
+                }
+                // Skip transaction markers and compacted gaps
+                position = Math.max(position, Math.min(consumer.position(tp), end));
+            }
+
+            checkpoint(run, checkpointGroup, tp, position);
+            log.info("DLQ partition replayed: replayId={}, partition={}, position={}, end={}",
+                request.getReplayId(), tp, position, end);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("DLQ replay interrupted: " + tp, e);
+        }
+    }
+
+    /**
+     * Flush pending sends and persist the next offset to scan.
+     */
+    private void checkpoint(ReplayRun run, String checkpointGroup, TopicPartition tp, long position) {
+        run.producer.flush();
+        Exception sendFailure = run.sendFailure.get();
+        if (sendFailure != null) {
+            throw new IllegalStateException("DLQ replay publish failed", sendFailure);
+        }
+        checkpointStore.save(checkpointGroup, tp, new PartitionWatermark(position).encode());
+    }
+
+    private void republish(ReplayRun run, ConsumerRecord<byte[], byte[]> record) {
+        String targetTopic = resolveTargetTopic(run.request, record);
+
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            // Drop failure bookkeeping so the record starts a fresh retry cycle
+            if (!header.key().startsWith(DLT_HEADER_PREFIX) && !header.key().startsWith(RETRY_TOPIC_HEADER_PREFIX)) {
+                headers.add(header);
+            }
+        }
+        headers.add(REPLAY_ID_HEADER, run.request.getReplayId().getBytes(StandardCharsets.UTF_8));
+
+        run.producer.send(
+            new ProducerRecord<>(targetTopic, null, record.key(), record.value(), headers),
+            (metadata, exception) -> {
+                if (exception != null) {
+                    run.sendFailure.compareAndSet(null, exception);
+                } else {
+                    run.progress.recordReplayed();
+                    recordsReplayedCounter.increment();
+                }
+            });
+    }
+
+    private static boolean matches(DlqReplayRequest request, ConsumerRecord<byte[], byte[]> record) {
+        if (request.getFailedAfter() != null && record.timestamp() < request.getFailedAfter().toEpochMilli()) {
+            return false;
+        }
+        if (request.getFailedBefore() != null && record.timestamp() >= request.getFailedBefore().toEpochMilli()) {
+            return false;
+        }
+        if (request.getEventTypes() != null && !request.getEventTypes().isEmpty()
+                && !request.getEventTypes().contains(EventHandlerRegistry.eventTypeOf(record))) {
+            return false;
+        }
+        if (request.getErrorPattern() != null) {
+            String error = headerValue(record, KafkaHeaders.DLT_EXCEPTION_FQCN) + ": "
+                + headerValue(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE) + " / "
+                + headerValue(record, KafkaHeaders.DLT_EXCEPTION_CAUSE_FQCN);
+            return request.getErrorPattern().matcher(error).find();
+        }
+        return true;
+    }
+
+    private static String resolveTargetTopic(DlqReplayRequest request, ConsumerRecord<byte[], byte[]> record) {
+        if (request.getTargetTopic() != null) {
+            return request.getTargetTopic();
+        }
+        String originalTopic = headerValue(record, KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        if (originalTopic != null) {
+            return originalTopic;
+        }
+        String dlqTopic = record.topic();
+        return dlqTopic.endsWith(DLQ_SUFFIX)
+            ? dlqTopic.substring(0, dlqTopic.length() - DLQ_SUFFIX.length())
+            : dlqTopic;
+    }
+
+    private static String headerValue(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null && header.value() != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private Consumer<byte[], byte[]> createConsumer(DlqReplayRequest request, String clientSuffix) {
+        Map<String, Object> props = new HashMap<>(consumerFactory.getConfigurationProperties());
+        // Partitions are assigned manually and offsets live in the checkpoint store
+        props.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, "dlq-replay-" + request.getReplayId() + "-" + clientSuffix);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, Math.max(1, request.getCheckpointInterval()));
+        return new KafkaConsumer<>(props, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+    }
+
+    private Producer<byte[], byte[]> createProducer(DlqReplayRequest request) {
+        Map<String, Object> props = new HashMap<>(producerFactory.getConfigurationProperties());
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, "dlq-replay-" + request.getReplayId());
+        return new KafkaProducer<>(props, new ByteArraySerializer(), new ByteArraySerializer());
+    }
+
+    /**
+     * State of one running replay.
+     */
+    private final class ReplayRun {
+
+        private final DlqReplayRequest request;
+        private final DlqReplayProgress progress;
+        private final ReplayRateLimiter rateLimiter;
+        private final Producer<byte[], byte[]> producer;
+        private final ExecutorService workers;
+        private final AdminClient adminClient;
+        private final AtomicReference<Exception> sendFailure = new AtomicReference<>();
+
+        private volatile boolean cancelled;
+        private long lastLagCheckMs;
+
+        ReplayRun(DlqReplayRequest request) {
+            this.request = request;
+            this.progress = new DlqReplayProgress(request.getReplayId(), request.getDlqTopic());
+            this.rateLimiter = new ReplayRateLimiter(request.getMaxRecordsPerSecond());
+            this.producer = createProducer(request);
+
+            AtomicInteger threadCount = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(Math.max(1, request.getParallelism()), runnable -> {
+                Thread thread = new Thread(runnable,
+                    "dlq-replay-" + request.getReplayId() + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            this.adminClient = request.getTargetConsumerGroup() != null
+                ? AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+                    consumerFactory.getConfigurationProperties().get(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG)))
+                : null;
+        }
+
+        /**
+         * Wait while the recovering consumer group lags more than allowed.
+         * Checked at most every few seconds, shared by all partition scanners.
+         */
+        synchronized void awaitConsumerCatchUp() throws InterruptedException {
+            if (adminClient == null || System.currentTimeMillis() - lastLagCheckMs < LAG_CHECK_INTERVAL_MS) {
+                return;
+            }
+            long lag;
+            while ((lag = consumerLag()) > request.getMaxConsumerLag() && !cancelled) {
+                log.info("DLQ replay waiting for consumer group: replayId={}, group={}, lag={}",
+                    request.getReplayId(), request.getTargetConsumerGroup(), lag);
+                TimeUnit.MILLISECONDS.sleep(LAG_CHECK_INTERVAL_MS);
+            }
+            lastLagCheckMs = System.currentTimeMillis();
+        }
+
+        private long consumerLag() throws InterruptedException {
+            try {
+                Map<TopicPartition, OffsetAndMetadata> committed = adminClient
+                    .listConsumerGroupOffsets(request.getTargetConsumerGroup())
+                    .partitionsToOffsetAndMetadata().get();
+                if (committed.isEmpty()) {
+                    return 0;
+                }
+                Map<TopicPartition, OffsetSpec> latest = committed.keySet().stream()
+                    .collect(Collectors.toMap(tp -> tp, tp -> OffsetSpec.latest()));
+                Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends =
+                    adminClient.listOffsets(latest).all().get();
+
+                return committed.entrySet().stream()
+                    .filter(entry -> entry.getValue() != null && ends.containsKey(entry.getKey()))
+                    .mapToLong(entry -> Math.max(0, ends.get(entry.getKey()).offset() - entry.getValue().offset()))
+                    .sum();
+            } catch (ExecutionException e) {
+                log.warn("Failed to read consumer lag, continuing: group={}, error={}",
+                    request.getTargetConsumerGroup(), e.getMessage());
+                return 0;
+            }
+        }
+
+        void close() {
+            workers.shutdown();
+            producer.close(Duration.ofSeconds(30));
+            if (adminClient != null) {
+                adminClient.close(Duration.ofSeconds(5));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mannapay.common.events.kafka.dlq;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evenly spaced permits at a fixed rate, shared by all partition scanners of
+ * a replay run. Permits are not accumulated while idle, so a paused run does
+ * not burst when it resumes.
+ */
+class ReplayRateLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeNanos = System.nanoTime();
+
+    ReplayRateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    /**
+     * Block until the next permit is available.
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(nextFreeNanos, now);
+            nextFreeNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
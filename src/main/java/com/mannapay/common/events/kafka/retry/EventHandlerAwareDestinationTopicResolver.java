@@ -0,0 +1,40 @@
+package com.mannapay.common.events.kafka.retry;
+
+import com.mannapay.common.events.kafka.consumer.EventHandlerException;
+import org.springframework.kafka.retrytopic.DefaultDestinationTopicResolver;
+import org.springframework.kafka.retrytopic.DestinationTopic;
+
+import java.time.Clock;
+
+/**
+ * Destination resolver that sends non-retryable {@link EventHandlerException}s
+ * straight to the dead letter topic instead of through the retry tiers.
+ */
+public class EventHandlerAwareDestinationTopicResolver extends DefaultDestinationTopicResolver {
+
+    public EventHandlerAwareDestinationTopicResolver(Clock clock) {
+        super(clock);
+    }
+
+    @Override
+    public DestinationTopic resolveDestinationTopic(
+            String mainListenerId, String topic, Integer attempt, Exception e, long originalTimestamp) {
+
+        if (isNonRetryable(e)) {
+            DestinationTopic source = getDestinationTopicByName(mainListenerId, topic);
+            if (source != null && !source.isDltTopic()) {
+                return getDltFor(mainListenerId, topic);
+            }
+        }
+        return super.resolveDestinationTopic(mainListenerId, topic, attempt, e, originalTimestamp);
+    }
+
+    private static boolean isNonRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof EventHandlerException handlerException) {
+                return !handlerException.isRetryable();
+            }
+        }
+        return false;
+    }
+}
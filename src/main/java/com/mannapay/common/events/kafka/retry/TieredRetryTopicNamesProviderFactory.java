@@ -0,0 +1,51 @@
+package com.mannapay.common.events.kafka.retry;
+
+import org.springframework.kafka.retrytopic.DestinationTopic;
+import org.springframework.kafka.retrytopic.RetryTopicNamesProviderFactory;
+import org.springframework.kafka.retrytopic.SuffixingRetryTopicNamesProviderFactory.SuffixingRetryTopicNamesProvider;
+
+/**
+ * Names retry topics after their delay, e.g. {@code mannapay.payment.events.retry-5s},
+ * {@code .retry-1m}, {@code .retry-10m}, and the dead letter topic {@code .dlq}.
+ *
+ * The dead letter name matches the DLQ used by the blocking error handler,
+ * so both paths end up in the same topic.
+ */
+public class TieredRetryTopicNamesProviderFactory implements RetryTopicNamesProviderFactory {
+
+    public static final String RETRY_SUFFIX = ".retry-";
+    public static final String DLQ_SUFFIX = ".dlq";
+
+    @Override
+    public RetryTopicNamesProvider createRetryTopicNamesProvider(DestinationTopic.Properties properties) {
+        return new SuffixingRetryTopicNamesProvider(properties) {
+
+            @Override
+            public String getTopicName(String topic) {
+                if (properties.isDltTopic()) {
+                    return topic + DLQ_SUFFIX;
+                }
+                if (properties.isRetryTopic()) {
+                    return topic + RETRY_SUFFIX + formatDelay(properties.delay());
+                }
+                return topic;
+            }
+        };
+    }
+
+    /**
+     * Shortest exact unit for a delay: 500ms, 5s, 1m, 10m, 2h.
+     */
+    static String formatDelay(long delayMs) {
+        if (delayMs % 3_600_000 == 0 && delayMs > 0) {
+            return delayMs / 3_600_000 + "h";
+        }
+        if (delayMs % 60_000 == 0 && delayMs > 0) {
+            return delayMs / 60_000 + "m";
+        }
+        if (delayMs % 1000 == 0 && delayMs > 0) {
+            return delayMs / 1000 + "s";
+        }
+        return delayMs + "ms";
+    }
+}
@@ -1,6 +1,5 @@
 package com.mannapay.common.events.saga;
 
-import com.mannapay.common.events.core.DomainEvent;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -17,7 +16,7 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 @EqualsAndHashCode(callSuper = true)
-public class SagaCommand extends DomainEvent {
+public class SagaCommand extends SagaMessage {
 
     private static final long serialVersionUID = 1L;
 
@@ -56,6 +55,12 @@ public class SagaCommand extends DomainEvent {
      */
     private boolean compensation;
 
+    /**
+     * Attempt number of the step (or of its compensation), starting at 0.
+     * Echoed in the reply together with {@link #compensation}.
+     */
+    private int attempt;
+
     /**
      * Reply topic for response.
      */
@@ -0,0 +1,215 @@
+package com.mannapay.common.events.saga;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable definition of a saga type.
+ *
+ * Declared once, typically as a bean, and compiled at startup by the
+ * {@link SagaDefinitionRegistry} into a {@link SagaPlan}:
+ * <pre>
+ * &#64;Bean
+ * public SagaDefinition transferSaga() {
+ *     return SagaDefinition.saga("TransferSaga").version(2)
+ *         .step("reserve-funds").service("wallet-service")
+ *             .command("ReserveFunds").compensation("ReleaseFunds").maxRetries(3)
+ *         .step("screen-compliance").after("reserve-funds").service("compliance-service")
+ *             .command("ScreenTransfer")
+ *         .step("score-fraud").after("reserve-funds").service("fraud-service")
+ *             .command("ScoreTransfer").timeout(Duration.ofSeconds(5))
+ *         .step("credit-recipient").after("screen-compliance", "score-fraud").service("wallet-service")
+ *             .command("CreditWallet").compensation("DebitWallet")
+ *         .build();
+ * }
+ * </pre>
+ *
+ * Steps form a DAG: a step runs once every step it comes {@code after} has
+ * completed, so independent steps run in parallel. Without {@code after} a
+ * step follows the step added before it, which keeps plain lists linear.
+ *
+ * A changed definition gets a new version; sagas already running keep the
+ * version they were started with, so old versions stay declared until they drain.
+ */
+@Getter
+public final class SagaDefinition {
+
+    private final String sagaType;
+    private final int version;
+    private final List<StepDefinition> steps;
+
+    private SagaDefinition(String sagaType, int version, List<StepDefinition> steps) {
+        this.sagaType = sagaType;
+        this.version = version;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Start defining a saga type.
+     */
+    public static Builder saga(String sagaType) {
+        return new Builder(sagaType);
+    }
+
+    /**
+     * Definition of one step.
+     */
+    @Getter
+    public static final class StepDefinition {
+
+        private final String stepId;
+        private final String stepName;
+        private final String serviceName;
+        private final String command;
+        private final String compensationCommand;
+        private final int maxRetries;
+        private final Duration timeout;
+        private final Map<String, Object> input;
+        private final List<String> dependsOn;
+
+        private StepDefinition(StepBuilder builder, List<String> dependsOn) {
+            this.stepId = builder.stepId;
+            this.stepName = builder.stepName != null ? builder.stepName : builder.stepId;
+            this.serviceName = builder.serviceName;
+            this.command = builder.command;
+            this.compensationCommand = builder.compensationCommand;
+            this.maxRetries = builder.maxRetries;
+            this.timeout = builder.timeout;
+            this.input = Collections.unmodifiableMap(new LinkedHashMap<>(builder.input));
+            this.dependsOn = List.copyOf(dependsOn);
+        }
+    }
+
+    public static final class Builder {
+
+        private final String sagaType;
+        private final List<StepBuilder> steps = new ArrayList<>();
+        private int version = 1;
+
+        private Builder(String sagaType) {
+            this.sagaType = sagaType;
+        }
+
+        /**
+         * Version of this definition (1 if not set).
+         */
+        public Builder version(int version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Add a step, by default run after the step added before it.
+         */
+        public StepBuilder step(String stepId) {
+            StepBuilder step = new StepBuilder(this, stepId);
+            steps.add(step);
+            return step;
+        }
+
+        public SagaDefinition build() {
+            List<StepDefinition> built = new ArrayList<>(steps.size());
+            String previous = null;
+            for (StepBuilder step : steps) {
+                List<String> dependsOn = step.dependsOn != null ? step.dependsOn
+                    : previous != null ? List.of(previous) : List.of();
+                built.add(new StepDefinition(step, dependsOn));
+                previous = step.stepId;
+            }
+            return new SagaDefinition(sagaType, version, built);
+        }
+    }
+
+    public static final class StepBuilder {
+
+        private final Builder saga;
+        private final String stepId;
+        private final Map<String, Object> input = new LinkedHashMap<>();
+        private String stepName;
+        private String serviceName;
+        private String command;
+        private String compensationCommand;
+        private int maxRetries;
+        private Duration timeout;
+        private List<String> dependsOn;
+
+        private StepBuilder(Builder saga, String stepId) {
+            this.saga = saga;
+            this.stepId = stepId;
+        }
+
+        /**
+         * Steps this one waits for; by default the step added before it.
+         * Without arguments the step starts with the saga.
+         */
+        public StepBuilder after(String... stepIds) {
+            this.dependsOn = Arrays.asList(stepIds);
+            return this;
+        }
+
+        public StepBuilder name(String stepName) {
+            this.stepName = stepName;
+            return this;
+        }
+
+        /**
+         * Service that executes the step.
+         */
+        public StepBuilder service(String serviceName) {
+            this.serviceName = serviceName;
+            return this;
+        }
+
+        public StepBuilder command(String command) {
+            this.command = command;
+            return this;
+        }
+
+        /**
+         * Command that undoes the step; without one the step is skipped on rollback.
+         */
+        public StepBuilder compensation(String compensationCommand) {
+            this.compensationCommand = compensationCommand;
+            return this;
+        }
+
+        public StepBuilder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Timeout of one attempt; the orchestrator default if not set.
+         */
+        public StepBuilder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Static input passed to every command of the step.
+         */
+        public StepBuilder input(String key, Object value) {
+            this.input.put(key, value);
+            return this;
+        }
+
+        /**
+         * Add the next step.
+         */
+        public StepBuilder step(String stepId) {
+            return saga.step(stepId);
+        }
+
+        public SagaDefinition build() {
+            return saga.build();
+        }
+    }
+}
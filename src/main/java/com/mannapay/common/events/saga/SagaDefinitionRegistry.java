@@ -0,0 +1,85 @@
+package com.mannapay.common.events.saga;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Registry of compiled saga plans.
+ *
+ * Every {@link SagaDefinition} bean is compiled into a {@link SagaPlan} once,
+ * at startup; an invalid or duplicate definition fails the application
+ * context. The plans are immutable and shared by all sagas of their
+ * {@code sagaType} and version.
+ */
+@Component
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaDefinitionRegistry {
+
+    private final Map<String, SagaPlan> plans;
+    private final Map<String, SagaPlan> latestPlans;
+
+    public SagaDefinitionRegistry(ObjectProvider<SagaDefinition> definitions) {
+        Map<String, SagaPlan> compiled = new HashMap<>();
+        Map<String, SagaPlan> latest = new HashMap<>();
+
+        definitions.orderedStream().forEach(definition -> {
+            SagaPlan plan = SagaPlan.compile(definition);
+            if (compiled.putIfAbsent(key(plan.getSagaType(), plan.getVersion()), plan) != null) {
+                throw new IllegalStateException("Duplicate saga definition: "
+                    + plan.getSagaType() + " v" + plan.getVersion());
+            }
+            latest.merge(plan.getSagaType(), plan, (a, b) -> a.getVersion() >= b.getVersion() ? a : b);
+            log.info("Saga definition compiled: sagaType={}, version={}, steps={}",
+                plan.getSagaType(), plan.getVersion(), plan.size());
+        });
+
+        this.plans = Map.copyOf(compiled);
+        this.latestPlans = Map.copyOf(latest);
+    }
+
+    /**
+     * Plan of a saga type version.
+     *
+     * @throws IllegalStateException if that version is not defined
+     */
+    public SagaPlan getPlan(String sagaType, int version) {
+        SagaPlan plan = plans.get(key(sagaType, version));
+        if (plan == null) {
+            throw new IllegalStateException("Unknown saga definition: " + sagaType + " v" + version);
+        }
+        return plan;
+    }
+
+    /**
+     * Plan of the highest defined version of a saga type.
+     *
+     * @throws IllegalStateException if the saga type is not defined
+     */
+    public SagaPlan getLatestPlan(String sagaType) {
+        return findLatestPlan(sagaType)
+            .orElseThrow(() -> new IllegalStateException("Unknown saga definition: " + sagaType));
+    }
+
+    public Optional<SagaPlan> findLatestPlan(String sagaType) {
+        return Optional.ofNullable(latestPlans.get(sagaType));
+    }
+
+    /**
+     * All compiled plans.
+     */
+    public Collection<SagaPlan> getPlans() {
+        return plans.values();
+    }
+
+    private static String key(String sagaType, int version) {
+        return sagaType + ":" + version;
+    }
+}
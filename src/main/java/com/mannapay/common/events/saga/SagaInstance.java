@@ -21,6 +21,24 @@ import java.util.UUID;
  * A saga orchestrates a distributed transaction across multiple services.
  * Each saga instance tracks the current state, completed steps, and
  * compensation steps needed for rollback.
+ *
+ * Sagas driven through the {@link SagaStepLog} have their JSONB columns
+ * ({@code steps}, {@code input_data}, {@code output_data}) written on insert
+ * and by its snapshots only; step transitions in between are appended to
+ * {@code saga_step_events}, and updates touch just the scalar columns.
+ * Saving an instance directly through the {@link SagaRepository} still
+ * writes every column, and makes that write the snapshot.
+ *
+ * Columns added for the step log (PostgreSQL):
+ * <pre>
+ * ALTER TABLE saga_instances
+ *     ADD COLUMN last_event_seq BIGINT NOT NULL DEFAULT 0,
+ *     ADD COLUMN snapshot_seq   BIGINT NOT NULL DEFAULT 0;
+ * </pre>
+ *
+ * A saga started from a {@link SagaDefinition} references its compiled
+ * {@link SagaPlan} by {@code saga_type} and {@code saga_version} instead of
+ * copying the step definitions into every row.
  */
 @Entity
 @Table(name = "saga_instances",
@@ -28,7 +46,8 @@ import java.util.UUID;
         @Index(name = "idx_saga_state", columnList = "state"),
         @Index(name = "idx_saga_type", columnList = "saga_type"),
         @Index(name = "idx_saga_correlation", columnList = "correlation_id"),
-        @Index(name = "idx_saga_created", columnList = "created_at")
+        @Index(name = "idx_saga_created", columnList = "created_at"),
+        @Index(name = "idx_saga_shard_state", columnList = "shard, state")
     }
 )
 @Data
@@ -47,12 +66,25 @@ public class SagaInstance {
     @Column(name = "saga_type", nullable = false, length = 100)
     private String sagaType;
 
+    /**
+     * Version of the {@link SagaPlan} the saga runs; null when the steps
+     * carry their own definition.
+     */
+    @Column(name = "saga_version")
+    private Integer sagaVersion;
+
     /**
      * Correlation ID for tracing related events.
      */
     @Column(name = "correlation_id", nullable = false, length = 36)
     private String correlationId;
 
+    /**
+     * Virtual shard of the saga ID, see {@code SagaShardManager}.
+     */
+    @Column(name = "shard")
+    private Integer shard;
+
     /**
      * Current state of the saga.
      */
@@ -62,14 +94,15 @@ public class SagaInstance {
     private SagaState state = SagaState.CREATED;
 
     /**
-     * Current step index (0-based).
+     * Current step index (0-based); with parallel steps, the one dispatched last.
      */
     @Column(name = "current_step")
     @Builder.Default
     private int currentStep = 0;
 
     /**
-     * Steps in this saga.
+     * Steps in this saga. For sagas of a registered definition only the
+     * runtime state of each step is stored; the rest is in the plan.
      */
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(name = "steps", columnDefinition = "jsonb")
@@ -135,6 +168,12 @@ public class SagaInstance {
     @Column(name = "completed_at")
     private Instant completedAt;
 
+    /**
+     * Time by which the saga must have completed its forward steps.
+     */
+    @Column(name = "deadline_at")
+    private Instant deadlineAt;
+
     /**
      * Time of last update.
      */
@@ -142,6 +181,27 @@ public class SagaInstance {
     @Builder.Default
     private Instant updatedAt = Instant.now();
 
+    /**
+     * Sequence of the last step event appended to {@code saga_step_events}.
+     */
+    @Column(name = "last_event_seq", nullable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    @Builder.Default
+    private long lastEventSeq = 0;
+
+    /**
+     * Sequence of the last step event included in the JSONB snapshot.
+     */
+    @Column(name = "snapshot_seq", nullable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    @Builder.Default
+    private long snapshotSeq = 0;
+
+    /**
+     * Step states as last persisted, used to detect which steps changed.
+     */
+    @Transient
+    @Builder.Default
+    private transient List<String> persistedStepStates = new ArrayList<>();
+
     /**
      * Optimistic locking version.
      */
@@ -151,6 +211,9 @@ public class SagaInstance {
     @PreUpdate
     protected void onUpdate() {
         this.updatedAt = Instant.now();
+        // Only direct saves update through the entity; the JSONB columns they
+        // write hold the full step state, so no logged event is newer
+        this.snapshotSeq = this.lastEventSeq;
     }
 
     /**
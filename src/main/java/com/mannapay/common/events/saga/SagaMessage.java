@@ -0,0 +1,30 @@
+package com.mannapay.common.events.saga;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.mannapay.common.events.core.DomainEvent;
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * Base class of the messages exchanged between the saga orchestrator and
+ * its participants.
+ *
+ * Registers the saga message types for polymorphic deserialization.
+ */
+@SuperBuilder
+@NoArgsConstructor
+@JsonTypeInfo(
+    use = JsonTypeInfo.Id.NAME,
+    include = JsonTypeInfo.As.PROPERTY,
+    property = "eventType",
+    visible = true
+)
+@JsonSubTypes({
+    @JsonSubTypes.Type(value = SagaCommand.class, name = "SagaCommand"),
+    @JsonSubTypes.Type(value = SagaReply.class, name = "SagaReply")
+})
+public abstract class SagaMessage extends DomainEvent {
+
+    private static final long serialVersionUID = 1L;
+}
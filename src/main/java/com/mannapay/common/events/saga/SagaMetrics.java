@@ -0,0 +1,254 @@
+package com.mannapay.common.events.saga;
+
+import com.mannapay.common.events.saga.recovery.SagaRecoveryWorker;
+import com.mannapay.common.events.saga.shard.SagaShardListener;
+import com.mannapay.common.events.saga.shard.SagaShardManager;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saga step latency and in-flight metrics, fed by the {@link SagaOrchestrator}'s transitions.
+ *
+ * Features:
+ * - {@code mannapay.saga.step.latency}: time from sending a step command to
+ *   its reply, tagged {@code sagaType}, {@code step} and {@code outcome}
+ * - {@code mannapay.saga.compensation.latency}: the same for compensation commands
+ * - {@code mannapay.saga.step.retries}: retries a step needed before it settled,
+ *   tagged {@code sagaType}, {@code step} and {@code phase} (forward/compensation)
+ * - {@code mannapay.saga.duration}: start to outcome, tagged {@code sagaType} and {@code state}
+ * - {@code mannapay.saga.inflight}: sagas driven by this node per {@code state}
+ *   (RUNNING, COMPENSATING, SUSPENDED)
+ *
+ * Timers are published as percentile histograms, so the step that dominates
+ * a saga type's completion time can be read off per step. The in-flight
+ * gauges are kept from the state of each saga this node owns: seeded from
+ * ID-only pages when shards are assigned, updated on every transition and
+ * dropped when shards are revoked, so they never query counts. Seeding
+ * re-reads each saga's current state, since a page may be stale by the time
+ * it is applied, and skips sagas that reached an outcome during the seed.
+ */
+@Component
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaMetrics implements SagaShardListener {
+
+    private static final List<SagaState> TRACKED_STATES =
+        List.of(SagaState.RUNNING, SagaState.COMPENSATING, SagaState.SUSPENDED);
+
+    private final MeterRegistry meterRegistry;
+    private final SagaShardManager shardManager;
+    private final SagaRecoveryWorker recoveryWorker;
+    private final SagaRepository sagaRepository;
+
+    private final Map<String, Timer> stepTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> compensationTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> retrySummaries = new ConcurrentHashMap<>();
+    private final Map<String, Timer> durationTimers = new ConcurrentHashMap<>();
+
+    private final Map<UUID, SagaState> inFlight = new ConcurrentHashMap<>();
+    private final Map<SagaState, AtomicLong> inFlightCounts = new EnumMap<>(SagaState.class);
+    private final Set<UUID> settledWhileSeeding = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger seedsRunning = new AtomicInteger();
+
+    public SagaMetrics(MeterRegistry meterRegistry, SagaShardManager shardManager,
+                       SagaRecoveryWorker recoveryWorker, SagaRepository sagaRepository) {
+        this.meterRegistry = meterRegistry;
+        this.shardManager = shardManager;
+        this.recoveryWorker = recoveryWorker;
+        this.sagaRepository = sagaRepository;
+
+        for (SagaState state : TRACKED_STATES) {
+            AtomicLong count = new AtomicLong();
+            inFlightCounts.put(state, count);
+            Gauge.builder("mannapay.saga.inflight", count, AtomicLong::get)
+                .description("Sagas driven by this node by state")
+                .tag("state", state.name())
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Record the reply to a step command.
+     */
+    public void recordStep(String sagaType, String step, SagaReply.Outcome outcome, Instant sentAt) {
+        if (sentAt != null) {
+            timer(stepTimers, "mannapay.saga.step.latency", "Time from step command to reply",
+                sagaType, step, outcome).record(elapsedMillis(sentAt), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Record the reply to a compensation command.
+     */
+    public void recordCompensation(String sagaType, String step, SagaReply.Outcome outcome, Instant sentAt) {
+        if (sentAt != null) {
+            timer(compensationTimers, "mannapay.saga.compensation.latency",
+                "Time from compensation command to reply", sagaType, step, outcome)
+                .record(elapsedMillis(sentAt), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Record the retries a step needed before it settled.
+     */
+    public void recordRetries(String sagaType, String step, boolean compensation, int retries) {
+        String phase = compensation ? "compensation" : "forward";
+        retrySummaries.computeIfAbsent(sagaType + "|" + step + "|" + phase, k ->
+            DistributionSummary.builder("mannapay.saga.step.retries")
+                .description("Retries a saga step needed before it settled")
+                .tag("sagaType", sagaType)
+                .tag("step", step)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(100.0)
+                .register(meterRegistry))
+            .record(retries);
+    }
+
+    /**
+     * Record the duration of a saga that reached an outcome.
+     */
+    public void recordOutcome(SagaInstance saga) {
+        Long durationMs = saga.getDurationMs();
+        if (durationMs == null) {
+            return;
+        }
+        String state = saga.getState().name();
+        durationTimers.computeIfAbsent(saga.getSagaType() + "|" + state, k ->
+            Timer.builder("mannapay.saga.duration")
+                .description("Time from saga start to its outcome")
+                .tag("sagaType", saga.getSagaType())
+                .tag("state", state)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(meterRegistry))
+            .record(durationMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record the state a saga driven by this node is in after a transition.
+     */
+    public void track(UUID sagaId, SagaState state) {
+        if (!inFlightCounts.containsKey(state)) {
+            if (seedsRunning.get() > 0) {
+                settledWhileSeeding.add(sagaId);
+            }
+            SagaState previous = inFlight.remove(sagaId);
+            if (previous != null) {
+                inFlightCounts.get(previous).decrementAndGet();
+            }
+            return;
+        }
+        if (!shardManager.owns(sagaId)) {
+            return;
+        }
+        SagaState previous = inFlight.put(sagaId, state);
+        if (previous != state) {
+            if (previous != null) {
+                inFlightCounts.get(previous).decrementAndGet();
+            }
+            inFlightCounts.get(state).incrementAndGet();
+        }
+    }
+
+    /**
+     * Seed the in-flight gauges when this node owns every saga.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (!shardManager.isEnabled()) {
+            seed(null);
+        }
+    }
+
+    @Override
+    public void onShardsAssigned(Set<Integer> shards) {
+        seed(shards);
+    }
+
+    @Override
+    public void onShardsRevoked(Set<Integer> shards) {
+        inFlight.entrySet().removeIf(entry -> {
+            if (!shards.contains(shardManager.shardOf(entry.getKey()))) {
+                return false;
+            }
+            inFlightCounts.get(entry.getValue()).decrementAndGet();
+            return true;
+        });
+    }
+
+    private void seed(Collection<Integer> shards) {
+        String scope = shards != null ? String.valueOf(shards.hashCode()) : "all";
+        for (SagaState state : TRACKED_STATES) {
+            seedsRunning.incrementAndGet();
+            recoveryWorker.recoverAsync("saga-metrics-" + state + "-" + scope, List.of(state), shards, this::seedOne)
+                .whenComplete((sagas, error) -> {
+                    if (seedsRunning.decrementAndGet() == 0) {
+                        settledWhileSeeding.clear();
+                    }
+                    if (error != null) {
+                        log.warn("Failed to seed saga in-flight gauge: state={}, scope={}, error={}",
+                            state, scope, error.getMessage());
+                    }
+                });
+        }
+    }
+
+    private void seedOne(UUID sagaId) {
+        if (!shardManager.owns(sagaId) || settledWhileSeeding.contains(sagaId)) {
+            return;
+        }
+        // The page may be stale by now: count the saga in its current state, if still in flight
+        SagaState current = sagaRepository.findStateById(sagaId).orElse(null);
+        if (current == null || !inFlightCounts.containsKey(current)) {
+            return;
+        }
+        // A transition applied meanwhile is more recent than the read
+        if (inFlight.putIfAbsent(sagaId, current) == null) {
+            inFlightCounts.get(current).incrementAndGet();
+            // Reached an outcome between the read and the insert
+            if (settledWhileSeeding.contains(sagaId) && inFlight.remove(sagaId, current)) {
+                inFlightCounts.get(current).decrementAndGet();
+            }
+        }
+    }
+
+    private Timer timer(Map<String, Timer> timers, String name, String description,
+                        String sagaType, String step, SagaReply.Outcome outcome) {
+        return timers.computeIfAbsent(sagaType + "|" + step + "|" + outcome, k ->
+            Timer.builder(name)
+                .description(description)
+                .tag("sagaType", sagaType)
+                .tag("step", step)
+                .tag("outcome", outcome.name())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry));
+    }
+
+    private static long elapsedMillis(Instant since) {
+        return Math.max(0, System.currentTimeMillis() - since.toEpochMilli());
+    }
+}
@@ -0,0 +1,652 @@
+package com.mannapay.common.events.saga;
+
+import com.mannapay.common.events.outbox.OutboxService;
+import com.mannapay.common.events.saga.shard.SagaShardManager;
+import com.mannapay.common.events.saga.timeout.SagaTimeoutScheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Event-driven orchestrator for {@link SagaInstance}s.
+ *
+ * A saga advances only when a reply arrives: each transition loads the
+ * instance, applies the reply and writes the next {@link SagaCommand} to the
+ * outbox in the same transaction. No thread, timer or poll is held per saga,
+ * so the number of concurrent sagas is bounded by the database, not the node.
+ *
+ * Sagas are started from a {@link SagaDefinition} registered with the
+ * {@link SagaDefinitionRegistry}, or from explicit {@link SagaStep}s. Either
+ * way the orchestrator reads the static step definitions from a
+ * {@link SagaPlan}; the saga itself holds only the runtime state.
+ *
+ * Steps form a DAG, so independent steps are in flight at the same time and
+ * a saga takes as long as its critical path.
+ *
+ * Flow:
+ * - start: the commands of all steps without dependencies are sent
+ * - SUCCESS: the step output is merged into the saga output and every
+ *   dependent whose dependencies have all completed is sent; the saga
+ *   completes when all steps have
+ * - FAILURE/TIMEOUT: retried while retryable and under {@code maxRetries};
+ *   otherwise completed steps are compensated in reverse topological order,
+ *   once the steps still in flight have settled. A step that timed out may
+ *   still have been applied, so it is compensated as well
+ * - a compensation that keeps failing suspends the saga for manual intervention
+ *
+ * Sagas are loaded and saved through the {@link SagaStepLog}, so each
+ * transition appends step events instead of rewriting the JSONB columns.
+ *
+ * Replies are matched on {@code sagaId}, {@code stepId} and, when the
+ * participant echoes them, the {@code compensation} flag and {@code attempt}
+ * number of the command; replies for other orchestrators' sagas, earlier
+ * attempts, the other direction of a step or terminal sagas are ignored. Concurrent
+ * transitions of one saga are serialized by its optimistic lock; with the
+ * {@link SagaShardManager} each saga is driven by one node, so they rarely
+ * conflict.
+ *
+ * Every attempt gets a deadline ({@code SagaStep.timeoutMs}, or
+ * {@code saga.timeout.step-default}) and every saga an overall deadline
+ * ({@code saga.timeout.saga-default}), tracked by the {@link SagaTimeoutScheduler}.
+ * An expired step is handled like a retryable {@code TIMEOUT} reply; an expired
+ * saga times out its running steps and compensates them with the completed ones.
+ * Compensations must therefore tolerate steps that never took effect.
+ *
+ * Enabled with {@code saga.orchestrator.enabled=true}.
+ */
+@Service
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaOrchestrator {
+
+    private static final String SAGA_AGGREGATE_TYPE = "Saga";
+
+    private final SagaStepLog sagaStepLog;
+    private final SagaDefinitionRegistry definitionRegistry;
+    private final OutboxService outboxService;
+    private final String serviceName;
+    private final String replyTopic;
+    private final SagaTimeoutScheduler timeoutScheduler;
+    private final SagaShardManager shardManager;
+    private final SagaMetrics sagaMetrics;
+    private final Duration defaultStepTimeout;
+    private final Duration defaultSagaTimeout;
+
+    private final Counter sagasStartedCounter;
+    private final Counter sagasCompletedCounter;
+    private final Counter sagasCompensatedCounter;
+    private final Counter sagasSuspendedCounter;
+    private final Counter lateSuccessCounter;
+
+    public SagaOrchestrator(
+            SagaStepLog sagaStepLog,
+            SagaDefinitionRegistry definitionRegistry,
+            OutboxService outboxService,
+            SagaTimeoutScheduler timeoutScheduler,
+            SagaShardManager shardManager,
+            SagaMetrics sagaMetrics,
+            MeterRegistry meterRegistry,
+            @Value("${spring.application.name:unknown-service}") String serviceName,
+            @Value("${saga.reply-topic:mannapay.saga.replies}") String replyTopic,
+            @Value("${saga.timeout.step-default:PT30S}") Duration defaultStepTimeout,
+            @Value("${saga.timeout.saga-default:PT10M}") Duration defaultSagaTimeout) {
+
+        this.sagaStepLog = sagaStepLog;
+        this.definitionRegistry = definitionRegistry;
+        this.outboxService = outboxService;
+        this.timeoutScheduler = timeoutScheduler;
+        this.shardManager = shardManager;
+        this.sagaMetrics = sagaMetrics;
+        this.serviceName = serviceName;
+        this.replyTopic = replyTopic;
+        this.defaultStepTimeout = defaultStepTimeout;
+        this.defaultSagaTimeout = defaultSagaTimeout;
+
+        this.sagasStartedCounter = Counter.builder("mannapay.saga.started")
+            .description("Sagas started")
+            .register(meterRegistry);
+
+        this.sagasCompletedCounter = Counter.builder("mannapay.saga.completed")
+            .description("Sagas completed successfully")
+            .register(meterRegistry);
+
+        this.sagasCompensatedCounter = Counter.builder("mannapay.saga.compensated")
+            .description("Sagas rolled back by compensation")
+            .register(meterRegistry);
+
+        this.sagasSuspendedCounter = Counter.builder("mannapay.saga.suspended")
+            .description("Sagas suspended for manual intervention")
+            .register(meterRegistry);
+
+        this.lateSuccessCounter = Counter.builder("mannapay.saga.steps.late.success")
+            .description("Successes of steps that had timed out and were being compensated")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Create a saga of the latest registered definition of its type and send its first command.
+     *
+     * @param sagaType Type of saga, e.g. "TransferSaga"
+     * @param correlationId Correlation ID of the business transaction
+     * @param input Saga input, passed to every step command
+     * @return The started saga
+     */
+    @Transactional
+    public SagaInstance start(String sagaType, String correlationId, Map<String, Object> input) {
+        SagaPlan plan = definitionRegistry.getLatestPlan(sagaType);
+        SagaInstance saga = newSaga(sagaType, correlationId, plan.newRuntimeSteps(), input);
+        saga.setSagaVersion(plan.getVersion());
+        return begin(saga, plan);
+    }
+
+    /**
+     * Create a saga whose steps carry their own definition and send its first command.
+     *
+     * @param sagaType Type of saga, e.g. "TransferSaga"
+     * @param correlationId Correlation ID of the business transaction
+     * @param steps Steps in execution order
+     * @param input Saga input, passed to every step command
+     * @return The started saga
+     */
+    @Transactional
+    public SagaInstance start(String sagaType, String correlationId, List<SagaStep> steps, Map<String, Object> input) {
+        if (steps == null || steps.isEmpty()) {
+            throw new IllegalArgumentException("Saga needs at least one step: " + sagaType);
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            SagaStep step = steps.get(i);
+            if (step.getStepId() == null) {
+                step.setStepId(step.getStepName() != null ? step.getStepName() : "step-" + (i + 1));
+            }
+            step.setOrder(i + 1);
+            step.setState(SagaStep.StepState.PENDING);
+        }
+
+        SagaInstance saga = newSaga(sagaType, correlationId, steps, input);
+        return begin(saga, SagaPlan.inline(saga));
+    }
+
+    private SagaInstance newSaga(String sagaType, String correlationId, List<SagaStep> steps,
+                                 Map<String, Object> input) {
+        return SagaInstance.builder()
+            .sagaType(sagaType)
+            .correlationId(correlationId != null ? correlationId : UUID.randomUUID().toString())
+            .steps(steps)
+            .inputData(input != null ? new HashMap<>(input) : new HashMap<>())
+            .initiatorService(serviceName)
+            .build();
+    }
+
+    private SagaInstance begin(SagaInstance saga, SagaPlan plan) {
+        saga.start();
+        saga.setDeadlineAt(saga.getStartedAt().plus(defaultSagaTimeout));
+        saga = sagaStepLog.save(saga);
+        saga.setShard(shardManager.shardOf(saga.getId()));
+
+        timeoutScheduler.scheduleSaga(saga.getId(), saga.getDeadlineAt());
+        for (int root : plan.getRoots()) {
+            dispatchIfReady(saga, plan, root);
+        }
+        if (!shardManager.owns(saga.getId())) {
+            // Deadlines are tracked by the owning node, which hears of the saga through its reply partition
+            SagaReply started = SagaReply.started(saga.getId().toString(), serviceName);
+            started.setCorrelationId(saga.getCorrelationId());
+            started.setSource(serviceName);
+            outboxService.saveEvent(started);
+        }
+        saga = sagaStepLog.save(saga);
+        sagaMetrics.track(saga.getId(), saga.getState());
+        sagasStartedCounter.increment();
+
+        log.info("Saga started: sagaId={}, sagaType={}, version={}, correlationId={}, steps={}",
+            saga.getId(), saga.getSagaType(), saga.getSagaVersion(), saga.getCorrelationId(), plan.size());
+        return saga;
+    }
+
+    /**
+     * Apply a reply to its saga.
+     *
+     * @param reply The participant's reply
+     */
+    @Transactional
+    public void onReply(SagaReply reply) {
+        Optional<SagaInstance> found = findSaga(reply.getSagaId());
+        if (found.isEmpty()) {
+            log.debug("Reply for unknown saga ignored: sagaId={}", reply.getSagaId());
+            return;
+        }
+        apply(found.get(), reply);
+    }
+
+    /**
+     * Apply the expiry of a step attempt's deadline, if the saga is still waiting on it.
+     */
+    @Transactional
+    public void onStepTimeout(UUID sagaId, String stepId) {
+        Optional<SagaInstance> found = sagaStepLog.load(sagaId);
+        if (found.isEmpty() || found.get().isTerminal() || found.get().getState() == SagaState.SUSPENDED) {
+            return;
+        }
+        SagaInstance saga = found.get();
+        SagaPlan plan = planOf(saga);
+        int index = plan.indexOf(stepId);
+        if (index < 0) {
+            return;
+        }
+        SagaStep step = saga.getSteps().get(index);
+        if (!isInFlight(step) || step.getDeadlineAt() == null || Instant.now().isBefore(step.getDeadlineAt())) {
+            return;
+        }
+
+        SagaReply timeout = new SagaReply();
+        timeout.setSagaId(sagaId.toString());
+        timeout.setStepId(stepId);
+        timeout.setServiceName(plan.step(index).getServiceName());
+        timeout.setCompensation(step.getState() == SagaStep.StepState.COMPENSATING);
+        timeout.setAttempt(step.getRetryCount());
+        timeout.setOutcome(SagaReply.Outcome.TIMEOUT);
+        timeout.setErrorMessage("Step timed out at " + step.getDeadlineAt());
+        timeout.setRetryable(true);
+        apply(saga, timeout);
+    }
+
+    /**
+     * Apply the expiry of a saga's overall deadline: the running steps time
+     * out and are compensated with the completed steps.
+     */
+    @Transactional
+    public void onSagaTimeout(UUID sagaId) {
+        Optional<SagaInstance> found = sagaStepLog.load(sagaId);
+        if (found.isEmpty() || found.get().getState() != SagaState.RUNNING) {
+            return;
+        }
+        SagaInstance saga = found.get();
+        String error = "Saga timed out at " + saga.getDeadlineAt();
+        int failedStep = saga.getCurrentStep();
+        List<SagaStep> steps = saga.getSteps();
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            SagaStep step = steps.get(i);
+            if (step.getState() == SagaStep.StepState.RUNNING) {
+                step.timeOut(error);
+                timeoutScheduler.cancelStep(saga.getId(), step.getStepId());
+                failedStep = i;
+            }
+        }
+        log.warn("Saga timed out, compensating: sagaId={}, sagaType={}, step={}",
+            saga.getId(), saga.getSagaType(), steps.get(failedStep).getStepId());
+        startCompensation(saga, planOf(saga), failedStep, error);
+        sagaStepLog.save(saga);
+        sagaMetrics.track(saga.getId(), saga.getState());
+    }
+
+    private void apply(SagaInstance saga, SagaReply reply) {
+        String stepId = reply.getStepId() != null ? reply.getStepId() : reply.getStepName();
+        if (reply.getOutcome() == SagaReply.Outcome.STARTED) {
+            sagaMetrics.track(saga.getId(), saga.getState());
+            if (!saga.isTerminal() && saga.getState() != SagaState.SUSPENDED) {
+                timeoutScheduler.restore(saga);
+            }
+            return;
+        }
+
+        SagaPlan plan = planOf(saga);
+        int index = plan.indexOf(stepId);
+        if (index >= 0 && isLateSuccess(saga.getSteps().get(index), reply)) {
+            onLateSuccess(saga, plan, index);
+            return;
+        }
+        if (saga.isTerminal() || saga.getState() == SagaState.SUSPENDED) {
+            log.info("Stale saga reply ignored: sagaId={}, stepId={}, state={}",
+                saga.getId(), stepId, saga.getState());
+            return;
+        }
+        if (index < 0) {
+            log.info("Saga reply for unknown step ignored: sagaId={}, stepId={}", saga.getId(), stepId);
+            return;
+        }
+
+        SagaStep step = saga.getSteps().get(index);
+        if (step.getState() == SagaStep.StepState.RUNNING && matches(reply, step, false)) {
+            onStepReply(saga, plan, index, reply);
+        } else if (saga.getState() == SagaState.COMPENSATING && step.getState() == SagaStep.StepState.COMPENSATING
+                && matches(reply, step, true)) {
+            onCompensationReply(saga, plan, index, reply);
+        } else {
+            log.info("Saga reply ignored in current state: sagaId={}, stepId={}, sagaState={}, stepState={}, "
+                    + "compensation={}, attempt={}",
+                saga.getId(), stepId, saga.getState(), step.getState(), reply.getCompensation(), reply.getAttempt());
+            return;
+        }
+        sagaStepLog.save(saga);
+        sagaMetrics.track(saga.getId(), saga.getState());
+    }
+
+    /**
+     * Look up a saga by ID.
+     */
+    @Transactional(readOnly = true)
+    public Optional<SagaInstance> findSaga(String sagaId) {
+        if (sagaId == null) {
+            return Optional.empty();
+        }
+        try {
+            return sagaStepLog.load(UUID.fromString(sagaId));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Plan of a saga: its registered definition version, or its own steps.
+     */
+    private SagaPlan planOf(SagaInstance saga) {
+        return saga.getSagaVersion() != null
+            ? definitionRegistry.getPlan(saga.getSagaType(), saga.getSagaVersion())
+            : SagaPlan.inline(saga);
+    }
+
+    private void onStepReply(SagaInstance saga, SagaPlan plan, int index, SagaReply reply) {
+        SagaStep step = saga.getSteps().get(index);
+        SagaPlan.Step definition = plan.step(index);
+        timeoutScheduler.cancelStep(saga.getId(), step.getStepId());
+        sagaMetrics.recordStep(saga.getSagaType(), nameOf(definition), outcomeOf(reply), step.getStartedAt());
+
+        if (outcomeOf(reply) == SagaReply.Outcome.SUCCESS) {
+            sagaMetrics.recordRetries(saga.getSagaType(), nameOf(definition), false, step.getRetryCount());
+            step.complete(reply.getResultData());
+            if (reply.getResultData() != null) {
+                reply.getResultData().forEach(saga::addOutput);
+            }
+            if (saga.getState() == SagaState.COMPENSATING) {
+                // A parallel branch finished after another failed: undo it with the rest
+                compensateNext(saga, plan);
+                return;
+            }
+            for (int dependent : definition.getDependents()) {
+                dispatchIfReady(saga, plan, dependent);
+            }
+            if (saga.getSteps().stream().allMatch(s -> s.getState() == SagaStep.StepState.COMPLETED)) {
+                saga.complete();
+                timeoutScheduler.cancel(saga.getId());
+                sagasCompletedCounter.increment();
+                sagaMetrics.recordOutcome(saga);
+                log.info("Saga completed: sagaId={}, sagaType={}, durationMs={}",
+                    saga.getId(), saga.getSagaType(), saga.getDurationMs());
+            }
+            return;
+        }
+
+        String error = errorOf(reply);
+        if (outcomeOf(reply) == SagaReply.Outcome.TIMEOUT) {
+            step.timeOut(error);
+        } else {
+            step.fail(error);
+        }
+        boolean retry = saga.getState() == SagaState.RUNNING
+            && isRetryable(reply) && step.getRetryCount() < definition.getMaxRetries();
+        if (retry) {
+            step.incrementRetry();
+            log.warn("Saga step failed, retrying: sagaId={}, step={}, attempt={}, error={}",
+                saga.getId(), step.getStepId(), step.getRetryCount(), error);
+            dispatch(saga, definition, step, false);
+            return;
+        }
+
+        sagaMetrics.recordRetries(saga.getSagaType(), nameOf(definition), false, step.getRetryCount());
+        if (saga.getState() == SagaState.COMPENSATING) {
+            compensateNext(saga, plan);
+            return;
+        }
+
+        log.warn("Saga step failed, compensating: sagaId={}, step={}, outcome={}, error={}",
+            saga.getId(), step.getStepId(), outcomeOf(reply), error);
+        startCompensation(saga, plan, index, error);
+    }
+
+    /**
+     * Forward success of a step that timed out and was given up on. Once its
+     * compensation was sent, only replies echoing the direction can tell.
+     */
+    private static boolean isLateSuccess(SagaStep step, SagaReply reply) {
+        if (!step.isTimedOut() || outcomeOf(reply) != SagaReply.Outcome.SUCCESS) {
+            return false;
+        }
+        return switch (step.getState()) {
+            case FAILED -> !Boolean.TRUE.equals(reply.getCompensation());
+            case COMPENSATING, COMPENSATED -> Boolean.FALSE.equals(reply.getCompensation());
+            default -> false;
+        };
+    }
+
+    /**
+     * A timed-out step was applied after all. It is compensated like any
+     * timed-out step; if its compensation already ran, it may have run before
+     * the step took effect, so it is sent once more.
+     */
+    private void onLateSuccess(SagaInstance saga, SagaPlan plan, int index) {
+        SagaStep step = saga.getSteps().get(index);
+        SagaPlan.Step definition = plan.step(index);
+        lateSuccessCounter.increment();
+        if (definition.getCompensationCommand() == null) {
+            log.error("Late success of timed-out saga step without compensation: sagaId={}, step={}, sagaState={}",
+                saga.getId(), step.getStepId(), saga.getState());
+            return;
+        }
+        if (step.getState() != SagaStep.StepState.COMPENSATED) {
+            log.warn("Late success of timed-out saga step, compensation pending: sagaId={}, step={}, stepState={}",
+                saga.getId(), step.getStepId(), step.getState());
+            return;
+        }
+        log.warn("Late success of compensated saga step, compensating again: sagaId={}, step={}, sagaState={}",
+            saga.getId(), step.getStepId(), saga.getState());
+        send(saga, definition, step, true, step.getRetryCount() + 1);
+    }
+
+    private void startCompensation(SagaInstance saga, SagaPlan plan, int failedStep, String error) {
+        saga.setErrorMessage(error);
+        saga.setFailedStep(failedStep);
+        saga.startCompensation();
+        // Compensation runs to the end; only its step attempts have deadlines
+        timeoutScheduler.cancelSaga(saga.getId());
+        compensateNext(saga, plan);
+    }
+
+    private void onCompensationReply(SagaInstance saga, SagaPlan plan, int index, SagaReply reply) {
+        SagaStep step = saga.getSteps().get(index);
+        SagaPlan.Step definition = plan.step(index);
+        sagaMetrics.recordCompensation(saga.getSagaType(), nameOf(definition), outcomeOf(reply),
+            step.getCompensationStartedAt());
+
+        if (outcomeOf(reply) == SagaReply.Outcome.SUCCESS) {
+            sagaMetrics.recordRetries(saga.getSagaType(), nameOf(definition), true, step.getRetryCount());
+            step.markCompensated();
+            timeoutScheduler.cancelStep(saga.getId(), step.getStepId());
+            compensateNext(saga, plan);
+            return;
+        }
+
+        String error = errorOf(reply);
+        if (step.getRetryCount() < definition.getMaxRetries()) {
+            step.setRetryCount(step.getRetryCount() + 1);
+            log.warn("Saga compensation failed, retrying: sagaId={}, step={}, attempt={}, error={}",
+                saga.getId(), step.getStepId(), step.getRetryCount(), error);
+            dispatch(saga, definition, step, true);
+            return;
+        }
+
+        step.setErrorMessage(error);
+        saga.suspend("Compensation failed at step " + step.getStepId() + ": " + error);
+        timeoutScheduler.cancel(saga.getId());
+        sagasSuspendedCounter.increment();
+        sagaMetrics.recordRetries(saga.getSagaType(), nameOf(definition), true, step.getRetryCount());
+        sagaMetrics.recordOutcome(saga);
+        log.error("Saga suspended, compensation failed: sagaId={}, step={}, error={}",
+            saga.getId(), step.getStepId(), error);
+    }
+
+    /**
+     * Send the command of a pending step once all its dependencies completed.
+     */
+    private void dispatchIfReady(SagaInstance saga, SagaPlan plan, int index) {
+        SagaStep step = saga.getSteps().get(index);
+        if (step.getState() != SagaStep.StepState.PENDING) {
+            return;
+        }
+        for (int dependency : plan.step(index).getDependencies()) {
+            if (saga.getSteps().get(dependency).getState() != SagaStep.StepState.COMPLETED) {
+                return;
+            }
+        }
+        saga.setCurrentStep(index);
+        dispatch(saga, plan.step(index), step, false);
+    }
+
+    /**
+     * Send the compensation of every completed or timed-out step whose
+     * dependents are all settled, i.e. in reverse topological order with
+     * independent branches undone in parallel. Compensation finishes once
+     * nothing is in flight.
+     */
+    private void compensateNext(SagaInstance saga, SagaPlan plan) {
+        List<SagaStep> steps = saga.getSteps();
+        boolean skipped;
+        do {
+            skipped = false;
+            for (int i = steps.size() - 1; i >= 0; i--) {
+                SagaStep candidate = steps.get(i);
+                if (!candidate.needsCompensation() || !dependentsSettled(saga, plan, i)) {
+                    continue;
+                }
+                if (plan.step(i).getCompensationCommand() == null) {
+                    if (candidate.getState() == SagaStep.StepState.FAILED) {
+                        // Nothing to undo it with; it stays failed
+                        continue;
+                    }
+                    // May unblock its dependencies, hence another pass
+                    candidate.setState(SagaStep.StepState.SKIPPED);
+                    skipped = true;
+                    continue;
+                }
+                saga.setCurrentStep(i);
+                candidate.setState(SagaStep.StepState.COMPENSATING);
+                candidate.setRetryCount(0);
+                dispatch(saga, plan.step(i), candidate, true);
+            }
+        } while (skipped);
+
+        if (steps.stream().anyMatch(SagaOrchestrator::isInFlight)) {
+            return;
+        }
+        saga.completeCompensation();
+        timeoutScheduler.cancel(saga.getId());
+        sagasCompensatedCounter.increment();
+        sagaMetrics.recordOutcome(saga);
+        log.info("Saga compensated: sagaId={}, sagaType={}, failedStep={}",
+            saga.getId(), saga.getSagaType(), saga.getFailedStep());
+    }
+
+    private static boolean dependentsSettled(SagaInstance saga, SagaPlan plan, int index) {
+        for (int dependent : plan.step(index).getDependents()) {
+            SagaStep.StepState state = saga.getSteps().get(dependent).getState();
+            if (state == SagaStep.StepState.RUNNING || state == SagaStep.StepState.COMPLETED
+                    || state == SagaStep.StepState.COMPENSATING) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a reply answers the step's current attempt in the given
+     * direction. Fields the participant did not echo are not checked.
+     */
+    private static boolean matches(SagaReply reply, SagaStep step, boolean compensation) {
+        return (reply.getCompensation() == null || reply.getCompensation() == compensation)
+            && (reply.getAttempt() == null || reply.getAttempt() == step.getRetryCount());
+    }
+
+    private static boolean isInFlight(SagaStep step) {
+        return step.getState() == SagaStep.StepState.RUNNING || step.getState() == SagaStep.StepState.COMPENSATING;
+    }
+
+    private void dispatch(SagaInstance saga, SagaPlan.Step definition, SagaStep step, boolean compensation) {
+        if (compensation) {
+            step.setCompensationStartedAt(Instant.now());
+        } else {
+            step.start();
+        }
+        Duration timeout = definition.getTimeout() != null ? definition.getTimeout() : defaultStepTimeout;
+        step.setDeadlineAt(Instant.now().plus(timeout));
+        timeoutScheduler.scheduleStep(saga.getId(), step.getStepId(), step.getDeadlineAt());
+        send(saga, definition, step, compensation, step.getRetryCount());
+    }
+
+    private void send(SagaInstance saga, SagaPlan.Step definition, SagaStep step, boolean compensation, int attempt) {
+        Map<String, Object> payload = new HashMap<>();
+        if (saga.getInputData() != null) {
+            payload.putAll(saga.getInputData());
+        }
+        if (saga.getOutputData() != null) {
+            payload.putAll(saga.getOutputData());
+        }
+        payload.putAll(definition.getInput());
+        if (compensation && step.getOutput() != null) {
+            payload.putAll(step.getOutput());
+        }
+
+        SagaCommand command = SagaCommand.builder()
+            .sagaId(saga.getId().toString())
+            .sagaType(saga.getSagaType())
+            .stepId(step.getStepId())
+            .commandName(compensation ? definition.getCompensationCommand() : definition.getCommand())
+            .targetService(definition.getServiceName())
+            .payload(payload)
+            .compensation(compensation)
+            .attempt(attempt)
+            .replyTopic(replyTopic)
+            .build();
+        command.setAggregateId(saga.getId().toString());
+        command.setAggregateType(SAGA_AGGREGATE_TYPE);
+        command.setCorrelationId(saga.getCorrelationId());
+        command.setSource(serviceName);
+
+        outboxService.saveEvent(command);
+
+        log.debug("Saga command sent: sagaId={}, step={}, command={}, service={}, compensation={}",
+            saga.getId(), step.getStepId(), command.getCommandName(), definition.getServiceName(), compensation);
+    }
+
+    private static String nameOf(SagaPlan.Step definition) {
+        return definition.getStepName() != null ? definition.getStepName() : definition.getStepId();
+    }
+
+    private static SagaReply.Outcome outcomeOf(SagaReply reply) {
+        if (reply.getOutcome() != null) {
+            return reply.getOutcome();
+        }
+        return reply.isSuccess() ? SagaReply.Outcome.SUCCESS : SagaReply.Outcome.FAILURE;
+    }
+
+    private static boolean isRetryable(SagaReply reply) {
+        return outcomeOf(reply) == SagaReply.Outcome.TIMEOUT || reply.isRetryable();
+    }
+
+    private static String errorOf(SagaReply reply) {
+        if (reply.getErrorMessage() != null) {
+            return reply.getErrorMessage();
+        }
+        return outcomeOf(reply) == SagaReply.Outcome.TIMEOUT ? "Step timed out" : "Step failed";
+    }
+}
@@ -0,0 +1,237 @@
+package com.mannapay.common.events.saga;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled, immutable execution plan of a saga type version.
+ *
+ * Holds the static part of every step (service, commands, retries, timeout,
+ * input) and the step DAG, shared by all sagas of that version. A
+ * {@link SagaInstance} refers to its plan by {@code sagaType} and
+ * {@code sagaVersion} and keeps only the runtime state of its steps.
+ *
+ * Steps are indexed in declaration order, which matches the saga's step list.
+ * Each step knows its dependencies (steps that must complete before it runs)
+ * and its dependents (steps that must be compensated before it is).
+ */
+@Getter
+public final class SagaPlan {
+
+    private final String sagaType;
+    private final int version;
+    private final List<Step> steps;
+    private final List<Integer> roots;
+    private final Map<String, Integer> stepIndex;
+
+    private SagaPlan(String sagaType, int version, List<Step> steps, Map<String, Integer> stepIndex) {
+        this.sagaType = sagaType;
+        this.version = version;
+        this.steps = Collections.unmodifiableList(steps);
+        this.stepIndex = Collections.unmodifiableMap(stepIndex);
+
+        List<Integer> rootSteps = new ArrayList<>();
+        for (Step step : steps) {
+            if (step.getDependencies().isEmpty()) {
+                rootSteps.add(step.getIndex());
+            }
+        }
+        this.roots = Collections.unmodifiableList(rootSteps);
+    }
+
+    /**
+     * Validate and compile a definition.
+     *
+     * @throws IllegalArgumentException if the definition is incomplete, ambiguous or cyclic
+     */
+    public static SagaPlan compile(SagaDefinition definition) {
+        String name = definition.getSagaType() + " v" + definition.getVersion();
+        if (definition.getSagaType() == null || definition.getSagaType().isBlank()) {
+            throw new IllegalArgumentException("Saga definition without a saga type");
+        }
+        if (definition.getVersion() < 1) {
+            throw new IllegalArgumentException("Saga definition version must be positive: " + name);
+        }
+        if (definition.getSteps().isEmpty()) {
+            throw new IllegalArgumentException("Saga needs at least one step: " + name);
+        }
+
+        List<SagaDefinition.StepDefinition> definitions = definition.getSteps();
+        Map<String, Integer> index = new HashMap<>();
+        for (SagaDefinition.StepDefinition step : definitions) {
+            if (step.getStepId() == null || index.putIfAbsent(step.getStepId(), index.size()) != null) {
+                throw new IllegalArgumentException("Missing or duplicate step ID in " + name + ": " + step.getStepId());
+            }
+            if (step.getServiceName() == null || step.getCommand() == null) {
+                throw new IllegalArgumentException("Step needs a service and a command in " + name + ": "
+                    + step.getStepId());
+            }
+        }
+
+        List<List<Integer>> dependencies = new ArrayList<>(definitions.size());
+        for (SagaDefinition.StepDefinition step : definitions) {
+            List<Integer> resolved = new ArrayList<>(step.getDependsOn().size());
+            for (String dependency : step.getDependsOn()) {
+                Integer dependencyIndex = index.get(dependency);
+                if (dependencyIndex == null) {
+                    throw new IllegalArgumentException("Step " + step.getStepId() + " in " + name
+                        + " depends on unknown step: " + dependency);
+                }
+                resolved.add(dependencyIndex);
+            }
+            dependencies.add(resolved);
+        }
+        if (hasCycle(dependencies)) {
+            throw new IllegalArgumentException("Saga steps form a cycle: " + name);
+        }
+
+        List<List<Integer>> dependents = dependentsOf(dependencies);
+        List<Step> steps = new ArrayList<>(definitions.size());
+        for (SagaDefinition.StepDefinition step : definitions) {
+            int i = steps.size();
+            steps.add(new Step(step.getStepId(), step.getStepName(), i, step.getServiceName(),
+                step.getCommand(), step.getCompensationCommand(), step.getMaxRetries(), step.getTimeout(),
+                step.getInput(), dependencies.get(i), dependents.get(i)));
+        }
+        return new SagaPlan(definition.getSagaType(), definition.getVersion(), steps, index);
+    }
+
+    /**
+     * Plan of a saga whose steps carry their own definition (started with
+     * explicit {@link SagaStep}s rather than a registered definition). Such
+     * sagas run their steps one after another.
+     */
+    public static SagaPlan inline(SagaInstance saga) {
+        int count = saga.getSteps().size();
+        List<List<Integer>> dependencies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            dependencies.add(i == 0 ? List.of() : List.of(i - 1));
+        }
+        List<List<Integer>> dependents = dependentsOf(dependencies);
+
+        Map<String, Integer> index = new HashMap<>();
+        List<Step> steps = new ArrayList<>(count);
+        for (SagaStep step : saga.getSteps()) {
+            int i = steps.size();
+            index.put(step.getStepId(), i);
+            steps.add(new Step(step.getStepId(), step.getStepName(), i, step.getServiceName(),
+                step.getCommand(), step.getCompensationCommand(), step.getMaxRetries(),
+                step.getTimeoutMs() != null ? Duration.ofMillis(step.getTimeoutMs()) : null,
+                step.getInput() != null ? step.getInput() : Map.of(),
+                dependencies.get(i), dependents.get(i)));
+        }
+        return new SagaPlan(saga.getSagaType(), 0, steps, index);
+    }
+
+    /**
+     * Runtime steps for a new saga of this plan: IDs and state only.
+     */
+    public List<SagaStep> newRuntimeSteps() {
+        List<SagaStep> runtime = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            runtime.add(SagaStep.builder()
+                .stepId(step.getStepId())
+                .order(step.getIndex() + 1)
+                .state(SagaStep.StepState.PENDING)
+                .build());
+        }
+        return runtime;
+    }
+
+    public Step step(int index) {
+        return steps.get(index);
+    }
+
+    /**
+     * Index of a step, or -1 if the plan has no such step.
+     */
+    public int indexOf(String stepId) {
+        return stepId != null ? stepIndex.getOrDefault(stepId, -1) : -1;
+    }
+
+    public int size() {
+        return steps.size();
+    }
+
+    private static List<List<Integer>> dependentsOf(List<List<Integer>> dependencies) {
+        List<List<Integer>> dependents = new ArrayList<>(dependencies.size());
+        for (int i = 0; i < dependencies.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < dependencies.size(); i++) {
+            for (int dependency : dependencies.get(i)) {
+                dependents.get(dependency).add(i);
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Kahn's algorithm: the graph is acyclic iff every step can be ordered.
+     */
+    private static boolean hasCycle(List<List<Integer>> dependencies) {
+        List<List<Integer>> dependents = dependentsOf(dependencies);
+        int[] remaining = new int[dependencies.size()];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < dependencies.size(); i++) {
+            remaining[i] = dependencies.get(i).size();
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int ordered = 0;
+        while (!ready.isEmpty()) {
+            int step = ready.poll();
+            ordered++;
+            for (int dependent : dependents.get(step)) {
+                if (--remaining[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return ordered < dependencies.size();
+    }
+
+    /**
+     * Static part of one step.
+     */
+    @Getter
+    public static final class Step {
+
+        private final String stepId;
+        private final String stepName;
+        private final int index;
+        private final String serviceName;
+        private final String command;
+        private final String compensationCommand;
+        private final int maxRetries;
+        private final Duration timeout;
+        private final Map<String, Object> input;
+        private final List<Integer> dependencies;
+        private final List<Integer> dependents;
+
+        private Step(String stepId, String stepName, int index, String serviceName, String command,
+                     String compensationCommand, int maxRetries, Duration timeout, Map<String, Object> input,
+                     List<Integer> dependencies, List<Integer> dependents) {
+            this.stepId = stepId;
+            this.stepName = stepName;
+            this.index = index;
+            this.serviceName = serviceName;
+            this.command = command;
+            this.compensationCommand = compensationCommand;
+            this.maxRetries = maxRetries;
+            this.timeout = timeout;
+            this.input = input;
+            this.dependencies = List.copyOf(dependencies);
+            this.dependents = List.copyOf(dependents);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.mannapay.common.events.saga;
 
-import com.mannapay.common.events.core.DomainEvent;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -18,7 +17,7 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 @EqualsAndHashCode(callSuper = true)
-public class SagaReply extends DomainEvent {
+public class SagaReply extends SagaMessage {
 
     private static final long serialVersionUID = 1L;
 
@@ -37,6 +36,18 @@ public class SagaReply extends DomainEvent {
      */
     private String stepName;
 
+    /**
+     * Whether this replies to a compensation command, echoed from the
+     * command. Null from participants that do not echo it.
+     */
+    private Boolean compensation;
+
+    /**
+     * Attempt number echoed from the command. Null from participants that
+     * do not echo it.
+     */
+    private Integer attempt;
+
     /**
      * Service that executed the command.
      */
@@ -80,7 +91,12 @@ public class SagaReply extends DomainEvent {
     public enum Outcome {
         SUCCESS,
         FAILURE,
-        TIMEOUT
+        TIMEOUT,
+        /**
+         * Sent by the orchestrator node that started a saga it does not own,
+         * so that the owning node takes over its deadlines.
+         */
+        STARTED
     }
 
     @Override
@@ -88,6 +104,12 @@ public class SagaReply extends DomainEvent {
         return "mannapay.saga.replies";
     }
 
+    @Override
+    public String getPartitionKey() {
+        // Partition by saga ID, so the reply lands on the node owning the saga
+        return sagaId != null ? sagaId : super.getPartitionKey();
+    }
+
     @Override
     public String getEventDescription() {
         return String.format("Saga reply: %s from %s (saga: %s, step: %s)",
@@ -111,6 +133,8 @@ public class SagaReply extends DomainEvent {
         SagaReply reply = new SagaReply();
         reply.setSagaId(sagaId);
         reply.setStepId(stepId);
+        reply.setAggregateId(sagaId);
+        reply.setAggregateType("Saga");
         reply.setServiceName(serviceName);
         reply.setOutcome(Outcome.SUCCESS);
         reply.setSuccess(true);
@@ -119,6 +143,15 @@ public class SagaReply extends DomainEvent {
         return reply;
     }
 
+    /**
+     * Create a success reply to a command, echoing its step and attempt.
+     */
+    public static SagaReply success(SagaCommand command, String serviceName, Map<String, Object> data) {
+        SagaReply reply = success(command.getSagaId(), command.getStepId(), serviceName, data);
+        reply.echo(command);
+        return reply;
+    }
+
     /**
      * Create a failure reply.
      */
@@ -127,6 +160,8 @@ public class SagaReply extends DomainEvent {
         SagaReply reply = new SagaReply();
         reply.setSagaId(sagaId);
         reply.setStepId(stepId);
+        reply.setAggregateId(sagaId);
+        reply.setAggregateType("Saga");
         reply.setServiceName(serviceName);
         reply.setOutcome(Outcome.FAILURE);
         reply.setSuccess(false);
@@ -136,4 +171,41 @@ public class SagaReply extends DomainEvent {
         reply.initializeDefaults();
         return reply;
     }
+
+    /**
+     * Create a failure reply to a command, echoing its step and attempt.
+     */
+    public static SagaReply failure(SagaCommand command, String serviceName,
+                                    String errorCode, String errorMessage, boolean retryable) {
+        SagaReply reply = failure(command.getSagaId(), command.getStepId(), serviceName,
+            errorCode, errorMessage, retryable);
+        reply.echo(command);
+        return reply;
+    }
+
+    /**
+     * Copy the attempt identity of the command being replied to.
+     */
+    public void echo(SagaCommand command) {
+        this.compensation = command.isCompensation();
+        this.attempt = command.getAttempt();
+        if (command.getCorrelationId() != null) {
+            setCorrelationId(command.getCorrelationId());
+        }
+    }
+
+    /**
+     * Create a started notice for the node owning a saga.
+     */
+    public static SagaReply started(String sagaId, String serviceName) {
+        SagaReply reply = new SagaReply();
+        reply.setSagaId(sagaId);
+        reply.setAggregateId(sagaId);
+        reply.setAggregateType("Saga");
+        reply.setServiceName(serviceName);
+        reply.setOutcome(Outcome.STARTED);
+        reply.setSuccess(true);
+        reply.initializeDefaults();
+        return reply;
+    }
 }
@@ -0,0 +1,40 @@
+package com.mannapay.common.events.saga;
+
+import com.mannapay.common.events.core.EventEnvelope;
+import com.mannapay.common.events.kafka.consumer.IdempotentEventProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consumes {@link SagaReply}s and hands them to the {@link SagaOrchestrator}.
+ *
+ * Replies are keyed by saga ID, so all replies of a saga are applied in order
+ * by one consumer thread; throughput scales with the reply topic's partitions.
+ * Duplicate deliveries are filtered by the {@link IdempotentEventProcessor}.
+ */
+@Component
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaReplyListener {
+
+    private final SagaOrchestrator sagaOrchestrator;
+    private final IdempotentEventProcessor eventProcessor;
+
+    public SagaReplyListener(SagaOrchestrator sagaOrchestrator, IdempotentEventProcessor eventProcessor) {
+        this.sagaOrchestrator = sagaOrchestrator;
+        this.eventProcessor = eventProcessor;
+    }
+
+    @KafkaListener(
+        topics = "${saga.reply-topic:mannapay.saga.replies}",
+        groupId = "${spring.application.name:unknown-service}-saga-orchestrator",
+        concurrency = "${saga.orchestrator.concurrency:3}",
+        containerFactory = "kafkaListenerContainerFactory")
+    public void onReply(ConsumerRecord<String, EventEnvelope<SagaReply>> record, Acknowledgment ack) {
+        eventProcessor.processIdempotently(record, sagaOrchestrator::onReply, ack);
+    }
+}
@@ -1,14 +1,20 @@
 package com.mannapay.common.events.saga;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Repository for saga instances.
@@ -17,15 +23,42 @@ import java.util.UUID;
 public interface SagaRepository extends JpaRepository<SagaInstance, UUID> {
 
     /**
-     * Find saga by correlation ID.
+     * Find saga by correlation ID. Live sagas only; use
+     * {@code SagaArchiver#findByCorrelationId} to include archived ones.
      */
     Optional<SagaInstance> findByCorrelationId(String correlationId);
 
     /**
-     * Find running sagas.
+     * Find running sagas. Unbounded; for recovery use {@link #findIdPage}.
      */
     List<SagaInstance> findByState(SagaState state);
 
+    /**
+     * Keyset page of the IDs of sagas in the given states, in ID order.
+     *
+     * @param states State names
+     * @param afterId Last ID of the previous page (the nil UUID for the first page)
+     * @param limit Page size
+     */
+    @Query(value = "SELECT s.id FROM saga_instances s WHERE s.state IN (:states) AND s.id > :afterId " +
+        "ORDER BY s.id LIMIT :limit",
+        nativeQuery = true)
+    List<UUID> findIdPage(@Param("states") Collection<String> states,
+                          @Param("afterId") UUID afterId,
+                          @Param("limit") int limit);
+
+    /**
+     * Keyset page of the IDs of sagas of some shards in the given states, in ID order.
+     * Includes sagas whose shard is not yet set; callers check ownership.
+     */
+    @Query(value = "SELECT s.id FROM saga_instances s WHERE (s.shard IN (:shards) OR s.shard IS NULL) " +
+        "AND s.state IN (:states) AND s.id > :afterId ORDER BY s.id LIMIT :limit",
+        nativeQuery = true)
+    List<UUID> findIdPageInShards(@Param("states") Collection<String> states,
+                                  @Param("shards") Collection<Integer> shards,
+                                  @Param("afterId") UUID afterId,
+                                  @Param("limit") int limit);
+
     /**
      * Find sagas by type and state.
      */
@@ -43,18 +76,108 @@ public interface SagaRepository extends JpaRepository<SagaInstance, UUID> {
     List<SagaInstance> findStuckSagas(@Param("cutoff") Instant cutoff);
 
     /**
-     * Find sagas that need compensation.
+     * Find sagas that need compensation. Unbounded; prefer {@link #streamSagasNeedingCompensation}.
      */
     @Query("SELECT s FROM SagaInstance s WHERE s.state = 'COMPENSATING' ORDER BY s.updatedAt ASC")
     List<SagaInstance> findSagasNeedingCompensation();
 
+    /**
+     * Stream sagas that need compensation, fetched from the database in batches.
+     * Must be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT s FROM SagaInstance s WHERE s.state = 'COMPENSATING' ORDER BY s.updatedAt ASC")
+    Stream<SagaInstance> streamSagasNeedingCompensation();
+
     /**
      * Count sagas by state.
      */
     long countByState(SagaState state);
 
     /**
-     * Find suspended sagas.
+     * Current state of a saga, without loading it.
+     */
+    @Query("SELECT s.state FROM SagaInstance s WHERE s.id = :id")
+    Optional<SagaState> findStateById(@Param("id") UUID id);
+
+    /**
+     * Find suspended sagas. Unbounded; prefer {@link #findPageByStateBefore}.
      */
     List<SagaInstance> findByStateOrderByCreatedAtDesc(SagaState state);
+
+    /**
+     * Keyset page of sagas in a state, newest first, older than the last
+     * saga of the previous page.
+     *
+     * @param state State name
+     * @param createdAt Creation time of the previous page's last saga (now for the first page)
+     * @param id ID of the previous page's last saga (the nil UUID for the first page)
+     * @param limit Page size
+     */
+    @Query(value = "SELECT * FROM saga_instances s WHERE s.state = :state " +
+        "AND (s.created_at, s.id) < (:createdAt, :id) ORDER BY s.created_at DESC, s.id DESC LIMIT :limit",
+        nativeQuery = true)
+    List<SagaInstance> findPageByStateBefore(@Param("state") String state,
+                                             @Param("createdAt") Instant createdAt,
+                                             @Param("id") UUID id,
+                                             @Param("limit") int limit);
+
+    /**
+     * Lock a batch of sagas in the given states created before a cutoff, oldest
+     * first. Rows locked by another node are skipped.
+     */
+    @Query(value = "SELECT * FROM saga_instances s WHERE s.state IN (:states) AND s.created_at < :cutoff " +
+        "ORDER BY s.created_at ASC LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true)
+    List<SagaInstance> lockBatchCreatedBefore(@Param("states") Collection<String> states,
+                                              @Param("cutoff") Instant cutoff,
+                                              @Param("limit") int limit);
+
+    /**
+     * Lock a batch of the IDs of sagas without a shard. Rows locked by another
+     * node are skipped.
+     */
+    @Query(value = "SELECT s.id FROM saga_instances s WHERE s.shard IS NULL LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true)
+    List<UUID> lockIdsWithoutShard(@Param("limit") int limit);
+
+    /**
+     * Set the shard of sagas by ID.
+     */
+    @Modifying
+    @Query(value = "UPDATE saga_instances SET shard = :shard WHERE id IN (:ids)", nativeQuery = true)
+    int assignShard(@Param("shard") int shard, @Param("ids") Collection<UUID> ids);
+
+    /**
+     * Delete sagas by ID.
+     */
+    @Modifying
+    @Query("DELETE FROM SagaInstance s WHERE s.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Update the scalar columns of a saga, leaving its JSONB columns alone.
+     *
+     * @return 0 if the saga's version changed since it was loaded
+     */
+    @Modifying
+    @Query("UPDATE SagaInstance s SET s.shard = :#{#saga.shard}, s.state = :#{#saga.state}, " +
+        "s.currentStep = :#{#saga.currentStep}, s.errorMessage = :#{#saga.errorMessage}, " +
+        "s.failedStep = :#{#saga.failedStep}, s.startedAt = :#{#saga.startedAt}, " +
+        "s.completedAt = :#{#saga.completedAt}, s.deadlineAt = :#{#saga.deadlineAt}, " +
+        "s.updatedAt = :#{#saga.updatedAt}, s.lastEventSeq = :#{#saga.lastEventSeq}, " +
+        "s.snapshotSeq = :#{#saga.snapshotSeq}, s.version = s.version + 1 " +
+        "WHERE s.id = :#{#saga.id} AND s.version = :#{#saga.version}")
+    int updateScalars(@Param("saga") SagaInstance saga);
+
+    /**
+     * Overwrite the JSONB snapshot of a saga's steps and output.
+     */
+    @Modifying
+    @Query(value = "UPDATE saga_instances SET steps = CAST(:steps AS jsonb), " +
+        "output_data = CAST(:outputData AS jsonb) WHERE id = :id",
+        nativeQuery = true)
+    int writeSnapshot(@Param("id") UUID id,
+                      @Param("steps") String steps,
+                      @Param("outputData") String outputData);
 }
@@ -1,5 +1,6 @@
 package com.mannapay.common.events.saga;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -10,11 +11,17 @@ import java.util.Map;
 
 /**
  * Represents a single step in a saga.
+ *
+ * For sagas of a registered {@link SagaDefinition} only the runtime fields
+ * (state, retries, timestamps, output) are set; the static ones (service,
+ * commands, retries allowed, timeout, input) come from the {@link SagaPlan}
+ * and are left null, and omitted from the stored JSON.
  */
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class SagaStep {
 
     /**
@@ -87,6 +94,27 @@ public class SagaStep {
      */
     private int maxRetries;
 
+    /**
+     * Timeout of one attempt in milliseconds; the orchestrator default if not set.
+     */
+    private Long timeoutMs;
+
+    /**
+     * Deadline of the attempt currently in flight (forward or compensation).
+     */
+    private Instant deadlineAt;
+
+    /**
+     * Time the compensation attempt in flight was sent.
+     */
+    private Instant compensationStartedAt;
+
+    /**
+     * Whether the step failed by timing out, i.e. without a reply: the
+     * participant may still have applied it, so it is compensated too.
+     */
+    private boolean timedOut;
+
     /**
      * Whether compensation was executed.
      */
@@ -133,6 +161,21 @@ public class SagaStep {
         this.completedAt = Instant.now();
     }
 
+    /**
+     * Mark step as failed without an answer from the participant.
+     */
+    public void timeOut(String error) {
+        fail(error);
+        this.timedOut = true;
+    }
+
+    /**
+     * Whether the step may have taken effect and needs compensating.
+     */
+    public boolean needsCompensation() {
+        return state == StepState.COMPLETED || (state == StepState.FAILED && timedOut);
+    }
+
     /**
      * Mark compensation as complete.
      */
@@ -154,6 +197,7 @@ public class SagaStep {
      */
     public void incrementRetry() {
         this.retryCount++;
+        this.timedOut = false;
         this.state = StepState.PENDING;
     }
 }
@@ -0,0 +1,81 @@
+package com.mannapay.common.events.saga;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One step transition of a saga, appended to {@code saga_step_events}.
+ *
+ * Each row records the runtime state a step reached ({@code state}) and the
+ * fields that go with it ({@code data}: retry count, error, timeout and
+ * compensation flags, timestamps as epoch millis, and the output for a
+ * completed step). Rows are never updated; a saga's steps are its last snapshot
+ * ({@code saga_instances.steps} as of {@code snapshot_seq}) with the rows
+ * after it replayed in {@code seq} order. See {@link SagaStepLog}.
+ *
+ * Expected schema (PostgreSQL):
+ * <pre>
+ * CREATE TABLE saga_step_events (
+ *     id          BIGSERIAL    PRIMARY KEY,
+ *     saga_id     UUID         NOT NULL,
+ *     seq         BIGINT       NOT NULL,
+ *     step_index  INT          NOT NULL,
+ *     step_id     VARCHAR(100),
+ *     state       VARCHAR(20)  NOT NULL,
+ *     data        JSONB,
+ *     created_at  TIMESTAMPTZ  NOT NULL,
+ *     UNIQUE (saga_id, seq)
+ * );
+ * </pre>
+ */
+@Entity
+@Table(name = "saga_step_events",
+    uniqueConstraints = @UniqueConstraint(name = "uk_saga_step_event_seq", columnNames = {"saga_id", "seq"}),
+    indexes = @Index(name = "idx_saga_step_event_created", columnList = "created_at")
+)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SagaStepEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "saga_id", nullable = false)
+    private UUID sagaId;
+
+    /**
+     * Position in the saga's log (1-based, gapless per saga).
+     */
+    @Column(name = "seq", nullable = false)
+    private long seq;
+
+    @Column(name = "step_index", nullable = false)
+    private int stepIndex;
+
+    @Column(name = "step_id", length = 100)
+    private String stepId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false, length = 20)
+    private SagaStep.StepState state;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "data", columnDefinition = "jsonb")
+    private Map<String, Object> data;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Builder.Default
+    private Instant createdAt = Instant.now();
+}
@@ -0,0 +1,40 @@
+package com.mannapay.common.events.saga;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for the append-only saga step log.
+ */
+@Repository
+public interface SagaStepEventRepository extends JpaRepository<SagaStepEvent, Long> {
+
+    /**
+     * Step events of a saga after a snapshot, in log order.
+     */
+    List<SagaStepEvent> findBySagaIdAndSeqGreaterThanOrderBySeqAsc(UUID sagaId, long seq);
+
+    /**
+     * Delete events already covered by their saga's snapshot.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM saga_step_events e WHERE e.created_at < :cutoff " +
+        "AND e.seq <= (SELECT s.snapshot_seq FROM saga_instances s WHERE s.id = e.saga_id)",
+        nativeQuery = true)
+    int deleteCompactedEvents(@Param("cutoff") Instant cutoff);
+
+    /**
+     * Delete the step events of some sagas.
+     */
+    @Modifying
+    @Query("DELETE FROM SagaStepEvent e WHERE e.sagaId IN :sagaIds")
+    int deleteBySagaIdIn(@Param("sagaIds") Collection<UUID> sagaIds);
+}
@@ -0,0 +1,261 @@
+package com.mannapay.common.events.saga;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Append-only persistence of saga step transitions.
+ *
+ * This service provides methods to:
+ * - Load a saga: its JSONB snapshot plus the step events appended after it
+ * - Save a saga: one small {@link SagaStepEvent} row per changed step, while
+ *   the instance row gets only its scalar columns updated
+ * - Compact: every {@code saga.step-log.snapshot-interval} events, and when
+ *   the saga ends, the steps and output are written back as a new snapshot
+ * - Clean up events covered by a snapshot after {@code saga.step-log.retention}
+ *
+ * The write cost of a transition therefore stays flat however many steps or
+ * how much step output a saga accumulates.
+ *
+ * Sagas are handed out detached from the persistence context, so their JSONB
+ * columns are never flushed implicitly; the scalar columns are written with
+ * an explicit update that checks and bumps the optimistic lock version.
+ */
+@Service
+@Slf4j
+public class SagaStepLog {
+
+    private final SagaRepository sagaRepository;
+    private final SagaStepEventRepository stepEventRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final int snapshotInterval;
+    private final Duration retention;
+
+    private final Counter eventsAppendedCounter;
+    private final Counter snapshotsCounter;
+
+    public SagaStepLog(
+            SagaRepository sagaRepository,
+            SagaStepEventRepository stepEventRepository,
+            EntityManager entityManager,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${saga.step-log.snapshot-interval:20}") int snapshotInterval,
+            @Value("${saga.step-log.retention:P7D}") Duration retention) {
+
+        this.sagaRepository = sagaRepository;
+        this.stepEventRepository = stepEventRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.snapshotInterval = snapshotInterval;
+        this.retention = retention;
+
+        this.eventsAppendedCounter = Counter.builder("mannapay.saga.step.events.appended")
+            .description("Saga step transitions appended to the step log")
+            .register(meterRegistry);
+
+        this.snapshotsCounter = Counter.builder("mannapay.saga.snapshots")
+            .description("Saga step snapshots written")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Load a saga with its steps brought up to date from the log.
+     */
+    @Transactional
+    public Optional<SagaInstance> load(UUID sagaId) {
+        return sagaRepository.findById(sagaId).map(this::rebuild);
+    }
+
+    /**
+     * Replay the step events after the snapshot onto a saga loaded from the
+     * repository; the saga is detached first.
+     */
+    @Transactional
+    public SagaInstance rebuild(SagaInstance saga) {
+        entityManager.detach(saga);
+        if (saga.getLastEventSeq() > saga.getSnapshotSeq()) {
+            List<SagaStepEvent> events = stepEventRepository
+                .findBySagaIdAndSeqGreaterThanOrderBySeqAsc(saga.getId(), saga.getSnapshotSeq());
+            for (SagaStepEvent event : events) {
+                apply(saga, event);
+            }
+        }
+        markPersisted(saga);
+        return saga;
+    }
+
+    /**
+     * Persist a saga: insert it if new, otherwise append an event for every
+     * changed step and update its scalar columns.
+     */
+    @Transactional
+    public SagaInstance save(SagaInstance saga) {
+        if (saga.getId() == null) {
+            SagaInstance saved = sagaRepository.saveAndFlush(saga);
+            entityManager.detach(saved);
+            markPersisted(saved);
+            return saved;
+        }
+        entityManager.detach(saga);
+
+        List<SagaStep> steps = saga.getSteps();
+        List<String> persisted = saga.getPersistedStepStates();
+        for (int i = 0; i < steps.size(); i++) {
+            SagaStep step = steps.get(i);
+            if (i < persisted.size() && fingerprint(step).equals(persisted.get(i))) {
+                continue;
+            }
+            SagaStepEvent event = SagaStepEvent.builder()
+                .sagaId(saga.getId())
+                .seq(saga.getLastEventSeq() + 1)
+                .stepIndex(i)
+                .stepId(step.getStepId())
+                .state(step.getState())
+                .data(dataOf(step))
+                .build();
+            stepEventRepository.save(event);
+            saga.setLastEventSeq(event.getSeq());
+            eventsAppendedCounter.increment();
+        }
+
+        long pending = saga.getLastEventSeq() - saga.getSnapshotSeq();
+        if (pending >= snapshotInterval || (pending > 0 && saga.isTerminal())) {
+            snapshot(saga);
+        }
+
+        saga.setUpdatedAt(Instant.now());
+        if (sagaRepository.updateScalars(saga) == 0) {
+            throw new ObjectOptimisticLockingFailureException(SagaInstance.class, saga.getId());
+        }
+        saga.setVersion(saga.getVersion() + 1);
+        markPersisted(saga);
+        return saga;
+    }
+
+    /**
+     * Delete step events that are covered by a snapshot and older than the retention.
+     * Runs daily.
+     */
+    @Scheduled(cron = "${saga.step-log.cleanup-cron:0 30 0 * * *}")
+    @Transactional
+    public void cleanupCompactedEvents() {
+        int deleted = stepEventRepository.deleteCompactedEvents(Instant.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Cleaned up {} compacted saga step events", deleted);
+        }
+    }
+
+    private void snapshot(SagaInstance saga) {
+        try {
+            sagaRepository.writeSnapshot(
+                saga.getId(),
+                objectMapper.writeValueAsString(saga.getSteps()),
+                objectMapper.writeValueAsString(saga.getOutputData()));
+        } catch (JsonProcessingException e) {
+            // The log still has every transition; try again on the next save
+            log.warn("Failed to serialize saga snapshot: sagaId={}, error={}", saga.getId(), e.getMessage());
+            return;
+        }
+        saga.setSnapshotSeq(saga.getLastEventSeq());
+        snapshotsCounter.increment();
+        log.debug("Saga snapshot written: sagaId={}, snapshotSeq={}", saga.getId(), saga.getSnapshotSeq());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void apply(SagaInstance saga, SagaStepEvent event) {
+        if (event.getStepIndex() < 0 || event.getStepIndex() >= saga.getSteps().size()) {
+            log.warn("Step event out of range ignored: sagaId={}, seq={}, stepIndex={}",
+                saga.getId(), event.getSeq(), event.getStepIndex());
+            return;
+        }
+        SagaStep step = saga.getSteps().get(event.getStepIndex());
+        Map<String, Object> data = event.getData() != null ? event.getData() : Map.of();
+
+        step.setState(event.getState());
+        step.setRetryCount(data.get("retryCount") instanceof Number n ? n.intValue() : 0);
+        step.setErrorMessage((String) data.get("errorMessage"));
+        step.setStartedAt(instantOf(data.get("startedAt")));
+        step.setCompletedAt(instantOf(data.get("completedAt")));
+        step.setDeadlineAt(instantOf(data.get("deadlineAt")));
+        step.setCompensationStartedAt(instantOf(data.get("compensationStartedAt")));
+        step.setCompensatedAt(instantOf(data.get("compensatedAt")));
+        step.setCompensated(Boolean.TRUE.equals(data.get("compensated")));
+        step.setTimedOut(Boolean.TRUE.equals(data.get("timedOut")));
+
+        if (data.get("output") instanceof Map<?, ?> output) {
+            step.setOutput((Map<String, Object>) output);
+            if (event.getState() == SagaStep.StepState.COMPLETED) {
+                step.getOutput().forEach(saga::addOutput);
+            }
+        }
+    }
+
+    private static Map<String, Object> dataOf(SagaStep step) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("retryCount", step.getRetryCount());
+        putIfNotNull(data, "errorMessage", step.getErrorMessage());
+        putIfNotNull(data, "startedAt", millisOf(step.getStartedAt()));
+        putIfNotNull(data, "completedAt", millisOf(step.getCompletedAt()));
+        putIfNotNull(data, "deadlineAt", millisOf(step.getDeadlineAt()));
+        putIfNotNull(data, "compensationStartedAt", millisOf(step.getCompensationStartedAt()));
+        putIfNotNull(data, "compensatedAt", millisOf(step.getCompensatedAt()));
+        if (step.isCompensated()) {
+            data.put("compensated", true);
+        }
+        if (step.isTimedOut()) {
+            data.put("timedOut", true);
+        }
+        if (step.getState() == SagaStep.StepState.COMPLETED && step.getOutput() != null) {
+            data.put("output", step.getOutput());
+        }
+        return data;
+    }
+
+    private static void markPersisted(SagaInstance saga) {
+        List<String> states = new ArrayList<>(saga.getSteps().size());
+        saga.getSteps().forEach(step -> states.add(fingerprint(step)));
+        saga.setPersistedStepStates(states);
+    }
+
+    private static String fingerprint(SagaStep step) {
+        return step.getState() + "|" + step.getRetryCount() + "|" + step.isCompensated() + "|" + step.isTimedOut()
+            + "|" + millisOf(step.getStartedAt()) + "|" + millisOf(step.getCompletedAt())
+            + "|" + millisOf(step.getDeadlineAt()) + "|" + millisOf(step.getCompensationStartedAt())
+            + "|" + Objects.hashCode(step.getErrorMessage());
+    }
+
+    private static void putIfNotNull(Map<String, Object> data, String key, Object value) {
+        if (value != null) {
+            data.put(key, value);
+        }
+    }
+
+    private static Long millisOf(Instant instant) {
+        return instant != null ? instant.toEpochMilli() : null;
+    }
+
+    private static Instant instantOf(Object value) {
+        return value instanceof Number n ? Instant.ofEpochMilli(n.longValue()) : null;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mannapay.common.events.saga.archive;
+
+import com.mannapay.common.events.saga.SagaState;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Terminal saga moved out of {@code saga_instances} by the {@link SagaArchiver}.
+ *
+ * The scalar columns are kept for lookups; the steps, input and output are
+ * stored together as one GZIP-compressed JSON document ({@code payload}).
+ * Rows are written once and never updated.
+ *
+ * Expected schema (PostgreSQL):
+ * <pre>
+ * CREATE TABLE saga_archive (
+ *     id                 UUID         PRIMARY KEY,
+ *     saga_type          VARCHAR(100) NOT NULL,
+ *     saga_version       INT,
+ *     correlation_id     VARCHAR(36)  NOT NULL,
+ *     state              VARCHAR(20)  NOT NULL,
+ *     error_message      TEXT,
+ *     failed_step        INT,
+ *     initiator_service  VARCHAR(100),
+ *     user_id            BIGINT,
+ *     created_at         TIMESTAMPTZ  NOT NULL,
+ *     started_at         TIMESTAMPTZ,
+ *     completed_at       TIMESTAMPTZ,
+ *     archived_at        TIMESTAMPTZ  NOT NULL,
+ *     payload            BYTEA        NOT NULL
+ * );
+ * CREATE INDEX idx_saga_archive_correlation ON saga_archive (correlation_id);
+ * </pre>
+ */
+@Entity
+@Table(name = "saga_archive",
+    indexes = @Index(name = "idx_saga_archive_correlation", columnList = "correlation_id")
+)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedSaga implements Persistable<UUID> {
+
+    /**
+     * ID the saga had in {@code saga_instances}.
+     */
+    @Id
+    private UUID id;
+
+    @Column(name = "saga_type", nullable = false, length = 100)
+    private String sagaType;
+
+    @Column(name = "saga_version")
+    private Integer sagaVersion;
+
+    @Column(name = "correlation_id", nullable = false, length = 36)
+    private String correlationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false, length = 20)
+    private SagaState state;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "failed_step")
+    private Integer failedStep;
+
+    @Column(name = "initiator_service", length = 100)
+    private String initiatorService;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "started_at")
+    private Instant startedAt;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+
+    @Column(name = "archived_at", nullable = false)
+    @Builder.Default
+    private Instant archivedAt = Instant.now();
+
+    /**
+     * GZIP-compressed JSON of the saga's steps, input and output.
+     */
+    @Column(name = "payload", nullable = false)
+    private byte[] payload;
+
+    /**
+     * Whether the row exists, so that archiving inserts without a select per row.
+     */
+    @Transient
+    private transient boolean persisted;
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        this.persisted = true;
+    }
+}
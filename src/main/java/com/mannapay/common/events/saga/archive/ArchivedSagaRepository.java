@@ -0,0 +1,19 @@
+package com.mannapay.common.events.saga.archive;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repository for archived sagas.
+ */
+@Repository
+public interface ArchivedSagaRepository extends JpaRepository<ArchivedSaga, UUID> {
+
+    /**
+     * Find archived saga by correlation ID.
+     */
+    Optional<ArchivedSaga> findByCorrelationId(String correlationId);
+}
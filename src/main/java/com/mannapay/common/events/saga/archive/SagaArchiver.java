@@ -0,0 +1,198 @@
+package com.mannapay.common.events.saga.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mannapay.common.events.saga.SagaInstance;
+import com.mannapay.common.events.saga.SagaRepository;
+import com.mannapay.common.events.saga.SagaState;
+import com.mannapay.common.events.saga.SagaStep;
+import com.mannapay.common.events.saga.SagaStepEventRepository;
+import com.mannapay.common.events.saga.SagaStepLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves terminal sagas out of {@code saga_instances} into {@code saga_archive}.
+ *
+ * Flow:
+ * 1. Every {@code saga.archive.interval-ms}, lock up to {@code saga.archive.batch-size}
+ *    COMPLETED, COMPENSATED or FAILED sagas created more than
+ *    {@code saga.archive.after} ago (rows locked by another node are skipped)
+ * 2. Write each as an {@link ArchivedSaga} with its steps, input and output
+ *    compressed into one payload
+ * 3. Delete the sagas and their step events, in the same transaction
+ *
+ * The live table and its indexes thus only hold running sagas and recent
+ * outcomes. {@link #findByCorrelationId} looks in both tables.
+ */
+@Service
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaArchiver {
+
+    private static final List<String> TERMINAL_STATES = List.of(
+        SagaState.COMPLETED.name(), SagaState.COMPENSATED.name(), SagaState.FAILED.name());
+
+    private final SagaRepository sagaRepository;
+    private final SagaStepEventRepository stepEventRepository;
+    private final ArchivedSagaRepository archivedSagaRepository;
+    private final SagaStepLog sagaStepLog;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Duration archiveAfter;
+    private final int batchSize;
+
+    private final Counter archivedCounter;
+
+    public SagaArchiver(
+            SagaRepository sagaRepository,
+            SagaStepEventRepository stepEventRepository,
+            ArchivedSagaRepository archivedSagaRepository,
+            SagaStepLog sagaStepLog,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${saga.archive.enabled:true}") boolean enabled,
+            @Value("${saga.archive.after:P30D}") Duration archiveAfter,
+            @Value("${saga.archive.batch-size:500}") int batchSize) {
+
+        this.sagaRepository = sagaRepository;
+        this.stepEventRepository = stepEventRepository;
+        this.archivedSagaRepository = archivedSagaRepository;
+        this.sagaStepLog = sagaStepLog;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.archiveAfter = archiveAfter;
+        this.batchSize = batchSize;
+
+        this.archivedCounter = Counter.builder("mannapay.saga.archived")
+            .description("Terminal sagas moved to the archive")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Archive one batch of terminal sagas.
+     * Called by the scheduler every minute by default.
+     */
+    @Scheduled(fixedDelayString = "${saga.archive.interval-ms:60000}")
+    @Transactional
+    public void archiveBatch() {
+        if (!enabled) {
+            return;
+        }
+        List<SagaInstance> sagas = sagaRepository.lockBatchCreatedBefore(
+            TERMINAL_STATES, Instant.now().minus(archiveAfter), batchSize);
+        if (sagas.isEmpty()) {
+            return;
+        }
+
+        List<ArchivedSaga> archived = new ArrayList<>(sagas.size());
+        List<UUID> ids = new ArrayList<>(sagas.size());
+        for (SagaInstance saga : sagas) {
+            archived.add(toArchive(sagaStepLog.rebuild(saga)));
+            ids.add(saga.getId());
+        }
+        archivedSagaRepository.saveAll(archived);
+        stepEventRepository.deleteBySagaIdIn(ids);
+        sagaRepository.deleteByIdIn(ids);
+        archivedCounter.increment(ids.size());
+
+        log.info("Archived {} terminal sagas", ids.size());
+    }
+
+    /**
+     * Find saga by correlation ID, live or archived. An archived saga is
+     * returned read-only: it must not be saved.
+     */
+    @Transactional(readOnly = true)
+    public Optional<SagaInstance> findByCorrelationId(String correlationId) {
+        Optional<SagaInstance> live = sagaRepository.findByCorrelationId(correlationId);
+        if (live.isPresent()) {
+            return live.map(sagaStepLog::rebuild);
+        }
+        return archivedSagaRepository.findByCorrelationId(correlationId).map(this::fromArchive);
+    }
+
+    private ArchivedSaga toArchive(SagaInstance saga) {
+        Payload payload = new Payload(saga.getSteps(), saga.getInputData(), saga.getOutputData());
+        return ArchivedSaga.builder()
+            .id(saga.getId())
+            .sagaType(saga.getSagaType())
+            .sagaVersion(saga.getSagaVersion())
+            .correlationId(saga.getCorrelationId())
+            .state(saga.getState())
+            .errorMessage(saga.getErrorMessage())
+            .failedStep(saga.getFailedStep())
+            .initiatorService(saga.getInitiatorService())
+            .userId(saga.getUserId())
+            .createdAt(saga.getCreatedAt())
+            .startedAt(saga.getStartedAt())
+            .completedAt(saga.getCompletedAt())
+            .payload(compress(payload))
+            .build();
+    }
+
+    private SagaInstance fromArchive(ArchivedSaga archived) {
+        Payload payload = decompress(archived.getPayload());
+        return SagaInstance.builder()
+            .id(archived.getId())
+            .sagaType(archived.getSagaType())
+            .sagaVersion(archived.getSagaVersion())
+            .correlationId(archived.getCorrelationId())
+            .state(archived.getState())
+            .steps(payload.steps() != null ? payload.steps() : new ArrayList<>())
+            .inputData(payload.inputData())
+            .outputData(payload.outputData())
+            .errorMessage(archived.getErrorMessage())
+            .failedStep(archived.getFailedStep())
+            .initiatorService(archived.getInitiatorService())
+            .userId(archived.getUserId())
+            .createdAt(archived.getCreatedAt())
+            .startedAt(archived.getStartedAt())
+            .completedAt(archived.getCompletedAt())
+            .updatedAt(archived.getArchivedAt())
+            .build();
+    }
+
+    private byte[] compress(Payload payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compress archived saga", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Payload decompress(byte[] compressed) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return objectMapper.readValue(gzip, Payload.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decompress archived saga", e);
+        }
+    }
+
+    /**
+     * Compressed part of an archived saga.
+     */
+    record Payload(List<SagaStep> steps, Map<String, Object> inputData, Map<String, Object> outputData) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.mannapay.common.events.saga.recovery;
+
+import com.mannapay.common.events.saga.SagaRepository;
+import com.mannapay.common.events.saga.SagaState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Walks large sets of sagas in bounded memory, e.g. after an outage.
+ *
+ * Features:
+ * - Keyset paging over saga IDs ({@code saga.recovery.page-size}); only IDs
+ *   are read in pages, each saga is loaded by the action itself
+ * - Each page is processed by {@code saga.recovery.parallelism} threads and
+ *   finished before the next one is read, so at most that many sagas are in
+ *   memory at once
+ * - A failed page is retried from the last ID of the previous finished page
+ * - {@link #recoverAsync} runs always start from the beginning, so rebuilds
+ *   of in-memory state are complete whenever they run; {@link #resumeAsync}
+ *   runs (explicit operator runs) keep that position as a checkpoint per run
+ *   name, and a later run of the same name resumes from it
+ * - A failing saga is logged and counted without stopping the run
+ *
+ * Runs are executed one at a time, off the caller's thread.
+ */
+@Component
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaRecoveryWorker {
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+
+    private final SagaRepository sagaRepository;
+    private final int pageSize;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+    private final Map<String, UUID> checkpoints = new ConcurrentHashMap<>();
+
+    private final Counter recoveredCounter;
+    private final Counter failedCounter;
+
+    public SagaRecoveryWorker(
+            SagaRepository sagaRepository,
+            MeterRegistry meterRegistry,
+            @Value("${saga.recovery.page-size:500}") int pageSize,
+            @Value("${saga.recovery.parallelism:4}") int parallelism,
+            @Value("${saga.recovery.max-attempts:3}") int maxAttempts,
+            @Value("${saga.recovery.retry-delay:PT5S}") Duration retryDelay) {
+
+        this.sagaRepository = sagaRepository;
+        this.pageSize = pageSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+
+        this.coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "saga-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "saga-recovery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.recoveredCounter = Counter.builder("mannapay.saga.recovery.recovered")
+            .description("Sagas processed by recovery runs")
+            .register(meterRegistry);
+
+        this.failedCounter = Counter.builder("mannapay.saga.recovery.failed")
+            .description("Sagas that failed during recovery runs")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Run the action for every saga in the given states, asynchronously,
+     * from the first saga on.
+     *
+     * @param name Run name, for logging
+     * @param states States to recover
+     * @param shards Shards to recover, or null for all
+     * @param action Action per saga ID; loads the saga itself
+     * @return Number of sagas processed
+     */
+    public CompletableFuture<Integer> recoverAsync(String name, Collection<SagaState> states,
+                                                   Collection<Integer> shards, Consumer<UUID> action) {
+        return CompletableFuture.supplyAsync(() -> recover(name, states, shards, action, false), coordinator);
+    }
+
+    /**
+     * Like {@link #recoverAsync}, but resumes from the checkpoint left by an
+     * aborted run of the same name, and leaves one if aborted itself.
+     *
+     * @param name Run name; identifies the checkpoint
+     */
+    public CompletableFuture<Integer> resumeAsync(String name, Collection<SagaState> states,
+                                                  Collection<Integer> shards, Consumer<UUID> action) {
+        return CompletableFuture.supplyAsync(() -> recover(name, states, shards, action, true), coordinator);
+    }
+
+    /**
+     * Last ID processed by an aborted resumable run, if any.
+     */
+    public UUID getCheckpoint(String name) {
+        return checkpoints.get(name);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private int recover(String name, Collection<SagaState> states, Collection<Integer> shards,
+                        Consumer<UUID> action, boolean resume) {
+        List<String> stateNames = states.stream().map(Enum::name).toList();
+        UUID cursor = resume ? checkpoints.getOrDefault(name, FIRST_ID) : FIRST_ID;
+        int processed = 0;
+        int attempt = 1;
+        while (true) {
+            List<UUID> page;
+            try {
+                page = shards != null
+                    ? sagaRepository.findIdPageInShards(stateNames, shards, cursor, pageSize)
+                    : sagaRepository.findIdPage(stateNames, cursor, pageSize);
+            } catch (DataAccessException e) {
+                if (attempt >= maxAttempts) {
+                    log.error("Saga recovery aborted: run={}, resumable={}, checkpoint={}, error={}",
+                        name, resume, cursor, e.getMessage());
+                    throw e;
+                }
+                log.warn("Saga recovery page failed, retrying from checkpoint: run={}, attempt={}, error={}",
+                    name, attempt, e.getMessage());
+                attempt++;
+                sleep(retryDelay);
+                continue;
+            }
+            if (page.isEmpty()) {
+                break;
+            }
+
+            processPage(name, page, action);
+            processed += page.size();
+            cursor = page.get(page.size() - 1);
+            if (resume) {
+                checkpoints.put(name, cursor);
+            }
+            attempt = 1;
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+        if (resume) {
+            checkpoints.remove(name);
+        }
+        log.info("Saga recovery finished: run={}, states={}, sagas={}", name, states, processed);
+        return processed;
+    }
+
+    private void processPage(String name, List<UUID> page, Consumer<UUID> action) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(page.size());
+        for (UUID sagaId : page) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    action.accept(sagaId);
+                    recoveredCounter.increment();
+                } catch (Exception e) {
+                    failedCounter.increment();
+                    log.warn("Saga recovery failed for saga: run={}, sagaId={}, error={}",
+                        name, sagaId, e.getMessage());
+                }
+            }, workers));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during saga recovery", e);
+        }
+    }
+}
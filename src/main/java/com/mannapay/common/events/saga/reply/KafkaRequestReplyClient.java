@@ -0,0 +1,296 @@
+package com.mannapay.common.events.saga.reply;
+
+import com.mannapay.common.events.core.EventEnvelope;
+import com.mannapay.common.events.kafka.producer.EventPublisher;
+import com.mannapay.common.events.saga.SagaCommand;
+import com.mannapay.common.events.saga.SagaReply;
+import com.mannapay.common.events.saga.timeout.HierarchicalTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends {@link SagaCommand}s and awaits their {@link SagaReply} as a future.
+ *
+ * Features:
+ * - {@link #request} returns a {@code CompletableFuture<SagaReply>} completed by
+ *   the reply, or failed with a {@link TimeoutException} when none arrives in time
+ * - Outstanding requests are kept in a concurrent map keyed by saga and step ID;
+ *   reply lookups take no lock
+ * - Timeouts are held in a {@link HierarchicalTimingWheel}, so arming and
+ *   cancelling them is O(1) however many requests are outstanding
+ * - One consumer per instance reads {@code saga.request-reply.reply-topic};
+ *   it is set as the reply topic of every command sent. The topic is created
+ *   by {@code KafkaConfig}; the client fails to start if it does not exist
+ * - Commands are sent once the reply consumer is assigned; a request that
+ *   timed out by then is not sent
+ * - At most {@code saga.request-reply.max-pending} requests are outstanding;
+ *   further requests fail fast
+ *
+ * Every instance consumes the whole reply topic in a group of its own,
+ * starting at its end, and ignores replies it is not waiting for. Futures
+ * are completed on a callback pool, never on the consumer thread.
+ */
+@Component
+@ConditionalOnProperty(name = "saga.request-reply.enabled", havingValue = "true")
+@Slf4j
+public class KafkaRequestReplyClient {
+
+    private final EventPublisher eventPublisher;
+    private final String replyTopic;
+    private final Duration defaultTimeout;
+    private final int maxPending;
+
+    private final Map<RequestKey, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> assigned = new CompletableFuture<>();
+    private final KafkaMessageListenerContainer<String, Object> container;
+    private final ExecutorService callbackExecutor;
+    private final HierarchicalTimingWheel wheel;
+
+    private final Timer latencyTimer;
+    private final Counter timeoutsCounter;
+    private final Counter rejectedCounter;
+
+    public KafkaRequestReplyClient(
+            EventPublisher eventPublisher,
+            ConsumerFactory<String, Object> consumerFactory,
+            MeterRegistry meterRegistry,
+            @Value("${spring.application.name:unknown-service}") String applicationName,
+            @Value("${saga.request-reply.reply-topic:mannapay.saga.replies.${spring.application.name:unknown-service}}")
+            String replyTopic,
+            @Value("${saga.request-reply.timeout:PT30S}") Duration defaultTimeout,
+            @Value("${saga.request-reply.max-pending:50000}") int maxPending,
+            @Value("${saga.request-reply.callback-threads:4}") int callbackThreads,
+            @Value("${saga.request-reply.tick:PT0.01S}") Duration tick) {
+
+        this.eventPublisher = eventPublisher;
+        this.replyTopic = replyTopic;
+        this.defaultTimeout = defaultTimeout;
+        this.maxPending = maxPending;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.callbackExecutor = Executors.newFixedThreadPool(callbackThreads, runnable -> {
+            Thread thread = new Thread(runnable, "request-reply-callback-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 512^3 ticks cover any practical request timeout
+        this.wheel = new HierarchicalTimingWheel("request-reply-timeouts", tick, 512, 3, callbackExecutor);
+
+        ContainerProperties properties = new ContainerProperties(replyTopic);
+        properties.setGroupId(applicationName + "-request-reply-" + UUID.randomUUID());
+        properties.setClientId(applicationName + "-request-reply");
+        // Offsets are never committed: a restarted instance has no requests to resume
+        properties.setAckMode(ContainerProperties.AckMode.MANUAL);
+        // Without the topic no reply would ever arrive; fail at startup instead
+        properties.setMissingTopicsFatal(true);
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        properties.setKafkaConsumerProperties(overrides);
+        properties.setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                // Fix the start offsets before any command is sent, so no reply is skipped
+                partitions.forEach(consumer::position);
+                assigned.complete(null);
+            }
+        });
+        properties.setMessageListener((AcknowledgingMessageListener<String, Object>) (record, ack) -> onRecord(record));
+        this.container = new KafkaMessageListenerContainer<>(consumerFactory, properties);
+        this.container.setBeanName("sagaRequestReplyContainer");
+
+        this.latencyTimer = Timer.builder("mannapay.saga.request-reply.latency")
+            .description("Time from sending a command to its reply")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+
+        this.timeoutsCounter = Counter.builder("mannapay.saga.request-reply.timeouts")
+            .description("Requests that got no reply in time")
+            .register(meterRegistry);
+
+        this.rejectedCounter = Counter.builder("mannapay.saga.request-reply.rejected")
+            .description("Requests rejected because too many were outstanding")
+            .register(meterRegistry);
+
+        Gauge.builder("mannapay.saga.request-reply.pending", pending, Map::size)
+            .description("Requests awaiting a reply")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        wheel.start();
+        container.start();
+        log.info("Request/reply client started: replyTopic={}", replyTopic);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        container.stop();
+        wheel.close();
+        callbackExecutor.shutdownNow();
+        pending.values().forEach(request ->
+            request.future.completeExceptionally(new IllegalStateException("Request/reply client stopped")));
+        pending.clear();
+    }
+
+    /**
+     * Send a command and await its reply with the default timeout.
+     */
+    public CompletableFuture<SagaReply> request(SagaCommand command) {
+        return request(command, defaultTimeout);
+    }
+
+    /**
+     * Send a command and await its reply.
+     *
+     * Only one request per saga and step may be outstanding at a time.
+     *
+     * @param command The command; its reply topic is set to this client's
+     * @param timeout Time to wait for the reply
+     * @return The reply, or a {@link TimeoutException} if none arrives in time
+     */
+    public CompletableFuture<SagaReply> request(SagaCommand command, Duration timeout) {
+        RequestKey key = new RequestKey(command.getSagaId(), command.getStepId());
+        if (pending.size() >= maxPending) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(
+                new RejectedExecutionException("Too many outstanding requests: " + maxPending));
+        }
+
+        PendingRequest request = new PendingRequest(command.isCompensation(), command.getAttempt());
+        if (pending.putIfAbsent(key, request) != null) {
+            // Rejected before a timeout was scheduled, so the outstanding request's timer is untouched
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("Request already outstanding: sagaId=" + key.sagaId()
+                    + ", stepId=" + key.stepId()));
+        }
+        // Scheduled once registered; expiring an already removed request is a no-op
+        request.timeout = wheel.schedule(System.currentTimeMillis() + timeout.toMillis(), () -> expire(key, request));
+        if (pending.get(key) != request) {
+            request.cancelTimeout();
+        }
+
+        command.setReplyTopic(replyTopic);
+        assigned
+            .thenCompose(ready -> pending.get(key) == request
+                ? eventPublisher.publish(command)
+                // Timed out (and reported) before it could be sent
+                : CompletableFuture.completedFuture(null))
+            .whenComplete((result, ex) -> {
+                if (ex != null && pending.remove(key, request)) {
+                    request.cancelTimeout();
+                    request.future.completeExceptionally(ex);
+                }
+            });
+        return request.future;
+    }
+
+    /**
+     * Number of requests awaiting a reply.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void onRecord(ConsumerRecord<String, Object> record) {
+        if (!(record.value() instanceof EventEnvelope<?> envelope)
+                || !(envelope.getPayload() instanceof SagaReply reply)) {
+            return;
+        }
+        String stepId = reply.getStepId() != null ? reply.getStepId() : reply.getStepName();
+        RequestKey key = new RequestKey(reply.getSagaId(), stepId);
+        PendingRequest request = pending.get(key);
+        if (request == null || !request.matches(reply) || !pending.remove(key, request)) {
+            // Another instance's request, an earlier attempt, or one that already timed out
+            return;
+        }
+        request.cancelTimeout();
+        latencyTimer.record(System.nanoTime() - request.sentAtNanos, TimeUnit.NANOSECONDS);
+        try {
+            callbackExecutor.execute(() -> request.future.complete(reply));
+        } catch (RejectedExecutionException e) {
+            request.future.complete(reply);
+        }
+    }
+
+    private void expire(RequestKey key, PendingRequest request) {
+        if (pending.remove(key, request)) {
+            timeoutsCounter.increment();
+            request.future.completeExceptionally(new TimeoutException(
+                "No reply: sagaId=" + key.sagaId() + ", stepId=" + key.stepId()));
+        }
+    }
+
+    /**
+     * Correlation key of a request.
+     */
+    private record RequestKey(String sagaId, String stepId) {
+    }
+
+    /**
+     * Outstanding request.
+     */
+    private static final class PendingRequest {
+
+        private final CompletableFuture<SagaReply> future = new CompletableFuture<>();
+        private final long sentAtNanos = System.nanoTime();
+        private final boolean compensation;
+        private final int attempt;
+        private volatile HierarchicalTimingWheel.Timeout timeout;
+
+        private PendingRequest(boolean compensation, int attempt) {
+            this.compensation = compensation;
+            this.attempt = attempt;
+        }
+
+        /**
+         * Cancel the timeout, if it was scheduled yet.
+         */
+        private void cancelTimeout() {
+            HierarchicalTimingWheel.Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+        }
+
+        /**
+         * Whether the reply answers this command; fields not echoed are not checked.
+         */
+        private boolean matches(SagaReply reply) {
+            return (reply.getCompensation() == null || reply.getCompensation() == compensation)
+                && (reply.getAttempt() == null || reply.getAttempt() == attempt);
+        }
+    }
+}
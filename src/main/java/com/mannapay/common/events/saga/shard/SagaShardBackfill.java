@@ -0,0 +1,73 @@
+package com.mannapay.common.events.saga.shard;
+
+import com.mannapay.common.events.saga.SagaRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sets the {@code shard} column of sagas created before it existed.
+ *
+ * Every {@code saga.shard.backfill.interval-ms}, up to
+ * {@code saga.shard.backfill.batch-size} sagas without a shard are locked
+ * (rows locked by another node are skipped) and given the shard of their ID.
+ * Until then, shard-scoped recovery pages include them and check ownership
+ * per saga. Once none are left a run is a single indexed lookup.
+ */
+@Service
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaShardBackfill {
+
+    private final SagaRepository sagaRepository;
+    private final SagaShardManager shardManager;
+    private final int batchSize;
+
+    private final Counter backfilledCounter;
+
+    public SagaShardBackfill(
+            SagaRepository sagaRepository,
+            SagaShardManager shardManager,
+            MeterRegistry meterRegistry,
+            @Value("${saga.shard.backfill.batch-size:1000}") int batchSize) {
+
+        this.sagaRepository = sagaRepository;
+        this.shardManager = shardManager;
+        this.batchSize = batchSize;
+
+        this.backfilledCounter = Counter.builder("mannapay.saga.shards.backfilled")
+            .description("Sagas given a shard after creation")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Assign shards to one batch of sagas without.
+     */
+    @Scheduled(fixedDelayString = "${saga.shard.backfill.interval-ms:60000}")
+    @Transactional
+    public void backfillBatch() {
+        List<UUID> ids = sagaRepository.lockIdsWithoutShard(batchSize);
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<UUID>> byShard = new HashMap<>();
+        for (UUID id : ids) {
+            byShard.computeIfAbsent(shardManager.shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        byShard.forEach(sagaRepository::assignShard);
+        backfilledCounter.increment(ids.size());
+
+        log.info("Backfilled saga shards: sagas={}, shards={}", ids.size(), byShard.size());
+    }
+}
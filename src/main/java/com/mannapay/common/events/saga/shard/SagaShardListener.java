@@ -0,0 +1,23 @@
+package com.mannapay.common.events.saga.shard;
+
+import java.util.Set;
+
+/**
+ * Callback for changes in the saga shards this node owns.
+ *
+ * Called on a listener container's consumer thread during a rebalance;
+ * implementations should hand slow work (e.g. loading sagas) off to
+ * another thread.
+ */
+public interface SagaShardListener {
+
+    /**
+     * Shards this node now drives.
+     */
+    void onShardsAssigned(Set<Integer> shards);
+
+    /**
+     * Shards this node no longer drives; their in-memory state should be dropped.
+     */
+    void onShardsRevoked(Set<Integer> shards);
+}
@@ -0,0 +1,180 @@
+package com.mannapay.common.events.saga.shard;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Assigns each saga to exactly one orchestrator node.
+ *
+ * Sagas are hashed by ID onto {@code saga.shard.count} virtual shards. A
+ * shard is owned by the node consuming the saga reply topic partition it
+ * maps to: replies are keyed by saga ID, so the Kafka partition of a saga is
+ * {@code murmur2(sagaId) % partitions}, and with a shard count that is a
+ * multiple of the partition count, shard {@code s} lives on partition
+ * {@code s % partitions}. Ownership is thus leased from the consumer group:
+ * it moves with the reply partitions when nodes join or leave, and a node
+ * that stops heartbeating loses it after the group's session timeout.
+ *
+ * The owner is the only node that applies a saga's replies and tracks its
+ * deadlines, so nodes do not race on saga rows and may keep per-saga state
+ * in memory. Shard changes are announced to {@link SagaShardListener}s.
+ *
+ * With {@code saga.shard.enabled=false} this node owns every shard.
+ */
+@Component
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaShardManager implements ConsumerAwareRebalanceListener {
+
+    private final ObjectProvider<SagaShardListener> listeners;
+    private final String replyTopic;
+    private final int shardCount;
+    private final boolean enabled;
+
+    private final Set<Integer> ownedShards = ConcurrentHashMap.newKeySet();
+
+    public SagaShardManager(
+            ObjectProvider<SagaShardListener> listeners,
+            MeterRegistry meterRegistry,
+            @Value("${saga.reply-topic:mannapay.saga.replies}") String replyTopic,
+            @Value("${saga.shard.count:240}") int shardCount,
+            @Value("${saga.shard.enabled:true}") boolean enabled) {
+
+        this.listeners = listeners;
+        this.replyTopic = replyTopic;
+        this.shardCount = shardCount;
+        this.enabled = enabled;
+
+        Gauge.builder("mannapay.saga.shards.owned", this,
+                manager -> manager.enabled ? manager.ownedShards.size() : manager.shardCount)
+            .description("Saga shards driven by this node")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Whether sharding is enabled; if not, this node owns every saga.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Shard of a saga.
+     */
+    public int shardOf(UUID sagaId) {
+        return Utils.toPositive(Utils.murmur2(sagaId.toString().getBytes(StandardCharsets.UTF_8))) % shardCount;
+    }
+
+    /**
+     * Whether this node drives a saga.
+     */
+    public boolean owns(UUID sagaId) {
+        return !enabled || ownedShards.contains(shardOf(sagaId));
+    }
+
+    /**
+     * Whether this node drives a shard.
+     */
+    public boolean ownsShard(int shard) {
+        return !enabled || ownedShards.contains(shard);
+    }
+
+    /**
+     * Shards this node drives.
+     */
+    public Set<Integer> getOwnedShards() {
+        if (!enabled) {
+            Set<Integer> all = new HashSet<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                all.add(shard);
+            }
+            return all;
+        }
+        return Set.copyOf(ownedShards);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Set<Integer> shards = shardsOf(consumer, partitions);
+        shards.removeIf(shard -> !ownedShards.add(shard));
+        if (!shards.isEmpty()) {
+            log.info("Saga shards assigned: count={}, owned={}", shards.size(), ownedShards.size());
+            notify(shards, SagaShardListener::onShardsAssigned);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        revoke(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        revoke(consumer, partitions);
+    }
+
+    private void revoke(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Set<Integer> shards = shardsOf(consumer, partitions);
+        shards.removeIf(shard -> !ownedShards.remove(shard));
+        if (!shards.isEmpty()) {
+            log.info("Saga shards revoked: count={}, owned={}", shards.size(), ownedShards.size());
+            notify(shards, SagaShardListener::onShardsRevoked);
+        }
+    }
+
+    /**
+     * Shards living on the given reply topic partitions.
+     */
+    private Set<Integer> shardsOf(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Set<Integer> shards = new HashSet<>();
+        if (!enabled || partitions.stream().noneMatch(tp -> tp.topic().equals(replyTopic))) {
+            return shards;
+        }
+        List<PartitionInfo> infos = consumer.partitionsFor(replyTopic);
+        int partitionCount = infos != null ? infos.size() : 0;
+        if (partitionCount == 0 || shardCount % partitionCount != 0) {
+            log.error("Saga shard count must be a multiple of the reply topic partitions: shards={}, partitions={}",
+                shardCount, partitionCount);
+            return shards;
+        }
+        for (TopicPartition tp : partitions) {
+            if (tp.topic().equals(replyTopic)) {
+                for (int shard = tp.partition(); shard < shardCount; shard += partitionCount) {
+                    shards.add(shard);
+                }
+            }
+        }
+        return shards;
+    }
+
+    private void notify(Set<Integer> shards, BiConsumer<SagaShardListener, Set<Integer>> callback) {
+        Set<Integer> changed = Set.copyOf(shards);
+        listeners.orderedStream().forEach(listener -> {
+            try {
+                callback.accept(listener, changed);
+            } catch (Exception e) {
+                log.error("Saga shard listener failed: listener={}, error={}",
+                    listener.getClass().getSimpleName(), e.getMessage(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,286 @@
+package com.mannapay.common.events.saga.timeout;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical hashed timing wheel for large numbers of deadlines.
+ *
+ * Level 0 has {@code wheelSize} buckets of one tick each; every further level
+ * has buckets as wide as the whole level below. A timer is put in the lowest
+ * level whose range covers its deadline and cascades down as the clock
+ * reaches its bucket, so scheduling and cancelling are O(1) and each tick only
+ * touches the buckets that are due.
+ *
+ * Deadlines are wall-clock milliseconds, fired at most one tick late. A single
+ * daemon thread advances the clock; expired tasks run on the given executor.
+ */
+@Slf4j
+public class HierarchicalTimingWheel implements AutoCloseable {
+
+    private final String name;
+    private final long tickMs;
+    private final int wheelSize;
+    private final long[] levelTickMs;
+    private final Bucket[][] levels;
+    private final Executor taskExecutor;
+
+    private long currentTime;
+    private int pending;
+    private volatile boolean running;
+    private Thread ticker;
+
+    /**
+     * @param name Name of the ticker thread
+     * @param tick Resolution of the wheel
+     * @param wheelSize Buckets per level
+     * @param levelCount Number of levels; the range is {@code tick * wheelSize^levelCount}
+     * @param taskExecutor Runs expired tasks
+     */
+    public HierarchicalTimingWheel(String name, Duration tick, int wheelSize, int levelCount, Executor taskExecutor) {
+        if (tick.toMillis() <= 0 || wheelSize < 2 || levelCount < 1) {
+            throw new IllegalArgumentException("Invalid timing wheel dimensions");
+        }
+        this.name = name;
+        this.tickMs = tick.toMillis();
+        this.wheelSize = wheelSize;
+        this.taskExecutor = taskExecutor;
+        this.levelTickMs = new long[levelCount];
+        this.levels = new Bucket[levelCount][wheelSize];
+
+        long levelTick = tickMs;
+        for (int level = 0; level < levelCount; level++) {
+            levelTickMs[level] = levelTick;
+            for (int i = 0; i < wheelSize; i++) {
+                levels[level][i] = new Bucket();
+            }
+            levelTick = Math.multiplyExact(levelTick, (long) wheelSize);
+        }
+        this.currentTime = System.currentTimeMillis() / tickMs * tickMs;
+    }
+
+    /**
+     * Start the ticker thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        ticker = new Thread(this::runTicker, name);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Schedule a task at a deadline. A deadline already passed fires on the next tick.
+     */
+    public Timeout schedule(Instant deadline, Runnable task) {
+        return schedule(deadline.toEpochMilli(), task);
+    }
+
+    /**
+     * Schedule a task at a deadline in epoch milliseconds.
+     */
+    public Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout timeout = new Timeout(this, deadlineMillis, task);
+        synchronized (this) {
+            insert(timeout);
+            pending++;
+        }
+        return timeout;
+    }
+
+    /**
+     * Number of scheduled, not yet fired or cancelled timers.
+     */
+    public synchronized int size() {
+        return pending;
+    }
+
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = ticker;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Advance the clock to the given time and return the tasks that expired.
+     */
+    List<Timeout> advance(long now) {
+        List<Timeout> expired = new ArrayList<>();
+        synchronized (this) {
+            while (currentTime + tickMs <= now) {
+                currentTime += tickMs;
+
+                // Level 0 bucket covering the tick that just ended
+                drain(levels[0][index(currentTime - tickMs, 0)], expired);
+
+                // Cascade higher level buckets that start now
+                for (int level = 1; level < levels.length && currentTime % levelTickMs[level] == 0; level++) {
+                    drain(levels[level][index(currentTime, level)], expired);
+                }
+            }
+            pending -= expired.size();
+        }
+        return expired;
+    }
+
+    private void runTicker() {
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                long nextTick;
+                synchronized (this) {
+                    nextTick = currentTime + tickMs;
+                }
+                if (now < nextTick) {
+                    TimeUnit.MILLISECONDS.sleep(nextTick - now);
+                    continue;
+                }
+                for (Timeout timeout : advance(now)) {
+                    fire(timeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Timing wheel tick failed: wheel={}, error={}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void fire(Timeout timeout) {
+        try {
+            taskExecutor.execute(timeout.task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Expired timer rejected by executor: wheel={}, deadline={}", name, timeout.deadline);
+        }
+    }
+
+    private void drain(Bucket bucket, List<Timeout> expired) {
+        Timeout timeout = bucket.head.next;
+        bucket.clear();
+        while (timeout != bucket.head) {
+            Timeout next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            if (timeout.deadline < currentTime) {
+                expired.add(timeout);
+            } else {
+                insert(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Put a timer in the lowest level whose range covers it.
+     */
+    private void insert(Timeout timeout) {
+        long deadline = Math.max(timeout.deadline, currentTime);
+        int top = levels.length - 1;
+        for (int level = 0; level <= top; level++) {
+            long distance = deadline / levelTickMs[level] - currentTime / levelTickMs[level];
+            if (distance < wheelSize) {
+                levels[level][index(deadline, level)].add(timeout);
+                return;
+            }
+        }
+        // Beyond the range: park in the farthest top level bucket, re-inserted when it cascades
+        long farthest = currentTime + levelTickMs[top] * (wheelSize - 1);
+        levels[top][index(farthest, top)].add(timeout);
+    }
+
+    private int index(long time, int level) {
+        return (int) ((time / levelTickMs[level]) % wheelSize);
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        pending--;
+        return true;
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public static final class Timeout {
+
+        private final HierarchicalTimingWheel wheel;
+        private final long deadline;
+        private final Runnable task;
+
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HierarchicalTimingWheel wheel, long deadline, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Cancel the timer; false if it already fired or was cancelled.
+         */
+        public boolean cancel() {
+            return wheel != null && wheel.cancel(this);
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    /**
+     * Doubly linked list of timers with a sentinel head.
+     */
+    private static final class Bucket {
+
+        private final Timeout head = new Timeout(null, 0, null);
+
+        Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = head.prev;
+            timeout.next = head;
+            head.prev.next = timeout;
+            head.prev = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            timeout.prev.next = timeout.next;
+            timeout.next.prev = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void clear() {
+            head.prev = head;
+            head.next = head;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.mannapay.common.events.saga.timeout;
+
+import com.mannapay.common.events.saga.SagaInstance;
+import com.mannapay.common.events.saga.SagaOrchestrator;
+import com.mannapay.common.events.saga.SagaState;
+import com.mannapay.common.events.saga.SagaStep;
+import com.mannapay.common.events.saga.SagaStepLog;
+import com.mannapay.common.events.saga.recovery.SagaRecoveryWorker;
+import com.mannapay.common.events.saga.shard.SagaShardListener;
+import com.mannapay.common.events.saga.shard.SagaShardManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory per-step and per-saga deadlines of running sagas.
+ *
+ * Each saga has one timer per step attempt in flight (several while parallel
+ * steps run) and one saga timer, held in a {@link HierarchicalTimingWheel}, so scheduling, replacing
+ * and cancelling cost O(1) regardless of how many sagas are running and
+ * nothing scans the saga table while they run. Deadlines are persisted on the
+ * saga ({@code SagaStep.deadlineAt}, {@code SagaInstance.deadlineAt}) and the
+ * wheel is rebuilt from them at startup.
+ *
+ * Only deadlines of sagas owned by this node (see {@link SagaShardManager})
+ * are tracked: they are loaded when a shard is assigned and dropped when it
+ * is revoked.
+ *
+ * Expired timers are handed to the {@link SagaOrchestrator}, which applies a
+ * {@code TIMEOUT} outcome if the saga is still waiting on that step. A timeout
+ * that fails to apply (e.g. the database is unavailable, or a reply to a
+ * parallel step committed first) is retried later; by then the orchestrator's
+ * state checks ignore it if the saga has moved on.
+ *
+ * Called inside a transaction, scheduling and cancelling take effect only
+ * once it commits, so a rollback leaves the timers matching the database.
+ */
+@Component
+@ConditionalOnProperty(name = "saga.orchestrator.enabled", havingValue = "true")
+@Slf4j
+public class SagaTimeoutScheduler implements SagaShardListener {
+
+    private static final List<SagaState> IN_FLIGHT_STATES = List.of(SagaState.RUNNING, SagaState.COMPENSATING);
+
+    private final ObjectProvider<SagaOrchestrator> sagaOrchestrator;
+    private final SagaStepLog sagaStepLog;
+    private final SagaShardManager shardManager;
+    private final SagaRecoveryWorker recoveryWorker;
+    private final Duration retryDelay;
+
+    private final ExecutorService timeoutExecutor;
+    private final HierarchicalTimingWheel wheel;
+
+    private final Map<UUID, Map<String, HierarchicalTimingWheel.Timeout>> stepTimers = new ConcurrentHashMap<>();
+    private final Map<UUID, HierarchicalTimingWheel.Timeout> sagaTimers = new ConcurrentHashMap<>();
+
+    private final Counter timeoutsFiredCounter;
+
+    public SagaTimeoutScheduler(
+            ObjectProvider<SagaOrchestrator> sagaOrchestrator,
+            SagaStepLog sagaStepLog,
+            SagaShardManager shardManager,
+            SagaRecoveryWorker recoveryWorker,
+            MeterRegistry meterRegistry,
+            @Value("${saga.timeout.tick:PT0.1S}") Duration tick,
+            @Value("${saga.timeout.wheel-size:512}") int wheelSize,
+            @Value("${saga.timeout.threads:2}") int threads,
+            @Value("${saga.timeout.retry-delay:PT5S}") Duration retryDelay) {
+
+        this.sagaOrchestrator = sagaOrchestrator;
+        this.sagaStepLog = sagaStepLog;
+        this.shardManager = shardManager;
+        this.recoveryWorker = recoveryWorker;
+        this.retryDelay = retryDelay;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.timeoutExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "saga-timeout-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.wheel = new HierarchicalTimingWheel("saga-timing-wheel", tick, wheelSize, 4, timeoutExecutor);
+        this.wheel.start();
+
+        this.timeoutsFiredCounter = Counter.builder("mannapay.saga.timeouts.fired")
+            .description("Saga step and saga deadlines that expired")
+            .register(meterRegistry);
+
+        Gauge.builder("mannapay.saga.timeouts.scheduled", wheel, HierarchicalTimingWheel::size)
+            .description("Saga deadlines currently scheduled")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Set the deadline of a step attempt, replacing any previous one of that step.
+     * Ignored for sagas owned by another node.
+     */
+    public void scheduleStep(UUID sagaId, String stepId, Instant deadline) {
+        afterCommit(() -> doScheduleStep(sagaId, stepId, deadline));
+    }
+
+    private void doScheduleStep(UUID sagaId, String stepId, Instant deadline) {
+        if (!shardManager.owns(sagaId)) {
+            return;
+        }
+        HierarchicalTimingWheel.Timeout timeout = wheel.schedule(deadline, () -> fireStep(sagaId, stepId, deadline));
+        // Per-saga maps are only touched inside compute, which serializes them
+        stepTimers.compute(sagaId, (id, timers) -> {
+            Map<String, HierarchicalTimingWheel.Timeout> sagaTimers = timers != null ? timers : new HashMap<>();
+            cancel(sagaTimers.put(stepId, timeout));
+            return sagaTimers;
+        });
+    }
+
+    /**
+     * Cancel the deadline of a step attempt.
+     */
+    public void cancelStep(UUID sagaId, String stepId) {
+        afterCommit(() -> stepTimers.computeIfPresent(sagaId, (id, timers) -> {
+            cancel(timers.remove(stepId));
+            return timers.isEmpty() ? null : timers;
+        }));
+    }
+
+    /**
+     * Set the overall deadline of a saga, replacing any previous one.
+     * Ignored for sagas owned by another node.
+     */
+    public void scheduleSaga(UUID sagaId, Instant deadline) {
+        afterCommit(() -> {
+            if (shardManager.owns(sagaId)) {
+                replace(sagaTimers, sagaId, wheel.schedule(deadline, () -> fireSaga(sagaId, deadline)));
+            }
+        });
+    }
+
+    /**
+     * Cancel the overall deadline of a saga.
+     */
+    public void cancelSaga(UUID sagaId) {
+        afterCommit(() -> cancel(sagaTimers.remove(sagaId)));
+    }
+
+    /**
+     * Cancel every deadline of a saga.
+     */
+    public void cancel(UUID sagaId) {
+        afterCommit(() -> cancelAll(sagaId));
+    }
+
+    private void cancelAll(UUID sagaId) {
+        Map<String, HierarchicalTimingWheel.Timeout> timers = stepTimers.remove(sagaId);
+        if (timers != null) {
+            timers.values().forEach(SagaTimeoutScheduler::cancel);
+        }
+        cancel(sagaTimers.remove(sagaId));
+    }
+
+    /**
+     * Number of scheduled deadlines.
+     */
+    public int getScheduledCount() {
+        return wheel.size();
+    }
+
+    /**
+     * Rebuild the deadlines of running and compensating sagas from the database,
+     * in pages through the {@link SagaRecoveryWorker}. With sharding, deadlines
+     * are rebuilt per shard as shards are assigned.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (shardManager.isEnabled()) {
+            return;
+        }
+        recoveryWorker.recoverAsync("saga-deadlines", IN_FLIGHT_STATES, null, this::restore)
+            .whenComplete((sagas, error) -> logRebuild("all", sagas, error));
+    }
+
+    @Override
+    public void onShardsAssigned(Set<Integer> shards) {
+        // Asynchronous, so loading sagas does not hold up the rebalance
+        recoveryWorker.recoverAsync("saga-deadlines-" + shards.hashCode(), IN_FLIGHT_STATES, shards, sagaId -> {
+            if (shardManager.owns(sagaId)) {
+                restore(sagaId);
+            }
+        }).whenComplete((sagas, error) -> logRebuild(shards.size() + " assigned shards", sagas, error));
+    }
+
+    @Override
+    public void onShardsRevoked(Set<Integer> shards) {
+        Set<UUID> sagaIds = new HashSet<>(sagaTimers.keySet());
+        sagaIds.addAll(stepTimers.keySet());
+        int cancelled = 0;
+        for (UUID sagaId : sagaIds) {
+            if (shards.contains(shardManager.shardOf(sagaId))) {
+                cancelAll(sagaId);
+                cancelled++;
+            }
+        }
+        log.info("Saga deadlines dropped for revoked shards: shards={}, sagas={}", shards.size(), cancelled);
+    }
+
+    private void restore(UUID sagaId) {
+        sagaStepLog.load(sagaId)
+            .filter(saga -> IN_FLIGHT_STATES.contains(saga.getState()))
+            .ifPresent(this::restore);
+    }
+
+    private static void logRebuild(String scope, Integer sagas, Throwable error) {
+        if (error != null) {
+            log.error("Failed to rebuild saga deadlines: scope={}, error={}", scope, error.getMessage());
+        } else {
+            log.info("Saga deadlines rebuilt: scope={}, sagas={}", scope, sagas);
+        }
+    }
+
+    /**
+     * Schedule the persisted deadlines of one saga.
+     *
+     * @return Number of deadlines scheduled
+     */
+    public int restore(SagaInstance saga) {
+        int scheduled = 0;
+        for (SagaStep step : saga.getSteps()) {
+            boolean inFlight = step.getState() == SagaStep.StepState.RUNNING
+                || step.getState() == SagaStep.StepState.COMPENSATING;
+            if (inFlight && step.getDeadlineAt() != null) {
+                scheduleStep(saga.getId(), step.getStepId(), step.getDeadlineAt());
+                scheduled++;
+            }
+        }
+        if (saga.getState() == SagaState.RUNNING && saga.getDeadlineAt() != null) {
+            scheduleSaga(saga.getId(), saga.getDeadlineAt());
+            scheduled++;
+        }
+        return scheduled;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wheel.close();
+        timeoutExecutor.shutdown();
+    }
+
+    private void fireStep(UUID sagaId, String stepId, Instant deadline) {
+        stepTimers.computeIfPresent(sagaId, (id, timers) -> {
+            timers.computeIfPresent(stepId, (step, t) -> t.getDeadline() == deadline.toEpochMilli() ? null : t);
+            return timers.isEmpty() ? null : timers;
+        });
+        if (!shardManager.owns(sagaId)) {
+            return;
+        }
+        timeoutsFiredCounter.increment();
+        try {
+            sagaOrchestrator.getObject().onStepTimeout(sagaId, stepId);
+        } catch (Exception e) {
+            log.warn("Failed to apply step timeout, retrying: sagaId={}, step={}, error={}",
+                sagaId, stepId, e.getMessage());
+            scheduleStep(sagaId, stepId, Instant.now().plus(retryDelay));
+        }
+    }
+
+    private void fireSaga(UUID sagaId, Instant deadline) {
+        sagaTimers.computeIfPresent(sagaId, (id, t) -> t.getDeadline() == deadline.toEpochMilli() ? null : t);
+        if (!shardManager.owns(sagaId)) {
+            return;
+        }
+        timeoutsFiredCounter.increment();
+        try {
+            sagaOrchestrator.getObject().onSagaTimeout(sagaId);
+        } catch (Exception e) {
+            log.warn("Failed to apply saga timeout, retrying: sagaId={}, error={}", sagaId, e.getMessage());
+            scheduleSaga(sagaId, Instant.now().plus(retryDelay));
+        }
+    }
+
+    /**
+     * Run now, or after the commit of the transaction in progress; dropped on rollback.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static void replace(Map<UUID, HierarchicalTimingWheel.Timeout> timers, UUID sagaId,
+                                HierarchicalTimingWheel.Timeout timeout) {
+        cancel(timers.put(sagaId, timeout));
+    }
+
+    private static void cancel(HierarchicalTimingWheel.Timeout timeout) {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+}